@@ -0,0 +1,170 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import java.io.IOException;
+import java.util.BitSet;
+
+/**
+ * Sends manual acks for a channel in batches. Because an ack with the
+ * "multiple" flag covers every delivery up to its tag, the tracker only acks
+ * up to the first delivery that has not been completed yet, even if
+ * deliveries complete out of order. Optionally, the tracker adapts the
+ * prefetch count of the channel to the measured listener latency.
+ * @author Petri Kannisto
+ */
+class AckTracker
+{
+	// The adaptive prefetch aims to buffer this much listener work in the client
+	private static final long AdaptiveTargetBuffer_ns = 200L * 1000 * 1000; // 200 ms
+	
+	// The adaptive prefetch is recalculated after this many completions
+	private static final int AdaptiveInterval = 100;
+	
+	// The weight of the latest sample in the latency average
+	private static final double LatencyAverageWeight = 0.1;
+	
+	private final TransportChannel m_channel;
+	private final boolean m_adaptive;
+	private final int m_maxPrefetch;
+	
+	// Mutual exclusion: use "this" as the lock for all variables.
+	// The tag of bit 0. Delivery tags start from 1 on each channel.
+	private long m_base = 1;
+	
+	// Completed deliveries not acked yet relative to the base
+	private BitSet m_completed = new BitSet();
+	
+	private int m_prefetch;
+	private int m_ackBatchSize;
+	private double m_averageLatency_ns = -1;
+	private int m_completionsSinceAdapt = 0;
+	
+	
+	/**
+	 * Constructor. This sets the prefetch count of the channel.
+	 * @param channel Channel.
+	 * @param prefetch Prefetch count. In the adaptive mode, this is the initial value.
+	 * @param adaptive Whether the prefetch count adapts to listener latency.
+	 * @throws IOException Thrown if setting the prefetch count fails.
+	 */
+	AckTracker(TransportChannel channel, int prefetch, boolean adaptive) throws IOException
+	{
+		m_channel = channel;
+		m_adaptive = adaptive;
+		m_maxPrefetch = prefetch * 10;
+		
+		setPrefetch(prefetch);
+	}
+	
+	/**
+	 * Marks a delivery completed, i.e., the listeners have returned.
+	 * If enough contiguous deliveries have completed, this acks them.
+	 * @param deliveryTag Delivery tag.
+	 * @param latency_ns How long the listeners took in nanoseconds.
+	 * @throws IOException Thrown if acking fails.
+	 */
+	synchronized void complete(long deliveryTag, long latency_ns) throws IOException
+	{
+		m_completed.set((int)(deliveryTag - m_base));
+		
+		int contiguousCount = m_completed.nextClearBit(0);
+		
+		if (contiguousCount >= m_ackBatchSize)
+		{
+			ackFirst(contiguousCount);
+		}
+		
+		if (m_adaptive)
+		{
+			adapt(latency_ns);
+		}
+	}
+	
+	/**
+	 * Acks any contiguous completed deliveries regardless of the batch size.
+	 * This is called regularly so that acks do not wait for long when the
+	 * message rate is low.
+	 * @throws IOException Thrown if acking fails.
+	 */
+	synchronized void flush() throws IOException
+	{
+		int contiguousCount = m_completed.nextClearBit(0);
+		
+		if (contiguousCount > 0)
+		{
+			ackFirst(contiguousCount);
+		}
+	}
+	
+	/**
+	 * Returns the current prefetch count.
+	 * @return Prefetch count.
+	 */
+	synchronized int getPrefetch()
+	{
+		return m_prefetch;
+	}
+	
+	// Only call this method when the lock is applied!
+	private void ackFirst(int count) throws IOException
+	{
+		// One ack for all of them
+		m_channel.basicAck(m_base + count - 1, true);
+		
+		// Shifting the bits
+		m_completed = m_completed.get(count, Math.max(count, m_completed.length()));
+		m_base += count;
+	}
+	
+	// Only call this method when the lock is applied!
+	private void adapt(long latency_ns) throws IOException
+	{
+		if (m_averageLatency_ns < 0)
+		{
+			m_averageLatency_ns = latency_ns;
+		}
+		else
+		{
+			m_averageLatency_ns += LatencyAverageWeight * (latency_ns - m_averageLatency_ns);
+		}
+		
+		if (++m_completionsSinceAdapt < AdaptiveInterval)
+		{
+			return;
+		}
+		
+		m_completionsSinceAdapt = 0;
+		
+		// Enough prefetch to keep the listeners busy for the target time
+		double target = AdaptiveTargetBuffer_ns / Math.max(1.0, m_averageLatency_ns);
+		int newPrefetch = (int)Math.max(1, Math.min(m_maxPrefetch, Math.ceil(target)));
+		
+		// Only changing if the difference is significant; each change is a round trip to the broker
+		if (Math.abs(newPrefetch - m_prefetch) * 4 > m_prefetch)
+		{
+			setPrefetch(newPrefetch);
+		}
+	}
+	
+	// Only call this method when the lock is applied (or from the constructor)!
+	private void setPrefetch(int prefetch) throws IOException
+	{
+		// The limit applies to the channel and can be changed while consuming
+		m_channel.basicQos(prefetch);
+		m_prefetch = prefetch;
+		
+		// Acking at a quarter of the window. This way, the acks never
+		// hold back enough of the window to stall the flow of deliveries.
+		m_ackBatchSize = Math.max(1, prefetch / 4);
+	}
+}
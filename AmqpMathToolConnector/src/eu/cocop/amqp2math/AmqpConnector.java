@@ -7,30 +7,41 @@
 //
 // Author: Petri Kannisto, Tampere University, Finland
 // File created: 8/2018
-// Last modified: 3/2020
+// Last modified: 10/2026
 
 package eu.cocop.amqp2math;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.net.URISyntaxException;
-import java.security.KeyManagementException;
-import java.security.NoSuchAlgorithmException;
-import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
-import java.util.LinkedList;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
-import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
-import com.rabbitmq.client.AlreadyClosedException;
-import com.rabbitmq.client.Channel;
-import com.rabbitmq.client.Connection;
-import com.rabbitmq.client.ConnectionFactory;
-import com.rabbitmq.client.DefaultConsumer;
-import com.rabbitmq.client.Envelope;
-import com.rabbitmq.client.ShutdownListener;
-import com.rabbitmq.client.ShutdownSignalException;
 import com.rabbitmq.client.AMQP.BasicProperties;
 
 
@@ -40,41 +51,91 @@ import com.rabbitmq.client.AMQP.BasicProperties;
  */
 public class AmqpConnector
 {
-	// The connection retry interval is 15 seconds 
-	private final int ConnectionRetryInterval_s = 15;
+	// The interval of checking the timeouts of requests
+	private static final long RequestTick_ms = 10;
 	
-	private final boolean m_debugEnabled;
+	// Logs asynchronously so that the console never slows down the connector
+	private final ConnectorLog m_log;
 	
 	private final AmqpPropsManager m_amqpProperties;
 	
-	// This is used as the lock object for simple variables.
-	// There is no guarantee which thread the timer tasks use, therefore
-	// using a lock.
-	private final Object m_variableLock = new Object();
-	
 	// This is used as the lock object for connection-related objects.
 	// There is no guarantee which thread the timer tasks use, therefore
 	// using a lock.
 	private final Object m_connectionLock = new Object();
 	
-	// No mutual exclusion is applied for this collection, because this is not modified
-	// after the constructor anymore
-	private final TreeMap<String, Notifier> m_notifiers = new TreeMap<>();
+	// The notifiers of subscribed topics. This is concurrent for lookups,
+	// but modifications use the connection lock to keep the bindings in sync.
+	private final ConcurrentHashMap<String, Notifier> m_notifiers = new ConcurrentHashMap<>();
+	
+	// Routes each received message to the notifiers whose topic patterns match.
+	// The matcher is immutable and replaced whenever the topics change.
+	private volatile TopicMatcher<Notifier> m_topicMatcher;
 	
 	// Objects that begin with "conn" must be synchronised with the connection lock
-	private Connection m_connConnection = null;
-	private Channel m_connChannel = null;
+	// The connection is shared with the other connectors that have the same settings
+	private SharedConnection m_connConnection = null;
+	private Transport.ShutdownHandler m_connShutdownListener = null;
+	private TransportChannel m_connChannel = null;
+	
+	// This is null unless manual acks are enabled (i.e., the prefetch count is set).
+	// The tracker is replaced each time the channel is created.
+	private AckTracker m_connAckTracker = null;
+	
+	// The queue that receives the messages of all topics.
+	// Null if there is no channel or no topics.
+	private String m_connQueueName = null;
+	
+	// The channel that publishes requests and receives the replies with
+	// direct reply-to. Null until the first request after connecting.
+	private RequestChannel m_connRequestChannel = null;
 	
-	private boolean m_connectionIsOpenNow = false;
-	private boolean m_userHasClosedConnection = false;
+	// The state flags are volatile instead of locked, because
+	// the send path reads them for every message
+	private volatile boolean m_connectionIsOpenNow = false;
+	private volatile boolean m_userHasClosedConnection = false;
 	
-	// This will enable retrying the connection after a certain period
-	private int m_connectRetryCountdown = 0;
+	// The count of failed connect attempts in a row. This determines the
+	// backoff before the next attempt. Only one connect attempt runs at a time.
+	private int m_failedConnectAttempts = 0;
 	
-	// The timer is used for sending and connecting, as the class is asynchronous
+	// Whether a connect attempt has been scheduled or is running
+	private final AtomicBoolean m_connectScheduled = new AtomicBoolean(false);
+	
+	// The timer is used for scheduling connect attempts, as the class is asynchronous.
+	// The connectors share the timer thread, and each has a task of its own.
+	// The attempts themselves run in the connect threads of SharedConnection.
 	private Timer m_timer = null;
+	private TimerTask m_timerTask = null;
+	
+	// Each lane has a publisher thread, a send queue and a channel. Each topic
+	// maps to one lane, so the order within a topic is retained.
+	private final PublishLane[] m_lanes;
+	
+	// Reassembles large messages received in chunks. The reassembly may write
+	// to disk, so it runs in a thread of its own instead of the consumer thread.
+	private final ChunkAssembler m_chunkAssembler;
+	private final ThreadPoolExecutor m_chunkExecutor;
+	
+	// Requests waiting for a reply by correlation id. The correlation ids
+	// start with a prefix unique to the connector.
+	private final ConcurrentHashMap<String, PendingRequest> m_pendingRequests = new ConcurrentHashMap<>();
+	private final String m_correlationPrefix = UUID.randomUUID().toString() + "-";
+	private final AtomicLong m_correlationCounter = new AtomicLong(0);
 	
-	private LinkedList<MessageToBeSent> m_sendQueue = null;
+	// Expires the requests. The wheel has a slot for each tick of a bit over
+	// 10 seconds, and longer timeouts take multiple rounds. The timer task
+	// runs only while the wheel has items.
+	private final TimingWheel<String> m_requestTimeouts = new TimingWheel<>(RequestTick_ms, 1024, System.currentTimeMillis());
+	private final AtomicBoolean m_requestTimerRunning = new AtomicBoolean(false);
+	
+	// Metrics of publishing and connection state
+	private final ConnectorMetrics m_metrics = new ConnectorMetrics();
+	
+	// The JMX registration. The counter makes the names of the connectors unique.
+	private static final AtomicInteger s_connectorCounter = new AtomicInteger(0);
+	private final String m_objectNameBase;
+	private final ConnectorStatisticsMXBean m_statistics = new Statistics();
 	
 	
 	/**
@@ -97,9 +158,33 @@ public class AmqpConnector
 	 */
 	public AmqpConnector(AmqpPropsManager props, boolean debugOn, String ... topics) throws CommunicationException
 	{
-		m_debugEnabled = debugOn;
+		m_log = new ConnectorLog(AmqpConnector.class, debugOn);
 		m_amqpProperties = props;
-		m_sendQueue = new LinkedList<>();
+		
+		m_chunkAssembler = new ChunkAssembler(props.getChunkReassemblyMemory(), props.getChunkTimeout());
+		m_chunkExecutor = createChunkExecutor(props.getInboundQueueCapacity());
+		
+		// Starting the publishers
+		m_lanes = new PublishLane[props.getPublishChannelCount()];
+		AtomicLong queueBytes = new AtomicLong(0);
+		
+		for (int i = 0; i < m_lanes.length; ++i)
+		{
+			try
+			{
+				m_lanes[i] = new PublishLane(m_log, props, m_metrics, i, m_lanes.length, queueBytes);
+			}
+			catch (CommunicationException e)
+			{
+				// Stopping the lanes already started
+				for (int j = 0; j < i; ++j)
+				{
+					m_lanes[j].close();
+				}
+				
+				throw e;
+			}
+		}
 		
 		// Creating a notifier for each topic.
 		// This does not include any network traffic.
@@ -107,12 +192,27 @@ public class AmqpConnector
 		{
 			for (String t : topics)
 			{
-				Notifier notifier = new Notifier(t);
-				m_notifiers.put(t, notifier);
+				// Skipping duplicates, because each notifier has a thread
+				if (!m_notifiers.containsKey(t))
+				{
+					Notifier notifier = new Notifier(t, props.getInboundQueueCapacity(), props.getInboundOverflowPolicy());
+					m_notifiers.put(t, notifier);
+				}
 			}
 		}
 		
-		m_timer = new Timer();
+		m_topicMatcher = new TopicMatcher<>(m_notifiers);
+		
+		// Registering the statistics to JMX
+		m_objectNameBase = "eu.cocop.amqp2math:type=AmqpConnector,id=" + s_connectorCounter.incrementAndGet();
+		registerMBean(m_objectNameBase, m_statistics);
+		
+		for (Notifier n : m_notifiers.values())
+		{
+			registerMBean(getTopicObjectName(n.getStatistics().getTopic()), n.getStatistics());
+		}
+		
+		m_timer = SharedConnection.acquireTimer();
 		
 		int timerPeriod_ms = 1000;
 		// Use a longer timer period when debugging
@@ -122,14 +222,18 @@ public class AmqpConnector
 		// Using the "schedule" method instead of "scheduleAtFixedRate".
 		// Therefore, if the execution of run() is delayed, this will delay
 		// the next timer cycle as well.
-		m_timer.schedule(new TimerTask()
+		m_timerTask = new TimerTask()
 		{
 			@Override
 			public void run()
 			{
 				doTimerTasks();
 			}
-		}, 0, timerPeriod_ms);
+		};
+		m_timer.schedule(m_timerTask, timerPeriod_ms, timerPeriod_ms);
+		
+		// Connecting right away
+		scheduleConnect(0);
 	}
 	
 	/**
@@ -144,7 +248,7 @@ public class AmqpConnector
 		
 		if (!m_notifiers.containsKey(topic))
 		{
-			String msg = String.format("Unknown topic \"%s\" - topics must be specified in the constructor call", topic);
+			String msg = String.format("Unknown topic \"%s\" - topics must be specified in the constructor call or subscribed", topic);
 			throw new IllegalArgumentException(msg);
 		}
 		
@@ -152,432 +256,1664 @@ public class AmqpConnector
 	}
 	
 	/**
-	 * Sends a message to given topic.
+	 * Starts to listen a topic in addition to the existing ones. If connected, this
+	 * binds the topic to the queue of the connector at once. Otherwise, the binding
+	 * occurs when the connection is set up. If the topic is subscribed already,
+	 * this returns the existing notifier.
 	 * @param topic Topic.
-	 * @param msg Message.
+	 * @return Notifier object for the topic.
 	 */
-	public void sendMessage(String topic, byte[] msg)
+	public Notifier subscribe(String topic)
 	{
 		expectObjectNotClosed();
 		
-		// Putting the message to a queue
-		synchronized (m_variableLock)
-		{
-			MessageToBeSent obj = new MessageToBeSent(topic, msg);
-			m_sendQueue.add(obj);
-		}
-	}
-	
-	/**
-	 * Releases the resources the object utilises.
-	 */
-	public void close()
-	{
-		synchronized (m_variableLock)
-		{
-			// This will cause the timer to close the connection and end
-			m_userHasClosedConnection = true;
-		}
-	}
-	
-	
-	// ### Private methods ###
-	
-	private void doTimerTasks()
-	{
-		try
+		synchronized (m_connectionLock)
 		{
-			// Quit requested?
-			if (userWantsToQuit())
-			{
-				printDebugMessage("User wants to quit, timer ending");
-				
-				// Ending timer execution
-				m_timer.cancel();
-				
-				// Closing the connection
-				connCloseConnection();
-				
-				return;
-			}
+			Notifier existing = m_notifiers.get(topic);
 			
-			// Proceed only if the connection is already open or if it can be opened successfully.
-			if (!connectionIsOpenNow() && !trySetUpConnectionAndListeners())
+			if (existing != null)
 			{
-				return;
+				return existing;
 			}
 			
-			// Send if anything to send
-			sendIfAnythingToSend();
-		}
-		// 1) This block should catch basic errors where the connection has just closed.
-		catch (AlreadyClosedException e)
-		{
-			printError("Failed to send because the connection is closed. A retry will occur.");
+			Notifier notifier = new Notifier(topic, m_amqpProperties.getInboundQueueCapacity(),
+					m_amqpProperties.getInboundOverflowPolicy());
+			m_notifiers.put(topic, notifier);
+			registerMBean(getTopicObjectName(topic), notifier.getStatistics());
 			
-			synchronized (m_variableLock)
+			// Updating the routing before the binding so that no message goes unrouted
+			m_topicMatcher = new TopicMatcher<>(m_notifiers);
+			
+			try
 			{
-				m_connectionIsOpenNow = false;
+				if (m_connChannel != null)
+				{
+					if (m_connQueueName == null)
+					{
+						// This is the first topic, so there is no queue yet
+						connSetUpConsumer();
+					}
+					else
+					{
+						m_connChannel.queueBind(m_connQueueName, m_amqpProperties.getExchange(), topic, true);
+						m_log.debug("Now consuming topic \"{}\"", topic);
+					}
+				}
 			}
-		}
-		// 2) This block catches the rest of errors. A retry will occur.
-		catch (Exception e)
-		{
-			printError("Failed to perform timer tasks: " + e.getMessage());
+			catch (IOException | RuntimeException e)
+			{
+				// The channel is probably unusable. Reconnecting will set up all bindings.
+				m_log.error("Failed to bind topic \"{}\"; reconnecting: {}", topic, e.getMessage());
+				connCloseConnection();
+			}
+			
+			return notifier;
 		}
 	}
 	
-	private void sendIfAnythingToSend() throws IOException
+	/**
+	 * Stops listening a topic. If connected, this unbinds the topic from the queue
+	 * of the connector at once. The notifier of the topic is closed, and any messages
+	 * it has not delivered yet are discarded.
+	 * @param topic Topic.
+	 * @exception IllegalArgumentException Thrown if the topic is unknown.
+	 */
+	public void unsubscribe(String topic)
 	{
-		MessageToBeSent messageData = null;
+		expectObjectNotClosed();
 		
-		// There is no need to reserve the queue entirely for this function,
-		// because the timer will always fire serially and never parallerly.
-		// Therefore, only one thread will remove items from it.
-		// Still, synchronisation is required because another adds
-		// items to the queue.
-		synchronized (m_variableLock)
+		Notifier notifier;
+		
+		synchronized (m_connectionLock)
 		{
-			if (m_sendQueue.isEmpty())
+			notifier = m_notifiers.remove(topic);
+			
+			if (notifier == null)
 			{
-				// Nothing to send currently
-				//printDebugMessage("Nothing to send");
-				return;
+				throw new IllegalArgumentException("Unknown topic \"" + topic + "\"");
+			}
+			
+			try
+			{
+				if (m_connChannel != null && m_connQueueName != null)
+				{
+					m_connChannel.queueUnbind(m_connQueueName, m_amqpProperties.getExchange(), topic);
+					m_log.debug("Stopped consuming topic \"{}\"", topic);
+				}
+			}
+			catch (IOException | RuntimeException e)
+			{
+				// The channel is probably unusable. Reconnecting will set up the remaining bindings.
+				m_log.error("Failed to unbind topic \"{}\"; reconnecting: {}", topic, e.getMessage());
+				connCloseConnection();
 			}
 			
-			// Peeking the next message to send
-			messageData = m_sendQueue.peek();
+			// Messages that were in flight match no topic anymore
+			m_topicMatcher = new TopicMatcher<>(m_notifiers);
 		}
 		
-		// Sending.
-		// Use a TTL of 15 minutes for the messages.
-		int ttlMilliseconds = 15 * 60 * 1000; // 15 minutes
-		BasicProperties props = new BasicProperties().builder()
-				.expiration(Integer.toString(ttlMilliseconds))
-				.build();
-		connSendMessage(messageData.topic, messageData.body, props);
-		
-		// No exception -> sent successfully. Remove the message from the queue.
-		printDebugMessage("Message was sent to topic \"" + messageData.topic + "\"");
-		
-		synchronized (m_variableLock)
-		{
-			m_sendQueue.remove();
-		}
+		unregisterMBean(getTopicObjectName(topic));
+		notifier.close();
 	}
 	
-	private void printError(String msg)
+	/**
+	 * Sends a message to given topic. The message waits in the send queue until
+	 * the publisher has sent it. If the send queue is full, the overflow policy
+	 * set in AmqpPropsManager applies. By default, the queue holds 100000 messages
+	 * or 64 MiB, and the oldest messages are dropped to make room (DROP_OLDEST).
+	 * The count of dropped messages is available from getDroppedMessageCount.
+	 * @param topic Topic.
+	 * @param msg Message.
+	 * @exception IllegalArgumentException Thrown if the message is larger than the byte capacity of the send queue. Use sendLarge for such messages.
+	 * @exception IllegalStateException Thrown if the send queue is full and the policy is THROW.
+	 */
+	public void sendMessage(String topic, byte[] msg)
 	{
-		String fullMsg = getMessageForPrint("ERR", msg);
-		System.err.println(fullMsg);
+		expectObjectNotClosed();
+		enqueueForSending(topic, msg, null);
 	}
 	
-	private void printDebugMessage(String msg)
+	/**
+	 * Sends a message to given topic. The returned future completes once
+	 * the broker has confirmed the message if publisher confirms are enabled
+	 * (see AmqpPropsManager). Otherwise, it completes once the message has been
+	 * written to the connection. If the connector is closed before this,
+	 * or if the message is dropped due to a full send queue, the future
+	 * completes exceptionally with a CommunicationException.
+	 * Please note that the future may complete in a thread of the AMQP client;
+	 * use the "async" methods of the future for any lengthy processing.
+	 * @param topic Topic.
+	 * @param msg Message.
+	 * @return Future to indicate when the message has been delivered.
+	 * @exception IllegalArgumentException Thrown if the message is larger than the byte capacity of the send queue. Use sendLarge for such messages.
+	 * @exception IllegalStateException Thrown if the send queue is full and the policy is THROW.
+	 */
+	public CompletableFuture<Void> sendMessageAsync(String topic, byte[] msg)
 	{
-		printDebugMessage(msg, false); // By default, do not override debug
+		expectObjectNotClosed();
+		
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		enqueueForSending(topic, msg, future);
+		return future;
 	}
 	
-	private void printDebugMessage(String msg, boolean overrideDebug)
+	/**
+	 * Sends a request to given topic and returns a future for the reply.
+	 * The service that listens to the topic replies with reply(). The reply
+	 * arrives via the direct reply-to of RabbitMQ, so no queue is declared
+	 * for it. Any count of requests can wait for a reply at the same time.
+	 * Unlike sendMessage, this sends right away instead of using the send queue.
+	 * Please note that the future may complete in a thread of the AMQP client,
+	 * which then cannot receive messages until the dependent actions of the
+	 * future return; use the "async" methods of the future for any lengthy
+	 * processing. Timeouts complete the future in a pool thread.
+	 * In Matlab, you can wait for the reply with "reply = future.get();".
+	 * @param topic Topic.
+	 * @param msg Request message.
+	 * @param timeout_ms Timeout in milliseconds.
+	 * @return Future that completes with the reply message. If no reply arrives
+	 * in time, the future completes exceptionally with a TimeoutException. If the
+	 * connector is not connected, sending fails or the connection is lost
+	 * before the reply, it completes exceptionally with a CommunicationException.
+	 * @exception IllegalArgumentException Thrown if the timeout is not positive.
+	 */
+	public CompletableFuture<byte[]> request(String topic, byte[] msg, int timeout_ms)
 	{
-		// The debug flag can be overridden
-		if (m_debugEnabled || overrideDebug)
+		expectObjectNotClosed();
+		
+		if (timeout_ms < 1)
 		{
-			String fullMsg = getMessageForPrint("INF", msg);
-			System.out.println(fullMsg);
+			throw new IllegalArgumentException("The timeout must be positive");
 		}
-	}
-	
-	private String getMessageForPrint(String tag, String msg)
-	{
-		DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
-		String timeString = LocalTime.now().format(formatter);
-		return String.format("%s [AmqpConnector] (%s) %s", timeString, tag, msg);
-	}
-	
-	private void expectObjectNotClosed()
-	{
-		if (userWantsToQuit())
+		
+		CompletableFuture<byte[]> future = new CompletableFuture<>();
+		String correlationId = m_correlationPrefix + Long.toHexString(m_correlationCounter.incrementAndGet());
+		
+		// Registering before sending so that even a fast reply finds the request
+		PendingRequest pending = new PendingRequest(future);
+		m_pendingRequests.put(correlationId, pending);
+		pending.timeout = m_requestTimeouts.schedule(correlationId, timeout_ms, System.currentTimeMillis());
+		startRequestTimer();
+		
+		try
 		{
-			throw new IllegalStateException("User has already closed the AMQP connector");
+			synchronized (m_connectionLock)
+			{
+				connSendRequest(topic, msg, correlationId, pending);
+			}
 		}
-	}
-	
-	private boolean connectionIsOpenNow()
-	{
-		synchronized (m_variableLock)
+		catch (CommunicationException e)
 		{
-			return m_connectionIsOpenNow;
+			failRequest(correlationId, e);
 		}
+		
+		return future;
 	}
 	
-	private boolean userWantsToQuit()
+	/**
+	 * Replies to a request received from a notifier. The reply is sent right
+	 * away instead of using the send queue.
+	 * @param request The event of the request.
+	 * @param msg Reply message.
+	 * @throws CommunicationException Thrown if the connector is not connected or sending fails.
+	 * @exception IllegalArgumentException Thrown if the message is not a request.
+	 */
+	public void reply(Notifier.MessageReceivedEvent request, byte[] msg) throws CommunicationException
 	{
-		synchronized (m_variableLock)
+		expectObjectNotClosed();
+		
+		if (request.replyTo == null)
+		{
+			throw new IllegalArgumentException("The message is not a request");
+		}
+		
+		synchronized (m_connectionLock)
 		{
-			return m_userHasClosedConnection;
+			connSendReply(request.replyTo, request.correlationId, msg);
 		}
 	}
 	
+	/**
+	 * Returns the count of requests that wait for a reply.
+	 * @return Count.
+	 */
+	public int getPendingRequestCount()
+	{
+		return m_pendingRequests.size();
+	}
 	
-	
-	// ### Methods that modify connection-related objects ###
-	
-	// This code section was created to enable seeing easily if each access
-	// to the connection-related object is synchronised appropriately.
-	
-	// This top-level method uses the lock statement
-	private boolean trySetUpConnectionAndListeners()
+	/**
+	 * Sends a batch of messages to given topic. The batch is enqueued
+	 * atomically, and the publisher sends it in one burst. This is much faster
+	 * than calling sendMessage for each message, because the math tool pays its
+	 * call overhead once for the whole batch. If the send queue is full, the
+	 * overflow policy set in AmqpPropsManager applies to the batch as a whole.
+	 * In Matlab, an int8 matrix converts to byte[][] with a row for each message.
+	 * @param topic Topic.
+	 * @param msgs Messages.
+	 * @exception IllegalArgumentException Thrown if the batch is larger than the capacity of the send queue.
+	 * @exception IllegalStateException Thrown if the send queue is full and the policy is THROW.
+	 */
+	public void sendMessages(String topic, byte[][] msgs)
 	{
-		// Time to retry?
-		synchronized (m_variableLock)
-		{
-			if (m_connectRetryCountdown > 0)
-			{
-				// Retry interval not gone yet
-				//printDebugMessage("Retry connection in " + m_connectRetryCountdown);
-				--m_connectRetryCountdown;
-				return false;
-			}
-		}
+		String[] topics = new String[msgs.length];
+		Arrays.fill(topics, topic);
 		
-		// Close in case already open
-		connCloseConnection();
+		sendMessages(topics, msgs);
+	}
+	
+	/**
+	 * Sends a batch of messages, each to its own topic. The batch is enqueued
+	 * atomically, and the publisher sends it in one burst. If the send queue is full,
+	 * the overflow policy set in AmqpPropsManager applies to the batch as a whole.
+	 * With multiple publish channels, the batch is split between their send queues,
+	 * and each part is atomic on its own.
+	 * @param topics Topics. There must be as many topics as messages.
+	 * @param msgs Messages.
+	 * @exception IllegalArgumentException Thrown if the array lengths differ or if the batch is larger than the capacity of the send queue.
+	 * @exception IllegalStateException Thrown if the send queue is full and the policy is THROW.
+	 */
+	public void sendMessages(String[] topics, byte[][] msgs)
+	{
+		expectObjectNotClosed();
 		
-		try
-		{
-			synchronized (m_connectionLock)
-			{
-				// Connecting
-				connOpenAmqpConnection();
-				printDebugMessage("Connection set up successfully", true);
-				
-				// Setting up listeners for topics
-				for (String topic : m_notifiers.keySet())
-				{
-					connSetUpNotifierForTopic(topic, m_notifiers.get(topic));
-					printDebugMessage("Now consuming topic \"" + topic + "\"");
-				}
-			}
-		}
-		catch (IOException | CommunicationException e)
+		if (topics.length != msgs.length)
 		{
-			String errMsg = String.format("Failed to set up connection. Retry in %s s. \"%s\"",
-					Integer.toString(ConnectionRetryInterval_s), e.getMessage());
-			printError(errMsg);
-			
-			// Resetting the retry counter
-			synchronized (m_variableLock)
-			{
-				m_connectRetryCountdown = ConnectionRetryInterval_s;
-			}
-			
-			// Close in case integrity not OK
-			connCloseConnection();
-			
-			return false;
+			String msg = String.format("Got %d topics but %d messages", topics.length, msgs.length);
+			throw new IllegalArgumentException(msg);
 		}
 		
-		synchronized (m_variableLock)
+		if (m_lanes.length == 1)
 		{
-			m_connectionIsOpenNow = true;
+			m_lanes[0].offerAll(topics, msgs);
+			return;
 		}
 		
-		// Success
-		return true;
-	}
-	
-	// Only call this method when the connection lock is applied!
-	private void connOpenAmqpConnection() throws CommunicationException
-	{
-		ConnectionFactory factory = new ConnectionFactory();
+		// Splitting the batch between lanes. The order is retained within each lane.
+		int[] laneIndices = new int[topics.length];
+		int[] laneCounts = new int[m_lanes.length];
 		
-		try
-		{
-			if (m_amqpProperties.getSecure())
-			{
-				// Due to calling this function, no certificate verification will be performed
-				factory.useSslProtocol();
-			}
-	        
-			factory.setUri(m_amqpProperties.getUrl());
-		}
-		catch (KeyManagementException | NoSuchAlgorithmException | URISyntaxException e)
+		for (int i = 0; i < topics.length; ++i)
 		{
-			throw new CommunicationException("Connection setup failed: " + e.getMessage(), e);
+			laneIndices[i] = getLaneIndex(topics[i]);
+			++laneCounts[laneIndices[i]];
 		}
 		
-		try
+		for (int lane = 0; lane < m_lanes.length; ++lane)
 		{
-			// Opening a connection
-			m_connConnection = factory.newConnection();
-			m_connChannel = m_connConnection.createChannel();
+			if (laneCounts[lane] == 0)
+			{
+				continue;
+			}
 			
-			// Adding shutdown listeners
-			ShutdownListener shutdownListener = new ShutdownListener()
-			{				
-				@Override
-				public void shutdownCompleted(ShutdownSignalException arg0)
+			String[] laneTopics = new String[laneCounts[lane]];
+			byte[][] laneMsgs = new byte[laneCounts[lane]][];
+			int count = 0;
+			
+			for (int i = 0; i < topics.length; ++i)
+			{
+				if (laneIndices[i] == lane)
 				{
-					// Passing execution to a local method
-					myShutdownCompleted();
+					laneTopics[count] = topics[i];
+					laneMsgs[count] = msgs[i];
+					++count;
 				}
-			};
-			m_connConnection.addShutdownListener(shutdownListener);
-			m_connChannel.addShutdownListener(shutdownListener);
+			}
 			
-			// Declaring the desired exchange
-			m_connChannel.exchangeDeclare(m_amqpProperties.getExchange(), "topic",
-					m_amqpProperties.getExchangeDurable(), m_amqpProperties.getExchangeAutoDelete(), null);
-		}
-		catch (TimeoutException e)
-		{
-			handleConnectError(e); // throws CommunicationException
-		}
-		catch (IOException e)
-		{
-			handleConnectError(e); // throws CommunicationException
+			m_lanes[lane].offerAll(laneTopics, laneMsgs);
 		}
 	}
 	
-	private void handleConnectError(Exception e) throws CommunicationException
+	/**
+	 * Sends a vector of double values to given topic. The values are encoded with
+	 * NumericCodec, and the receiver can decode them with the methods of
+	 * MessageReceivedEvent or NumericCodec. The vector is a column (n x 1).
+	 * @param topic Topic.
+	 * @param values Values.
+	 * @exception IllegalStateException Thrown if the send queue is full and the policy is THROW.
+	 */
+	public void sendDoubles(String topic, double[] values)
 	{
-		String msgStart = "Failed to create AmqpConnector";
-		String errMsg = String.format("%s: %s: %s", msgStart, e.getClass().getSimpleName(), e.getMessage());
-		printError(errMsg);
-		
-		if (e.getCause() != null)
-		{
-			Throwable cause = e.getCause();
-			printError("-- Error cause: " + cause.getMessage());
-		}
-		
-		throw new CommunicationException(msgStart, e);
+		sendMessage(topic, NumericCodec.encode(values, values.length, 1));
 	}
 	
-	private void myShutdownCompleted()
+	/**
+	 * Sends a vector of single values to given topic. The values are encoded with
+	 * NumericCodec, and the receiver can decode them with the methods of
+	 * MessageReceivedEvent or NumericCodec. The vector is a column (n x 1).
+	 * @param topic Topic.
+	 * @param values Values.
+	 * @exception IllegalStateException Thrown if the send queue is full and the policy is THROW.
+	 */
+	public void sendSingles(String topic, float[] values)
 	{
-		// The connection has shut down!
-		synchronized (m_variableLock)
-		{
-			// This flag will trigger a reconnect unless the user called close()
-			m_connectionIsOpenNow = false;
-		}
-		
-		if (!userWantsToQuit())
-		{
-			printError("Connection lost!");
-		}
+		sendMessage(topic, NumericCodec.encode(values, values.length, 1));
 	}
 	
-	// Only call this method when the connection lock is applied!
-	private void connSetUpNotifierForTopic(String topic, Notifier notifier) throws IOException
+	/**
+	 * Sends a vector of int16 values to given topic. The values are encoded with
+	 * NumericCodec, and the receiver can decode them with the methods of
+	 * MessageReceivedEvent or NumericCodec. The vector is a column (n x 1).
+	 * @param topic Topic.
+	 * @param values Values.
+	 * @exception IllegalStateException Thrown if the send queue is full and the policy is THROW.
+	 */
+	public void sendInt16s(String topic, short[] values)
 	{
-		// Creating a message queue
-		String explicitName = ""; // Empty value; the name will be generated
-        boolean durable = false; // The queue does not survive a broker restart
-        boolean exclusive = true; // Exclusive to this app, delete on exit
-        boolean autoDelete = true; // Delete the queue if no consumer uses it
-		String queueName = m_connChannel.queueDeclare(explicitName, durable, exclusive, autoDelete, null).getQueue();
-		m_connChannel.queueBind(queueName, m_amqpProperties.getExchange(), topic);
-		
-		// Creating a consumer object
-		MyConsumer consumer = new MyConsumer(m_connChannel, notifier);
-		boolean autoAck = true; // No manual acks
-		m_connChannel.basicConsume(queueName, autoAck, consumer);
+		sendMessage(topic, NumericCodec.encode(values, values.length, 1));
 	}
 	
-	// This top-level method uses the lock statement
-	private void connSendMessage(String topic, byte[] msg, BasicProperties props) throws IOException
-	{
+	/**
+	 * Sends a vector of int32 values to given topic. The values are encoded with
+	 * NumericCodec, and the receiver can decode them with the methods of
+	 * MessageReceivedEvent or NumericCodec. The vector is a column (n x 1).
+	 * @param topic Topic.
+	 * @param values Values.
+	 * @exception IllegalStateException Thrown if the send queue is full and the policy is THROW.
+	 */
+	public void sendInt32s(String topic, int[] values)
+	{
+		sendMessage(topic, NumericCodec.encode(values, values.length, 1));
+	}
+	
+	/**
+	 * Sends a vector of int64 values to given topic. The values are encoded with
+	 * NumericCodec, and the receiver can decode them with the methods of
+	 * MessageReceivedEvent or NumericCodec. The vector is a column (n x 1).
+	 * @param topic Topic.
+	 * @param values Values.
+	 * @exception IllegalStateException Thrown if the send queue is full and the policy is THROW.
+	 */
+	public void sendInt64s(String topic, long[] values)
+	{
+		sendMessage(topic, NumericCodec.encode(values, values.length, 1));
+	}
+	
+	/**
+	 * Sends a matrix of double values to given topic. The values are encoded with NumericCodec. In Matlab, pass A(:) to get the column-major order.
+	 * @param topic Topic.
+	 * @param values Values in the column-major order.
+	 * @param rows Row count.
+	 * @param cols Column count.
+	 * @exception IllegalArgumentException Thrown if the size does not match the count of values.
+	 * @exception IllegalStateException Thrown if the send queue is full and the policy is THROW.
+	 */
+	public void sendMatrix(String topic, double[] values, int rows, int cols)
+	{
+		sendMessage(topic, NumericCodec.encode(values, rows, cols));
+	}
+	
+	/**
+	 * Sends a matrix of single values to given topic. The values are encoded with NumericCodec.
+	 * @param topic Topic.
+	 * @param values Values in the column-major order.
+	 * @param rows Row count.
+	 * @param cols Column count.
+	 * @exception IllegalArgumentException Thrown if the size does not match the count of values.
+	 * @exception IllegalStateException Thrown if the send queue is full and the policy is THROW.
+	 */
+	public void sendMatrix(String topic, float[] values, int rows, int cols)
+	{
+		sendMessage(topic, NumericCodec.encode(values, rows, cols));
+	}
+	
+	/**
+	 * Sends a matrix of int16 values to given topic. The values are encoded with NumericCodec.
+	 * @param topic Topic.
+	 * @param values Values in the column-major order.
+	 * @param rows Row count.
+	 * @param cols Column count.
+	 * @exception IllegalArgumentException Thrown if the size does not match the count of values.
+	 * @exception IllegalStateException Thrown if the send queue is full and the policy is THROW.
+	 */
+	public void sendMatrix(String topic, short[] values, int rows, int cols)
+	{
+		sendMessage(topic, NumericCodec.encode(values, rows, cols));
+	}
+	
+	/**
+	 * Sends a matrix of int32 values to given topic. The values are encoded with NumericCodec.
+	 * @param topic Topic.
+	 * @param values Values in the column-major order.
+	 * @param rows Row count.
+	 * @param cols Column count.
+	 * @exception IllegalArgumentException Thrown if the size does not match the count of values.
+	 * @exception IllegalStateException Thrown if the send queue is full and the policy is THROW.
+	 */
+	public void sendMatrix(String topic, int[] values, int rows, int cols)
+	{
+		sendMessage(topic, NumericCodec.encode(values, rows, cols));
+	}
+	
+	/**
+	 * Sends a matrix of int64 values to given topic. The values are encoded with NumericCodec.
+	 * @param topic Topic.
+	 * @param values Values in the column-major order.
+	 * @param rows Row count.
+	 * @param cols Column count.
+	 * @exception IllegalArgumentException Thrown if the size does not match the count of values.
+	 * @exception IllegalStateException Thrown if the send queue is full and the policy is THROW.
+	 */
+	public void sendMatrix(String topic, long[] values, int rows, int cols)
+	{
+		sendMessage(topic, NumericCodec.encode(values, rows, cols));
+	}
+	
+	/**
+	 * Sends a large payload from a stream in chunks, which avoids the message
+	 * size limits of the broker and keeps only a few chunks in memory at a time.
+	 * The receiving connector reassembles the payload and delivers it as one
+	 * message. The chunks are never dropped due to a full send queue; instead,
+	 * this waits for room. Without a spool, this thus waits while the connection
+	 * is down. The chunk size is set in AmqpPropsManager.
+	 * @param topic Topic.
+	 * @param in Stream. This is read to the end but not closed.
+	 * @throws IOException Thrown if reading the stream fails.
+	 * @throws CommunicationException Thrown if the connector is closed during the transfer.
+	 */
+	public void sendLarge(String topic, InputStream in) throws IOException, CommunicationException
+	{
+		sendLarge(topic, in, -1);
+	}
+	
+	/**
+	 * Sends a large payload in chunks. See sendLarge(String, InputStream).
+	 * As the size is known, the receiver can reassemble it in a pre-sized array.
+	 * @param topic Topic.
+	 * @param msg Message.
+	 * @throws CommunicationException Thrown if the connector is closed during the transfer.
+	 */
+	public void sendLarge(String topic, byte[] msg) throws CommunicationException
+	{
+		try
+		{
+			sendLarge(topic, new ByteArrayInputStream(msg), msg.length);
+		}
+		catch (IOException e)
+		{
+			// Unexpected with an array
+			throw new CommunicationException("Failed to read the message: " + e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * Sends the contents of a file in chunks. See sendLarge(String, InputStream).
+	 * As the size is known, the receiver can reassemble it in a pre-sized array.
+	 * @param topic Topic.
+	 * @param path The path of the file.
+	 * @throws IOException Thrown if reading the file fails.
+	 * @throws CommunicationException Thrown if the connector is closed during the transfer.
+	 */
+	public void sendLargeFile(String topic, String path) throws IOException, CommunicationException
+	{
+		File file = new File(path);
+		
+		try (InputStream in = new FileInputStream(file))
+		{
+			sendLarge(topic, in, file.length());
+		}
+	}
+	
+	/**
+	 * Returns the count of messages dropped because the send queue was full.
+	 * @return Count.
+	 */
+	public long getDroppedMessageCount()
+	{
+		long retval = 0;
+		
+		for (PublishLane lane : m_lanes)
+		{
+			retval += lane.getDroppedCount();
+		}
+		
+		return retval;
+	}
+	
+	/**
+	 * Gets a snapshot of the statistics of the connector and its topics.
+	 * The same statistics are available in JMX under the domain "eu.cocop.amqp2math".
+	 * @return Statistics.
+	 */
+	public ConnectorStatistics getStatistics()
+	{
+		Notifier[] notifiers = m_notifiers.values().toArray(new Notifier[0]);
+		TopicStatistics[] topics = new TopicStatistics[notifiers.length];
+		
+		for (int i = 0; i < notifiers.length; ++i)
+		{
+			topics[i] = new TopicStatistics(notifiers[i].getStatistics());
+		}
+		
+		return new ConnectorStatistics(m_statistics, topics);
+	}
+	
+	/**
+	 * Releases the resources the object utilises.
+	 */
+	public void close()
+	{
+		// This will cause the timer to close the connection and end
+		m_userHasClosedConnection = true;
+		
+		// The publishers end as well
+		for (PublishLane lane : m_lanes)
+		{
+			lane.close();
+		}
+		
+		for (Notifier n : m_notifiers.values())
+		{
+			unregisterMBean(getTopicObjectName(n.getStatistics().getTopic()));
+			n.close();
+		}
+		
+		unregisterMBean(m_objectNameBase);
+		m_chunkExecutor.shutdownNow();
+		m_chunkAssembler.close();
+		
+		// Any replies would arrive to a closed connector
+		failAllRequests("The connector was closed before the reply");
+	}
+	
+	
+	// ### Private methods ###
+	
+	private static ThreadPoolExecutor createChunkExecutor(int queueCapacity)
+	{
+		// This is a daemon thread so that it will never
+		// prevent the JVM of the math tool from exiting
+		ThreadFactory threadFactory = new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread thread = new Thread(r, "AmqpConnector chunks");
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+		
+		// If the queue is full, the consumer waits for room like with the
+		// inbound queues of the notifiers
+		RejectedExecutionHandler waitForRoom = new RejectedExecutionHandler()
+		{
+			@Override
+			public void rejectedExecution(Runnable r, ThreadPoolExecutor executor)
+			{
+				if (executor.isShutdown())
+				{
+					throw new RejectedExecutionException("The connector has been closed");
+				}
+				
+				try
+				{
+					executor.getQueue().put(r);
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					throw new RejectedExecutionException("Interrupted while waiting for room", e);
+				}
+			}
+		};
+		
+		// One thread keeps the chunks in the order of arrival
+		return new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queueCapacity), threadFactory, waitForRoom);
+	}
+	
+	private void startRequestTimer()
+	{
+		// Running only while requests wait so that an idle connector
+		// does not wake up the shared timer thread
+		if (!m_requestTimerRunning.compareAndSet(false, true))
+		{
+			return;
+		}
+		
+		TimerTask task = new TimerTask()
+		{
+			@Override
+			public void run()
+			{
+				if (userWantsToQuit())
+				{
+					// Close() has failed the requests already
+					cancel();
+					return;
+				}
+				
+				expireRequests();
+				
+				if (m_requestTimeouts.size() == 0)
+				{
+					cancel();
+					m_requestTimerRunning.set(false);
+					
+					// A request may have been scheduled after checking the size but
+					// seen the timer running. Then, it is up to this task to restart.
+					if (m_requestTimeouts.size() > 0)
+					{
+						startRequestTimer();
+					}
+				}
+			}
+		};
+		
+		try
+		{
+			m_timer.schedule(task, RequestTick_ms, RequestTick_ms);
+		}
+		catch (IllegalStateException e)
+		{
+			// The timer has been cancelled, so the connector is closing
+		}
+	}
+	
+	private void expireRequests()
+	{
+		final List<String> expired = m_requestTimeouts.advance(System.currentTimeMillis());
+		
+		if (expired.isEmpty())
+		{
+			return;
+		}
+		
+		// Completing in a pool thread, because the dependent actions of the
+		// futures would otherwise hold back the timer of all connectors
+		ForkJoinPool.commonPool().execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				for (String correlationId : expired)
+				{
+					PendingRequest pending = m_pendingRequests.remove(correlationId);
+					
+					// Null if the reply arrived or the request failed already
+					if (pending != null)
+					{
+						pending.future.completeExceptionally(new TimeoutException("No reply within the timeout"));
+					}
+				}
+			}
+		});
+	}
+	
+	private void failRequest(String correlationId, CommunicationException e)
+	{
+		PendingRequest pending = m_pendingRequests.remove(correlationId);
+		
+		if (pending != null)
+		{
+			pending.cancelTimeout();
+			pending.future.completeExceptionally(e);
+		}
+	}
+	
+	private void failRequestsOfChannel(RequestChannel channel, String msg)
+	{
+		// The replies are bound to the consumer of the channel, so they cannot arrive anymore
+		for (Map.Entry<String, PendingRequest> entry : m_pendingRequests.entrySet())
+		{
+			if (entry.getValue().channel == channel)
+			{
+				failRequest(entry.getKey(), new CommunicationException(msg, null));
+			}
+		}
+	}
+	
+	private void failAllRequests(String msg)
+	{
+		for (String correlationId : m_pendingRequests.keySet())
+		{
+			failRequest(correlationId, new CommunicationException(msg, null));
+		}
+	}
+	
+	private void enqueueForSending(String topic, byte[] msg, CompletableFuture<Void> future)
+	{
+		// Putting the message to the queue of the lane. This wakes up the publisher.
+		m_lanes[getLaneIndex(topic)].offer(topic, msg, future);
+	}
+	
+	private void sendLarge(String topic, InputStream in, long size) throws IOException, CommunicationException
+	{
+		expectObjectNotClosed();
+		
+		// The lane of the topic retains the order of the chunks
+		PublishLane lane = m_lanes[getLaneIndex(topic)];
+		UUID id = UUID.randomUUID();
+		int chunkSize = m_amqpProperties.getChunkSize();
+		
+		// Reading one chunk ahead to know which chunk is the last
+		byte[] current = new byte[chunkSize];
+		byte[] next = new byte[chunkSize];
+		int currentLength = readFully(in, current);
+		
+		for (int sequence = 0; ; ++sequence)
+		{
+			int nextLength = currentLength < chunkSize ? 0 : readFully(in, next);
+			boolean last = nextLength == 0;
+			byte[] chunk = ChunkAssembler.createChunk(id, sequence, last, size, current, currentLength);
+			
+			if (!lane.offerWait(topic, ChunkAssembler.ChunkType, chunk))
+			{
+				throw new CommunicationException("The connector was closed before the message was sent", null);
+			}
+			
+			if (last)
+			{
+				return;
+			}
+			
+			byte[] swap = current;
+			current = next;
+			next = swap;
+			currentLength = nextLength;
+		}
+	}
+	
+	private static int readFully(InputStream in, byte[] buf) throws IOException
+	{
+		int length = 0;
+		
+		while (length < buf.length)
+		{
+			int count = in.read(buf, length, buf.length - length);
+			
+			if (count < 0)
+			{
+				break; // End of stream
+			}
+			
+			length += count;
+		}
+		
+		return length;
+	}
+	
+	private String getTopicObjectName(String topic)
+	{
+		return m_objectNameBase + ",topic=" + ObjectName.quote(topic);
+	}
+	
+	private void registerMBean(String name, Object bean)
+	{
+		try
+		{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			server.registerMBean(bean, new ObjectName(name));
+		}
+		catch (JMException | RuntimeException e)
+		{
+			// The statistics are still available with getStatistics()
+			m_log.error("Failed to register {} to JMX: {}", name, e.getMessage());
+		}
+	}
+	
+	private void unregisterMBean(String name)
+	{
+		try
+		{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = new ObjectName(name);
+			
+			if (server.isRegistered(objectName))
+			{
+				server.unregisterMBean(objectName);
+			}
+		}
+		catch (JMException | RuntimeException e)
+		{
+			m_log.error("Failed to unregister {} from JMX: {}", name, e.getMessage());
+		}
+	}
+	
+	private int getLaneIndex(String topic)
+	{
+		// Masking the sign bit so that the index is never negative
+		return (topic.hashCode() & 0x7fffffff) % m_lanes.length;
+	}
+	
+	private void doTimerTasks()
+	{
+		try
+		{
+			// Quit requested?
+			if (userWantsToQuit())
+			{
+				m_log.debug("User wants to quit, timer ending");
+				
+				// Ending timer execution. The timer thread ends
+				// once no connector uses it anymore.
+				m_timerTask.cancel();
+				SharedConnection.releaseTimer();
+				
+				// Closing the connection
+				connCloseConnection();
+				
+				return;
+			}
+			
+			// Set up the connection unless it is open already or an attempt is scheduled.
+			// Usually, a lost connection has scheduled an attempt already.
+			// The publisher threads will resume sending once the connection is open.
+			if (!connectionIsOpenNow())
+			{
+				scheduleConnect(0);
+			}
+			else
+			{
+				// Replacing the channels of lanes that have failed
+				connRepairLanes();
+				
+				// Sending acks that have waited for a batch to fill
+				connFlushAcks();
+			}
+			
+			// Updating the rates of the metrics
+			m_metrics.tick();
+			
+			for (Notifier n : m_notifiers.values())
+			{
+				n.tickMetrics();
+			}
+			
+			int expiredCount = m_chunkAssembler.expire();
+			
+			if (expiredCount > 0)
+			{
+				m_log.error("Discarded {} incomplete large message(s) due to timeout", expiredCount);
+			}
+		}
+		catch (Exception e)
+		{
+			// A retry will occur
+			m_log.error("Failed to perform timer tasks: {}", e.getMessage());
+		}
+	}
+	
+	private void scheduleConnect(long delay_ms)
+	{
+		// Only one attempt can be scheduled or running at a time
+		if (userWantsToQuit() || !m_connectScheduled.compareAndSet(false, true))
+		{
+			return;
+		}
+		
+		try
+		{
+			m_timer.schedule(new TimerTask()
+			{
+				@Override
+				public void run()
+				{
+					// Connecting blocks until the broker responds. Therefore, the attempt
+					// runs in another thread so that an unresponsive broker does not hold
+					// back the timer tasks of the other connectors.
+					SharedConnection.runConnectAttempt(new Runnable()
+					{
+						@Override
+						public void run()
+						{
+							runConnectAttempt();
+						}
+					});
+				}
+			}, delay_ms);
+		}
+		catch (IllegalStateException e)
+		{
+			// The timer has been cancelled, so the connector is closing
+			m_connectScheduled.set(false);
+		}
+	}
+	
+	private void runConnectAttempt()
+	{
+		long retryDelay_ms = -1;
+		
+		try
+		{
+			if (!userWantsToQuit() && !connectionIsOpenNow())
+			{
+				retryDelay_ms = trySetUpConnectionAndListeners();
+			}
+		}
+		finally
+		{
+			m_connectScheduled.set(false);
+		}
+		
+		if (retryDelay_ms >= 0)
+		{
+			scheduleConnect(retryDelay_ms);
+		}
+	}
+	
+	private long getConnectBackoff_ms()
+	{
+		return getConnectBackoff_ms(m_amqpProperties.getReconnectInitialDelay(),
+				m_amqpProperties.getReconnectMaxDelay(), m_failedConnectAttempts,
+				ThreadLocalRandom.current().nextDouble());
+	}
+	
+	/**
+	 * Computes the delay before the next connect attempt.
+	 * @param initial_ms Delay after the first failure.
+	 * @param max_ms Maximum delay.
+	 * @param failedAttempts The count of failed attempts in a row, at least 1.
+	 * @param random Random value between 0 (inclusive) and 1 (exclusive).
+	 * @return Delay.
+	 */
+	static long getConnectBackoff_ms(long initial_ms, long max_ms, int failedAttempts, double random)
+	{
+		// Exponential backoff. The exponent is limited to prevent overflow.
+		int exponent = Math.min(failedAttempts - 1, 30);
+		long backoff_ms = Math.min(max_ms, initial_ms << exponent);
+		
+		// Randomising the latter half so that connectors do not retry in lockstep
+		long half_ms = backoff_ms / 2;
+		return backoff_ms - half_ms + (long)((half_ms + 1) * random);
+	}
+	
+	private void expectObjectNotClosed()
+	{
+		if (userWantsToQuit())
+		{
+			throw new IllegalStateException("User has already closed the AMQP connector");
+		}
+	}
+	
+	private boolean connectionIsOpenNow()
+	{
+		return m_connectionIsOpenNow;
+	}
+	
+	private boolean userWantsToQuit()
+	{
+		return m_userHasClosedConnection;
+	}
+	
+	
+	
+	// ### Methods that modify connection-related objects ###
+	
+	// This code section was created to enable seeing easily if each access
+	// to the connection-related object is synchronised appropriately.
+	
+	// This top-level method uses the lock statement.
+	// Returns -1 on success, otherwise the delay before the next attempt.
+	private long trySetUpConnectionAndListeners()
+	{
+		// Close in case already open
+		connCloseConnection();
+		
+		try
+		{
+			// Opening a connection or sharing an existing one. This blocks until
+			// the broker responds, so the connection lock is not held meanwhile.
+			SharedConnection connection = acquireConnection();
+			
+			synchronized (m_connectionLock)
+			{
+				if (userWantsToQuit())
+				{
+					// Close() will not release the connection anymore
+					connection.release();
+					return -1;
+				}
+				
+				connOpenAmqpConnection(connection);
+				m_log.info("Connection set up successfully");
+				
+				// Limiting the deliveries not acked yet if enabled
+				if (m_amqpProperties.getPrefetchCount() > 0)
+				{
+					m_connAckTracker = new AckTracker(m_connChannel, m_amqpProperties.getPrefetchCount(),
+							m_amqpProperties.getAdaptivePrefetch());
+				}
+				
+				// Setting up a channel for each publish lane. The publishers resume
+				// right away while the topology for receiving is declared below.
+				for (PublishLane lane : m_lanes)
+				{
+					lane.attach(m_connConnection.getConnection().createChannel());
+				}
+				
+				// Setting up listeners for topics
+				connSetUpConsumer();
+			}
+		}
+		catch (IOException | CommunicationException e)
+		{
+			// Backing off exponentially
+			++m_failedConnectAttempts;
+			long backoff_ms = getConnectBackoff_ms();
+			
+			m_log.error("Failed to set up connection. Retry in {} ms. \"{}\"", backoff_ms, e.getMessage());
+			
+			// Close in case integrity not OK
+			connCloseConnection();
+			
+			return backoff_ms;
+		}
+		
+		m_failedConnectAttempts = 0;
+		m_connectionIsOpenNow = true;
+		m_metrics.connectionOpened();
+		
+		// Success
+		return -1;
+	}
+	
+	private SharedConnection acquireConnection() throws CommunicationException
+	{
+		try
+		{
+			return SharedConnection.acquire(m_amqpProperties);
+		}
+		catch (TimeoutException e)
+		{
+			handleConnectError(e); // throws CommunicationException
+		}
+		catch (IOException e)
+		{
+			handleConnectError(e); // throws CommunicationException
+		}
+		
+		return null; // Never reached
+	}
+	
+	// Only call this method when the connection lock is applied!
+	private void connOpenAmqpConnection(SharedConnection connection) throws CommunicationException
+	{
+		m_connConnection = connection;
+		
+		try
+		{
+			m_connChannel = m_connConnection.getConnection().createChannel();
+			
+			// Adding shutdown listeners
+			m_connShutdownListener = new Transport.ShutdownHandler()
+			{				
+				@Override
+				public void shutdownCompleted(boolean initiatedByApplication)
+				{
+					// Passing execution to a local method unless
+					// this connector closed the channel itself
+					if (!initiatedByApplication)
+					{
+						myShutdownCompleted();
+					}
+				}
+			};
+			m_connConnection.getConnection().addShutdownHandler(m_connShutdownListener);
+			m_connChannel.addShutdownHandler(m_connShutdownListener);
+			
+			// Declaring the desired exchange
+			m_connChannel.exchangeDeclare(m_amqpProperties.getExchange(),
+					m_amqpProperties.getExchangeDurable(), m_amqpProperties.getExchangeAutoDelete());
+		}
+		catch (IOException e)
+		{
+			handleConnectError(e); // throws CommunicationException
+		}
+	}
+	
+	private void handleConnectError(Exception e) throws CommunicationException
+	{
+		String msgStart = "Failed to create AmqpConnector";
+		m_log.error("Failed to create AmqpConnector: {}: {}", e.getClass().getSimpleName(), e.getMessage());
+		
+		if (e.getCause() != null)
+		{
+			Throwable cause = e.getCause();
+			m_log.error("-- Error cause: {}", cause.getMessage());
+		}
+		
+		throw new CommunicationException(msgStart, e);
+	}
+	
+	private void myShutdownCompleted()
+	{
+		// The connection has shut down!
+		m_connectionIsOpenNow = false;
+		m_metrics.connectionLost();
+		
+		if (!userWantsToQuit())
+		{
+			// Reconnecting at once. If this fails, the attempts will back off.
+			m_log.error("Connection lost! Reconnecting.");
+			scheduleConnect(0);
+		}
+	}
+	
+	// Only call this method when the connection lock is applied!
+	private void connSetUpConsumer() throws IOException
+	{
+		if (m_notifiers.isEmpty())
+		{
+			return; // Nothing to receive
+		}
+		
+		// Creating a message queue. All topics share the queue and the consumer,
+		// and the topic matcher routes each message to the notifiers.
+		// The queue is exclusive to this connector and deleted on exit.
+		m_connQueueName = m_connChannel.queueDeclare();
+		
+		// Binding each topic. Even if several bindings match a message, the
+		// broker delivers it to the queue only once. Not waiting for a reply to each
+		// binding; if a binding fails, the broker closes the channel, which leads
+		// to a reconnect.
+		for (String topic : m_notifiers.keySet())
+		{
+			m_connChannel.queueBind(m_connQueueName, m_amqpProperties.getExchange(), topic, false);
+			m_log.debug("Now consuming topic \"{}\"", topic);
+		}
+		
+		// Creating a consumer object. Manual acks are used if there is an ack tracker.
+		MyConsumer consumer = new MyConsumer(m_connAckTracker);
+		boolean autoAck = m_connAckTracker == null;
+		m_connChannel.basicConsume(m_connQueueName, autoAck, consumer);
+	}
+	
+	// This top-level method uses the lock statement
+	private void connFlushAcks() throws IOException
+	{
+		synchronized (m_connectionLock)
+		{
+			if (m_connAckTracker != null)
+			{
+				m_connAckTracker.flush();
+			}
+		}
+	}
+	
+	// This top-level method uses the lock statement
+	private void connRepairLanes() throws IOException
+	{
 		synchronized (m_connectionLock)
 		{
-			// TODO: This will not fail immediately after losing the connection.
-			// It is unclear what happens to messages sent before the connection is
-			// declared lost. :/
-			m_connChannel.basicPublish(m_amqpProperties.getExchange(), topic, props, msg);
+			for (PublishLane lane : m_lanes)
+			{
+				if (!lane.isChannelOpen() && m_connConnection != null)
+				{
+					// Only this lane gets a new channel; the others keep publishing
+					m_log.debug("Replacing the channel of a publish lane");
+					lane.attach(m_connConnection.getConnection().createChannel());
+				}
+			}
 		}
 	}
 	
 	// This top-level method uses the lock statement
+	// Only call this method when the connection lock is applied!
+	private void connSendRequest(String topic, byte[] msg, String correlationId, PendingRequest pending) throws CommunicationException
+	{
+		if (!connectionIsOpenNow() || m_connConnection == null)
+		{
+			throw new CommunicationException("Cannot send a request when not connected", null);
+		}
+		
+		// The broker may have closed the channel
+		if (m_connRequestChannel != null && m_connRequestChannel.closedByBroker)
+		{
+			connCloseRequestChannel();
+		}
+		
+		try
+		{
+			if (m_connRequestChannel == null)
+			{
+				// Direct reply-to requires publishing on the channel that consumes
+				// the replies, and the consumer must use automatic acks
+				TransportChannel channel = m_connConnection.getConnection().createChannel();
+				
+				try
+				{
+					channel.basicConsume(TransportChannel.DirectReplyTo, true, new ReplyConsumer());
+				}
+				catch (IOException e)
+				{
+					try {
+						channel.close();
+					} catch (Exception ignore) {}
+					
+					throw e;
+				}
+				
+				final RequestChannel requestChannel = new RequestChannel(channel);
+				
+				channel.addShutdownHandler(new Transport.ShutdownHandler()
+				{
+					@Override
+					public void shutdownCompleted(boolean initiatedByApplication)
+					{
+						if (!initiatedByApplication)
+						{
+							// Not taking the connection lock in the thread of the AMQP client.
+							// The next request replaces the channel.
+							requestChannel.closedByBroker = true;
+							failRequestsOfChannel(requestChannel, "The request channel was closed before the reply");
+						}
+					}
+				});
+				
+				m_connRequestChannel = requestChannel;
+			}
+			
+			pending.channel = m_connRequestChannel;
+			
+			BasicProperties props = new BasicProperties.Builder()
+					.replyTo(TransportChannel.DirectReplyTo)
+					.correlationId(correlationId)
+					.build();
+			m_connRequestChannel.channel.basicPublish(m_amqpProperties.getExchange(), topic, props, msg);
+		}
+		catch (IOException e)
+		{
+			// The channel is unusable, so the next request creates a new one.
+			// This request fails with the exception below instead.
+			pending.channel = null;
+			connCloseRequestChannel();
+			throw new CommunicationException("Failed to send a request: " + e.getMessage(), e);
+		}
+	}
+	
+	// Only call this method when the connection lock is applied!
+	private void connSendReply(String replyTo, String correlationId, byte[] msg) throws CommunicationException
+	{
+		if (!connectionIsOpenNow() || m_connChannel == null)
+		{
+			throw new CommunicationException("Cannot reply when not connected", null);
+		}
+		
+		try
+		{
+			// The default exchange routes the reply to the requester
+			BasicProperties props = new BasicProperties.Builder().correlationId(correlationId).build();
+			m_connChannel.basicPublish("", replyTo, props, msg);
+		}
+		catch (IOException e)
+		{
+			throw new CommunicationException("Failed to reply: " + e.getMessage(), e);
+		}
+	}
+	
+	// Only call this method when the connection lock is applied!
+	private void connCloseRequestChannel()
+	{
+		if (m_connRequestChannel != null)
+		{
+			try {
+				m_connRequestChannel.channel.close();
+			} catch (Exception ignore) {}
+			
+			failRequestsOfChannel(m_connRequestChannel, "The request channel was closed before the reply");
+			m_connRequestChannel = null;
+		}
+	}
+	
 	private void connCloseConnection()
 	{
 		synchronized (m_connectionLock)
 		{
+			// The publishers will resend whatever was not confirmed
+			for (PublishLane lane : m_lanes)
+			{
+				lane.detach();
+			}
+			
 			if (m_connChannel != null)
 			{
 				try {
 					m_connChannel.close();
-					m_connChannel = null;
 				} catch (Exception ignore) {}
+				
+				m_connChannel = null;
 			}
 			
+			// The connection may be shared, so the channel is closed explicitly
+			connCloseRequestChannel();
+			
 			if (m_connConnection != null)
 			{
+				// The connection stays open if other connectors use it. Therefore,
+				// the listener must not report the shutdown to this connector anymore.
 				try {
-					m_connConnection.close();
-					m_connConnection = null;
+					m_connConnection.getConnection().removeShutdownHandler(m_connShutdownListener);
 				} catch (Exception ignore) {}
+				
+				m_connConnection.release();
+				m_connConnection = null;
+			}
+			
+			// The broker redelivers whatever has not been acked
+			m_connAckTracker = null;
+			
+			// The queue was closed with the channel, so the broker deletes it
+			m_connQueueName = null;
+		}
+		
+		m_connectionIsOpenNow = false;
+		
+		// The replies were bound to the closed channel, so they cannot arrive anymore
+		failAllRequests("The connection was lost before the reply");
+	}
+	
+	
+	
+	// ### Nested classes ###
+	
+	/**
+	 * The statistics of the connector in JMX. The values are read when requested.
+	 * @author Petri Kannisto
+	 */
+	private class Statistics implements ConnectorStatisticsMXBean
+	{
+		@Override
+		public boolean isConnected()
+		{
+			return connectionIsOpenNow();
+		}
+		
+		@Override
+		public long getReconnectCount()
+		{
+			return m_metrics.getReconnectCount();
+		}
+		
+		@Override
+		public long getDowntime_ms()
+		{
+			return m_metrics.getDowntime_ms();
+		}
+		
+		@Override
+		public long getSendQueueMessages()
+		{
+			long retval = 0;
+			
+			for (PublishLane lane : m_lanes)
+			{
+				retval += lane.getQueueSize();
+			}
+			
+			return retval;
+		}
+		
+		@Override
+		public long getSendQueueBytes()
+		{
+			long retval = 0;
+			
+			for (PublishLane lane : m_lanes)
+			{
+				retval += lane.getQueueBytes();
 			}
+			
+			return retval;
+		}
+		
+		@Override
+		public long getMessagesPublished()
+		{
+			return m_metrics.getPublished().getCount();
+		}
+		
+		@Override
+		public long getBytesPublished()
+		{
+			return m_metrics.getBytesPublished();
+		}
+		
+		@Override
+		public double getPublishRate()
+		{
+			return m_metrics.getPublished().getRate();
+		}
+		
+		@Override
+		public double getPublishLatencyMean_ms()
+		{
+			return m_metrics.getPublishLatency().getMean_ms();
+		}
+		
+		@Override
+		public double getPublishLatencyP99_ms()
+		{
+			return m_metrics.getPublishLatency().getPercentile_ms(99);
+		}
+		
+		@Override
+		public double getPublishLatencyMax_ms()
+		{
+			return m_metrics.getPublishLatency().getMax_ms();
 		}
 		
-		synchronized (m_variableLock)
+		@Override
+		public long getDroppedMessages()
 		{
-			m_connectionIsOpenNow = false;
+			return getDroppedMessageCount();
 		}
 	}
 	
+	/**
+	 * The channel that publishes requests and receives their replies.
+	 */
+	private static class RequestChannel
+	{
+		final TransportChannel channel;
+		
+		// Set by the shutdown handler if the broker closes the channel
+		volatile boolean closedByBroker = false;
+		
+		
+		RequestChannel(TransportChannel c)
+		{
+			channel = c;
+		}
+	}
 	
+	/**
+	 * A request that waits for a reply.
+	 */
+	private static class PendingRequest
+	{
+		final CompletableFuture<byte[]> future;
+		
+		// Set right after registering the request
+		volatile TimingWheel.Timeout<String> timeout = null;
+		
+		// The channel that the request was sent on. The reply can only arrive
+		// while the channel is open.
+		volatile RequestChannel channel = null;
+		
+		
+		PendingRequest(CompletableFuture<byte[]> f)
+		{
+			future = f;
+		}
+		
+		void cancelTimeout()
+		{
+			// The request may fail before the timeout has been set
+			TimingWheel.Timeout<String> t = timeout;
+			
+			if (t != null)
+			{
+				t.cancel();
+			}
+		}
+	}
 	
-	// ### Nested classes ###
+	/**
+	 * Receives the replies to requests.
+	 */
+	private class ReplyConsumer implements TransportChannel.DeliveryHandler
+	{
+		@Override
+		public void handleDelivery(long deliveryTag, String routingKey,
+				BasicProperties properties, byte[] body)
+		{
+			String correlationId = properties == null ? null : properties.getCorrelationId();
+			PendingRequest pending = correlationId == null ? null : m_pendingRequests.remove(correlationId);
+			
+			if (pending == null)
+			{
+				// The request has timed out already
+				m_log.debug("Discarded a reply to an expired request");
+				return;
+			}
+			
+			pending.cancelTimeout();
+			pending.future.complete(body);
+		}
+	}
 	
 	/**
 	 * Consumer class to receive messages.
 	 * @author Petri Kannisto
 	 */
-	private class MyConsumer extends DefaultConsumer
+	private class MyConsumer implements TransportChannel.DeliveryHandler
 	{
 		// These start with "cons_" not to confuse with "m_" of the enclosing class
-		private Notifier cons_eventManager;
+		// This is null if the acks are automatic
+		private final AckTracker cons_ackTracker;
 		
 		
 		/**
 		 * Constructor.
-		 * @param ch Channel.
-		 * @param topic Topic.
-		 * @param evm Event manager.
+		 * @param ackTracker Ack tracker or null if the acks are automatic.
 		 */
-		public MyConsumer(Channel ch, Notifier evm)
+		public MyConsumer(AckTracker ackTracker)
 		{
-			super(ch);
-			
-			cons_eventManager = evm;
+			cons_ackTracker = ackTracker;
 		}
 		
 		@Override
-	    public void handleDelivery(String consumerTag, Envelope envelope,
+	    public void handleDelivery(long deliveryTag, String routingKey,
 	    		BasicProperties properties, byte[] body) throws IOException
 	    {
-			try
+			long timestamp_ms = System.currentTimeMillis();
+			List<Notifier> notifiers = m_topicMatcher.match(routingKey);
+			
+			if (notifiers.isEmpty())
 			{
-				cons_eventManager.notifyMathTool(body);
+				// No topic matches (any more). Completing so that the message
+				// will not hold back the acks of subsequent messages.
+				new InboundDelivery(routingKey, body, timestamp_ms, cons_ackTracker, deliveryTag).complete();
+				return;
 			}
-			catch (CommunicationException e)
+			
+			if (properties != null && ChunkAssembler.ChunkType.equals(properties.getType()))
 			{
-				throw new IOException(e.getMessage(), e);
+				// A chunk of a large payload. The reassembly may write to disk, so
+				// only enqueuing it here.
+				enqueueChunk(notifiers, deliveryTag, routingKey, properties, body, timestamp_ms);
+				return;
 			}
+			
+			String encoding = properties == null ? null : properties.getContentEncoding();
+			enqueueToNotifiers(notifiers, deliveryTag, routingKey, properties, body, encoding, null, timestamp_ms);
 	    }
-	}
-	
-	// This class enables message information to be associated and enqueued together.
-	private class MessageToBeSent
-	{
-		public final String topic;
-		public final byte[] body;
 		
-		public MessageToBeSent(String t, byte[] b)
+		private void enqueueChunk(final List<Notifier> notifiers, final long deliveryTag, final String routingKey,
+				final BasicProperties properties, final byte[] body, final long timestamp_ms) throws IOException
 		{
-			topic = t;
-			body = b;
+			try
+			{
+				m_chunkExecutor.execute(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						try
+						{
+							addChunk(notifiers, deliveryTag, routingKey, properties, body, timestamp_ms);
+						}
+						catch (IOException e)
+						{
+							// The channel has closed, so the broker redelivers the chunk
+							m_log.error("Failed to ack a chunk of \"{}\": {}", routingKey, e.getMessage());
+						}
+					}
+				});
+			}
+			catch (RejectedExecutionException e)
+			{
+				// Closing. Completing so that the chunk will not hold back the acks.
+				new InboundDelivery(routingKey, body, timestamp_ms, cons_ackTracker, deliveryTag).complete();
+			}
+		}
+		
+		private void addChunk(List<Notifier> notifiers, long deliveryTag, String routingKey,
+				BasicProperties properties, byte[] body, long timestamp_ms) throws IOException
+		{
+			// Each chunk is acked once added, and the one that completes the
+			// payload is delivered with the whole payload. Holding the acks until
+			// then could stall the consumer, because the prefetch limit can be
+			// smaller than the count of chunks. Therefore, the chunks received
+			// so far are lost if the connection fails.
+			ChunkAssembler.Payload payload = null;
+			
+			try
+			{
+				payload = m_chunkAssembler.add(PayloadCompression.decompress(properties.getContentEncoding(), body,
+						m_amqpProperties.getMaxDecompressedSize()));
+			}
+			catch (IOException e)
+			{
+				m_log.error("Failed to receive a chunk of \"{}\": {}", routingKey, e.getMessage());
+			}
+			
+			if (payload == null)
+			{
+				new InboundDelivery(routingKey, body, timestamp_ms, cons_ackTracker, deliveryTag).complete();
+				return;
+			}
+			
+			enqueueToNotifiers(notifiers, deliveryTag, routingKey, properties, payload.body, null, payload.file, timestamp_ms);
+		}
+		
+		private void enqueueToNotifiers(List<Notifier> notifiers, long deliveryTag, String routingKey,
+				BasicProperties properties, byte[] body, String encoding, File file, long timestamp_ms) throws IOException
+		{
+			// Set if the message is a request
+			String replyTo = properties == null ? null : properties.getReplyTo();
+			String correlationId = properties == null ? null : properties.getCorrelationId();
+			
+			// If multiple notifiers receive the message, it is acked once all have completed it
+			AtomicInteger sharedRemaining = notifiers.size() > 1 ? new AtomicInteger(notifiers.size()) : null;
+			
+			for (Notifier notifier : notifiers)
+			{
+				// Only enqueuing the message here. The dispatch thread of the notifier
+				// calls the listeners, so a slow listener will not stall the thread
+				// of the AMQP client or the other topics.
+				InboundDelivery delivery = new InboundDelivery(routingKey, body, timestamp_ms,
+						cons_ackTracker, deliveryTag, sharedRemaining);
+				delivery.contentEncoding = encoding;
+				delivery.maxDecompressedSize = m_amqpProperties.getMaxDecompressedSize();
+				delivery.file = file;
+				delivery.replyTo = replyTo;
+				delivery.correlationId = correlationId;
+				
+				try
+				{
+					notifier.enqueue(delivery);
+				}
+				catch (InterruptedException e)
+				{
+					// Dropping the message. Otherwise, it would hold back the acks
+					// of all subsequent messages.
+					Thread.currentThread().interrupt();
+					delivery.complete();
+				}
+			}
 		}
 	}
 }
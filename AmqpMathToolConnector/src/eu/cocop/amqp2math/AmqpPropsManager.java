@@ -7,10 +7,13 @@
 //
 // Author: Petri Kannisto, Tampere University, Finland
 // File created: 2/2018
-// Last modified: 9/2020
+// Last modified: 10/2026
 
 package eu.cocop.amqp2math;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * Holds message bus properties.
  * @author Petri Kannisto
@@ -21,6 +24,19 @@ public class AmqpPropsManager
 	private static final int defaultPortSecure = 5671;
 	private static final int defaultPortNotSecure = 5672;
 	private static final int portUnspecified = -1;
+	private static final int defaultConfirmWindow = 1000;
+	private static final int defaultSendQueueCapacity = 100000;
+	private static final long defaultSendQueueCapacityBytes = 64L * 1024 * 1024; // 64 MiB
+	private static final int defaultSendQueueBlockTimeout_ms = 5000;
+	private static final int defaultInboundQueueCapacity = 10000;
+	private static final int defaultReconnectInitialDelay_ms = 500;
+	private static final int defaultReconnectMaxDelay_ms = 30000;
+	private static final int defaultSpoolSegmentSize = 64 * 1024 * 1024; // 64 MiB
+	private static final int defaultCompressionThreshold = 1024;
+	private static final int defaultMaxDecompressedSize = 64 * 1024 * 1024; // 64 MiB
+	private static final int defaultChunkSize = 1024 * 1024; // 1 MiB
+	private static final long defaultChunkReassemblyMemory = 64L * 1024 * 1024; // 64 MiB
+	private static final int defaultChunkTimeout_ms = 60000;
 	
 	private final String m_host;
 	private final String m_exchange;
@@ -30,6 +46,30 @@ public class AmqpPropsManager
 	private boolean m_secure = true; // Secure by default
 	private boolean m_exchangeDurable = false; // not durable by default
 	private boolean m_exchangeAutoDelete = false; // no autodelete by default
+	private boolean m_publisherConfirms = false; // no publisher confirms by default
+	private int m_confirmWindow = defaultConfirmWindow;
+	private int m_sendQueueCapacity = defaultSendQueueCapacity;
+	private long m_sendQueueCapacityBytes = defaultSendQueueCapacityBytes;
+	private OverflowPolicy m_sendQueueOverflowPolicy = OverflowPolicy.DROP_OLDEST;
+	private int m_sendQueueBlockTimeout_ms = defaultSendQueueBlockTimeout_ms;
+	private int m_publishChannelCount = 1;
+	private int m_reconnectInitialDelay_ms = defaultReconnectInitialDelay_ms;
+	private int m_reconnectMaxDelay_ms = defaultReconnectMaxDelay_ms;
+	private String m_spoolDirectory = null; // no spool by default
+	private int m_spoolSegmentSize = defaultSpoolSegmentSize;
+	private final LinkedHashMap<String, CompressionMode> m_compressionTopics = new LinkedHashMap<>(); // no compression by default
+	private int m_compressionThreshold = defaultCompressionThreshold;
+	private int m_maxDecompressedSize = defaultMaxDecompressedSize;
+	private int m_chunkSize = defaultChunkSize;
+	private long m_chunkReassemblyMemory = defaultChunkReassemblyMemory;
+	private int m_chunkTimeout_ms = defaultChunkTimeout_ms;
+	private PublishProfile m_defaultPublishProfile = new PublishProfile();
+	private final LinkedHashMap<String, PublishProfile> m_publishProfiles = new LinkedHashMap<>();
+	private int m_prefetchCount = 0; // no prefetch limit (automatic acks) by default
+	private boolean m_adaptivePrefetch = false;
+	private int m_inboundQueueCapacity = defaultInboundQueueCapacity;
+	private OverflowPolicy m_inboundOverflowPolicy = OverflowPolicy.BLOCK;
+	private Transport m_transport = AmqpTransport.Instance;
 	
 	// This indicates the port if set explicitly. Otherwise, a default port is assumed.
 	private int m_explicitPort = portUnspecified;
@@ -159,4 +199,631 @@ public class AmqpPropsManager
 	{
 		return m_exchangeAutoDelete;
 	}
+	
+	/**
+	 * Sets whether publisher confirms are used. If enabled, the broker
+	 * confirms each message sent, and the messages that the broker has not
+	 * confirmed are sent again after a reconnect (i.e., "at least once").
+	 * The default is "false".
+	 * @param conf True if enabled, otherwise false.
+	 */
+	public void setPublisherConfirms(boolean conf)
+	{
+		m_publisherConfirms = conf;
+	}
+	
+	/**
+	 * Gets whether publisher confirms are used.
+	 * @return True if enabled, otherwise false.
+	 */
+	boolean getPublisherConfirms()
+	{
+		return m_publisherConfirms;
+	}
+	
+	/**
+	 * Sets the maximum count of messages sent but not confirmed yet. Once the
+	 * window is full, sending waits until the broker confirms. This only has an
+	 * effect if publisher confirms are enabled. The default is 1000.
+	 * @param win Window size.
+	 * @exception IllegalArgumentException Thrown if the value is less than 1.
+	 */
+	public void setConfirmWindow(int win)
+	{
+		if (win < 1)
+		{
+			throw new IllegalArgumentException("The confirm window must be at least 1");
+		}
+		
+		m_confirmWindow = win;
+	}
+	
+	/**
+	 * Gets the maximum count of messages sent but not confirmed yet.
+	 * @return Window size.
+	 */
+	int getConfirmWindow()
+	{
+		return m_confirmWindow;
+	}
+	
+	/**
+	 * Sets the capacity of the send queue in messages. The queue holds the
+	 * messages not sent yet, e.g., while the connection is down. The default is 100000.
+	 * With multiple publish channels, the capacity is divided between them.
+	 * @param cap Capacity.
+	 * @exception IllegalArgumentException Thrown if the value is less than 1.
+	 */
+	public void setSendQueueCapacity(int cap)
+	{
+		if (cap < 1)
+		{
+			throw new IllegalArgumentException("The send queue capacity must be at least 1");
+		}
+		
+		m_sendQueueCapacity = cap;
+	}
+	
+	/**
+	 * Gets the capacity of the send queue in messages.
+	 * @return Capacity.
+	 */
+	int getSendQueueCapacity()
+	{
+		return m_sendQueueCapacity;
+	}
+	
+	/**
+	 * Sets the capacity of the send queue in bytes, i.e., the maximum sum of
+	 * the lengths of the messages in the queue. The default is 64 MiB. With
+	 * multiple publish channels, the capacity applies to all of them together.
+	 * A message larger than this cannot be sent with sendMessage; use sendLarge instead.
+	 * @param cap Capacity in bytes.
+	 * @exception IllegalArgumentException Thrown if the value is less than 1.
+	 */
+	public void setSendQueueCapacityBytes(long cap)
+	{
+		if (cap < 1)
+		{
+			throw new IllegalArgumentException("The send queue capacity must be at least 1 byte");
+		}
+		
+		m_sendQueueCapacityBytes = cap;
+	}
+	
+	/**
+	 * Gets the capacity of the send queue in bytes.
+	 * @return Capacity in bytes.
+	 */
+	long getSendQueueCapacityBytes()
+	{
+		return m_sendQueueCapacityBytes;
+	}
+	
+	/**
+	 * Sets what happens when the send queue is full. The default is DROP_OLDEST,
+	 * which means that the oldest messages are discarded during a long outage.
+	 * To never lose messages, use BLOCK or THROW.
+	 * @param pol Policy.
+	 */
+	public void setSendQueueOverflowPolicy(OverflowPolicy pol)
+	{
+		if (pol == null)
+		{
+			throw new IllegalArgumentException("The overflow policy must not be null");
+		}
+		
+		m_sendQueueOverflowPolicy = pol;
+	}
+	
+	/**
+	 * Gets what happens when the send queue is full.
+	 * @return Policy.
+	 */
+	OverflowPolicy getSendQueueOverflowPolicy()
+	{
+		return m_sendQueueOverflowPolicy;
+	}
+	
+	/**
+	 * Sets the maximum time to wait for room in the send queue with the BLOCK
+	 * overflow policy. If this expires, the message is dropped. The default is 5000 ms.
+	 * @param timeout_ms Timeout in milliseconds.
+	 * @exception IllegalArgumentException Thrown if the value is negative.
+	 */
+	public void setSendQueueBlockTimeout(int timeout_ms)
+	{
+		if (timeout_ms < 0)
+		{
+			throw new IllegalArgumentException("The timeout must not be negative");
+		}
+		
+		m_sendQueueBlockTimeout_ms = timeout_ms;
+	}
+	
+	/**
+	 * Gets the maximum time to wait for room in the send queue with the BLOCK
+	 * overflow policy.
+	 * @return Timeout in milliseconds.
+	 */
+	int getSendQueueBlockTimeout()
+	{
+		return m_sendQueueBlockTimeout_ms;
+	}
+	
+	/**
+	 * Sets the prefetch count, i.e., the maximum count of messages the broker
+	 * delivers before the client acknowledges them. If greater than zero, the
+	 * messages are acknowledged manually once the listeners have returned.
+	 * This bounds the memory used for received messages if the listeners are
+	 * slow. If zero, there is no limit and the messages are acknowledged
+	 * automatically on delivery. The default is zero.
+	 * @param count Prefetch count.
+	 * @exception IllegalArgumentException Thrown if the value is negative or greater than 65535.
+	 */
+	public void setPrefetchCount(int count)
+	{
+		// The field is a short in the protocol
+		if (count < 0 || count > 65535)
+		{
+			throw new IllegalArgumentException("The prefetch count must be between 0 and 65535");
+		}
+		
+		m_prefetchCount = count;
+	}
+	
+	/**
+	 * Gets the prefetch count.
+	 * @return Prefetch count.
+	 */
+	int getPrefetchCount()
+	{
+		return m_prefetchCount;
+	}
+	
+	/**
+	 * Sets whether the prefetch count adapts to how long the listeners take
+	 * to process a message. If enabled, the prefetch count set with
+	 * setPrefetchCount is the initial value, and the count may vary between 1
+	 * and ten times the initial value. This only has an effect if the prefetch
+	 * count is greater than zero. The default is "false".
+	 * @param adaptive True if enabled, otherwise false.
+	 */
+	public void setAdaptivePrefetch(boolean adaptive)
+	{
+		m_adaptivePrefetch = adaptive;
+	}
+	
+	/**
+	 * Gets whether the prefetch count adapts to how long the listeners take.
+	 * @return True if enabled, otherwise false.
+	 */
+	boolean getAdaptivePrefetch()
+	{
+		return m_adaptivePrefetch;
+	}
+	
+	/**
+	 * Sets how long to wait between connect attempts. Once a connection is lost,
+	 * the first attempt occurs right away. After each failed attempt, the delay
+	 * doubles from the initial delay up to the maximum. A random part of up to
+	 * half the delay prevents many clients from retrying at the same time.
+	 * The defaults are 500 ms and 30000 ms.
+	 * @param initialDelay_ms The delay after the first failed attempt in milliseconds.
+	 * @param maxDelay_ms The maximum delay in milliseconds.
+	 * @exception IllegalArgumentException Thrown if the initial delay is less than 1 or greater than the maximum.
+	 */
+	public void setReconnectDelay(int initialDelay_ms, int maxDelay_ms)
+	{
+		if (initialDelay_ms < 1 || initialDelay_ms > maxDelay_ms)
+		{
+			throw new IllegalArgumentException("The initial reconnect delay must be at least 1 and at most the maximum");
+		}
+		
+		m_reconnectInitialDelay_ms = initialDelay_ms;
+		m_reconnectMaxDelay_ms = maxDelay_ms;
+	}
+	
+	/**
+	 * Gets the delay after the first failed connect attempt.
+	 * @return Delay in milliseconds.
+	 */
+	int getReconnectInitialDelay()
+	{
+		return m_reconnectInitialDelay_ms;
+	}
+	
+	/**
+	 * Gets the maximum delay between connect attempts.
+	 * @return Delay in milliseconds.
+	 */
+	int getReconnectMaxDelay()
+	{
+		return m_reconnectMaxDelay_ms;
+	}
+	
+	/**
+	 * Sets the count of channels used for publishing. Each channel has its own
+	 * send queue and publisher thread, and each topic is mapped to one of them
+	 * by its hash. The messages of a topic are thus sent in order, but the
+	 * channels publish in parallel, and a slow topic only holds back the topics
+	 * of its own channel. The message capacity of the send queue is divided
+	 * between the channels, whereas the byte capacity applies to all of them
+	 * together. The default is 1, which retains the order across all topics.
+	 * @param count Count.
+	 * @exception IllegalArgumentException Thrown if the value is less than 1.
+	 */
+	public void setPublishChannelCount(int count)
+	{
+		if (count < 1)
+		{
+			throw new IllegalArgumentException("The publish channel count must be at least 1");
+		}
+		
+		m_publishChannelCount = count;
+	}
+	
+	/**
+	 * Gets the count of channels used for publishing.
+	 * @return Count.
+	 */
+	int getPublishChannelCount()
+	{
+		return m_publishChannelCount;
+	}
+	
+	/**
+	 * Sets a directory where outbound messages are spooled while there is no
+	 * connection. With a spool, the messages that accumulate during an outage
+	 * are moved from memory to files, and they are sent in order once the
+	 * connection is back. The messages not delivered when the connector is
+	 * closed remain in the files, and the next connector that uses the same
+	 * directory sends them. Only one connector can use a directory at a time.
+	 * The default is null (no spool).
+	 * @param dir Directory or null to disable spooling.
+	 */
+	public void setSpoolDirectory(String dir)
+	{
+		m_spoolDirectory = dir;
+	}
+	
+	/**
+	 * Gets the spool directory.
+	 * @return Directory or null if not set.
+	 */
+	String getSpoolDirectory()
+	{
+		return m_spoolDirectory;
+	}
+	
+	/**
+	 * Sets the size of each spool file in bytes. The space of a file is
+	 * released once all of its messages have been delivered. A message larger
+	 * than this gets a file of its own. The default is 64 MiB.
+	 * @param size Size.
+	 * @exception IllegalArgumentException Thrown if the value is less than 4096.
+	 */
+	public void setSpoolSegmentSize(int size)
+	{
+		if (size < 4096)
+		{
+			throw new IllegalArgumentException("The spool segment size must be at least 4096");
+		}
+		
+		m_spoolSegmentSize = size;
+	}
+	
+	/**
+	 * Gets the size of each spool file.
+	 * @return Size in bytes.
+	 */
+	int getSpoolSegmentSize()
+	{
+		return m_spoolSegmentSize;
+	}
+	
+	/**
+	 * Sets how the messages sent to the topics that match a pattern are
+	 * compressed. The pattern may contain the wildcards "*" and "#". If several
+	 * patterns match a topic, the densest mode applies. Compressed messages
+	 * are decompressed automatically when received with this connector.
+	 * By default, nothing is compressed.
+	 * @param topicPattern Topic pattern.
+	 * @param mode Compression mode. NONE removes the pattern.
+	 * @exception IllegalArgumentException Thrown if an argument is null.
+	 */
+	public void setCompression(String topicPattern, CompressionMode mode)
+	{
+		if (topicPattern == null || mode == null)
+		{
+			throw new IllegalArgumentException("The topic pattern and the mode must not be null");
+		}
+		
+		if (mode == CompressionMode.NONE)
+		{
+			m_compressionTopics.remove(topicPattern);
+		}
+		else
+		{
+			m_compressionTopics.put(topicPattern, mode);
+		}
+	}
+	
+	/**
+	 * Gets the compression modes of topic patterns.
+	 * @return Patterns and modes. This is empty if nothing is compressed.
+	 */
+	Map<String, CompressionMode> getCompressionTopics()
+	{
+		return new LinkedHashMap<>(m_compressionTopics);
+	}
+	
+	/**
+	 * Sets the size below which messages are not compressed, because
+	 * compressing small messages costs more than it saves. The default is 1024.
+	 * @param threshold Threshold in bytes.
+	 * @exception IllegalArgumentException Thrown if the value is negative.
+	 */
+	public void setCompressionThreshold(int threshold)
+	{
+		if (threshold < 0)
+		{
+			throw new IllegalArgumentException("The compression threshold must not be negative");
+		}
+		
+		m_compressionThreshold = threshold;
+	}
+	
+	/**
+	 * Gets the size below which messages are not compressed.
+	 * @return Threshold in bytes.
+	 */
+	int getCompressionThreshold()
+	{
+		return m_compressionThreshold;
+	}
+	
+	/**
+	 * Sets how large a received message can be once decompressed. A message
+	 * that would exceed this is dropped, which prevents a small compressed
+	 * message from exhausting the memory. The default is 64 MiB.
+	 * @param bytes Size in bytes.
+	 * @exception IllegalArgumentException Thrown if the value is less than 1.
+	 */
+	public void setMaxDecompressedSize(int bytes)
+	{
+		if (bytes < 1)
+		{
+			throw new IllegalArgumentException("The maximum decompressed size must be at least 1");
+		}
+		
+		m_maxDecompressedSize = bytes;
+	}
+	
+	/**
+	 * Gets how large a received message can be once decompressed.
+	 * @return Size in bytes.
+	 */
+	int getMaxDecompressedSize()
+	{
+		return m_maxDecompressedSize;
+	}
+	
+	/**
+	 * Sets the size of the chunks that large messages are split into
+	 * (see AmqpConnector.sendLarge). The default is 1 MiB.
+	 * @param size Size in bytes.
+	 * @exception IllegalArgumentException Thrown if the value is less than 1024.
+	 */
+	public void setChunkSize(int size)
+	{
+		if (size < 1024)
+		{
+			throw new IllegalArgumentException("The chunk size must be at least 1024");
+		}
+		
+		m_chunkSize = size;
+	}
+	
+	/**
+	 * Gets the size of the chunks that large messages are split into.
+	 * @return Size in bytes.
+	 */
+	int getChunkSize()
+	{
+		return m_chunkSize;
+	}
+	
+	/**
+	 * Sets how many bytes of large messages can be reassembled in memory at a
+	 * time. Large messages that exceed this or have an unknown size are
+	 * reassembled in temporary files. The default is 64 MiB.
+	 * @param bytes Count of bytes.
+	 * @exception IllegalArgumentException Thrown if the value is negative.
+	 */
+	public void setChunkReassemblyMemory(long bytes)
+	{
+		if (bytes < 0)
+		{
+			throw new IllegalArgumentException("The reassembly memory must not be negative");
+		}
+		
+		m_chunkReassemblyMemory = bytes;
+	}
+	
+	/**
+	 * Gets how many bytes of large messages can be reassembled in memory at a time.
+	 * @return Count of bytes.
+	 */
+	long getChunkReassemblyMemory()
+	{
+		return m_chunkReassemblyMemory;
+	}
+	
+	/**
+	 * Sets how long an incomplete large message can wait for its next chunk
+	 * before it is discarded. The default is 60000 ms.
+	 * @param timeout_ms Timeout in milliseconds.
+	 * @exception IllegalArgumentException Thrown if the value is less than 1.
+	 */
+	public void setChunkTimeout(int timeout_ms)
+	{
+		if (timeout_ms < 1)
+		{
+			throw new IllegalArgumentException("The chunk timeout must be at least 1");
+		}
+		
+		m_chunkTimeout_ms = timeout_ms;
+	}
+	
+	/**
+	 * Gets how long an incomplete large message can wait for its next chunk.
+	 * @return Timeout in milliseconds.
+	 */
+	int getChunkTimeout()
+	{
+		return m_chunkTimeout_ms;
+	}
+	
+	/**
+	 * Sets the publish profile of the topics that match a pattern. The pattern
+	 * may contain the wildcards "*" and "#". If several patterns match a topic,
+	 * the one set last applies. The profile is copied, so modifying it later
+	 * has no effect.
+	 * @param topicPattern Topic pattern.
+	 * @param profile Profile or null to remove the pattern.
+	 * @exception IllegalArgumentException Thrown if the pattern is null.
+	 */
+	public void setPublishProfile(String topicPattern, PublishProfile profile)
+	{
+		if (topicPattern == null)
+		{
+			throw new IllegalArgumentException("The topic pattern must not be null");
+		}
+		
+		// Removing first so that the pattern becomes the last one set
+		m_publishProfiles.remove(topicPattern);
+		
+		if (profile != null)
+		{
+			m_publishProfiles.put(topicPattern, new PublishProfile(profile));
+		}
+	}
+	
+	/**
+	 * Gets the publish profiles of topic patterns.
+	 * @return Patterns and profiles in the order they were set.
+	 */
+	Map<String, PublishProfile> getPublishProfiles()
+	{
+		return new LinkedHashMap<>(m_publishProfiles);
+	}
+	
+	/**
+	 * Sets the publish profile of the topics that match no pattern. By default,
+	 * the messages expire in 15 minutes, and no other properties are set.
+	 * The profile is copied, so modifying it later has no effect.
+	 * @param profile Profile.
+	 * @exception IllegalArgumentException Thrown if the profile is null.
+	 */
+	public void setDefaultPublishProfile(PublishProfile profile)
+	{
+		if (profile == null)
+		{
+			throw new IllegalArgumentException("The default profile must not be null");
+		}
+		
+		m_defaultPublishProfile = new PublishProfile(profile);
+	}
+	
+	/**
+	 * Gets the publish profile of the topics that match no pattern.
+	 * @return Profile.
+	 */
+	PublishProfile getDefaultPublishProfile()
+	{
+		return m_defaultPublishProfile;
+	}
+	
+	/**
+	 * Sets the capacity of the inbound queue of each topic in messages. Received
+	 * messages wait in the queue until the listeners of the topic are free.
+	 * The default is 10000.
+	 * @param cap Capacity.
+	 * @exception IllegalArgumentException Thrown if the value is less than 1.
+	 */
+	public void setInboundQueueCapacity(int cap)
+	{
+		if (cap < 1)
+		{
+			throw new IllegalArgumentException("The inbound queue capacity must be at least 1");
+		}
+		
+		m_inboundQueueCapacity = cap;
+	}
+	
+	/**
+	 * Gets the capacity of the inbound queue of each topic in messages.
+	 * @return Capacity.
+	 */
+	int getInboundQueueCapacity()
+	{
+		return m_inboundQueueCapacity;
+	}
+	
+	/**
+	 * Sets what happens when the inbound queue of a topic is full. With BLOCK,
+	 * the reception of messages pauses until there is room, and the messages
+	 * not received yet wait in the broker. The default is BLOCK. THROW is not
+	 * supported, because there is nobody to catch the exception.
+	 * @param pol Policy.
+	 * @exception IllegalArgumentException Thrown if the policy is null or THROW.
+	 */
+	public void setInboundOverflowPolicy(OverflowPolicy pol)
+	{
+		if (pol == null || pol == OverflowPolicy.THROW)
+		{
+			throw new IllegalArgumentException("The inbound overflow policy must be BLOCK, DROP_OLDEST or REJECT_NEWEST");
+		}
+		
+		m_inboundOverflowPolicy = pol;
+	}
+	
+	/**
+	 * Gets what happens when the inbound queue of a topic is full.
+	 * @return Policy.
+	 */
+	OverflowPolicy getInboundOverflowPolicy()
+	{
+		return m_inboundOverflowPolicy;
+	}
+	
+	/**
+	 * Connects to an in-process loopback broker instead of the AMQP server.
+	 * This enables testing without a network. The host and other connection
+	 * settings are then ignored. Set null to use the AMQP server again.
+	 * @param broker Broker or null.
+	 */
+	public void setLoopbackBroker(LoopbackBroker broker)
+	{
+		m_transport = broker == null ? AmqpTransport.Instance : broker.getTransport();
+	}
+	
+	/**
+	 * Sets the transport to the broker. This is for testing.
+	 * @param transport Transport.
+	 */
+	void setTransport(Transport transport)
+	{
+		m_transport = transport;
+	}
+	
+	/**
+	 * Gets the transport to the broker.
+	 * @return Transport.
+	 */
+	Transport getTransport()
+	{
+		return m_transport;
+	}
 }
@@ -0,0 +1,281 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+
+import com.rabbitmq.client.AlreadyClosedException;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+import com.rabbitmq.client.AMQP.BasicProperties;
+
+/**
+ * The transport to an AMQP server with the RabbitMQ client library.
+ * @author Petri Kannisto
+ */
+final class AmqpTransport implements Transport
+{
+	/**
+	 * The instance. The transport has no state, so one is enough.
+	 */
+	static final AmqpTransport Instance = new AmqpTransport();
+	
+	
+	private AmqpTransport()
+	{
+		// Use the instance
+	}
+	
+	@Override
+	public String getConnectionKey(AmqpPropsManager props)
+	{
+		// The URL covers the host, port, credentials and security
+		return props.getUrl();
+	}
+	
+	@Override
+	public TransportConnection connect(AmqpPropsManager props) throws CommunicationException, IOException, TimeoutException
+	{
+		ConnectionFactory factory = new ConnectionFactory();
+		
+		try
+		{
+			if (props.getSecure())
+			{
+				// Due to calling this function, no certificate verification will be performed
+				factory.useSslProtocol();
+			}
+			
+			factory.setUri(props.getUrl());
+		}
+		catch (KeyManagementException | NoSuchAlgorithmException | URISyntaxException e)
+		{
+			throw new CommunicationException("Connection setup failed: " + e.getMessage(), e);
+		}
+		
+		return new AmqpConnection(factory.newConnection());
+	}
+	
+	private static ShutdownListener toListener(final Transport.ShutdownHandler handler)
+	{
+		return new ShutdownListener()
+		{
+			@Override
+			public void shutdownCompleted(ShutdownSignalException arg0)
+			{
+				handler.shutdownCompleted(arg0.isInitiatedByApplication());
+			}
+		};
+	}
+	
+	
+	/**
+	 * A connection of the client library.
+	 */
+	private static class AmqpConnection implements TransportConnection
+	{
+		private final Connection m_connection;
+		
+		// The library needs the same listener object for removal
+		private final ConcurrentHashMap<Transport.ShutdownHandler, ShutdownListener> m_listeners = new ConcurrentHashMap<>();
+		
+		
+		AmqpConnection(Connection conn)
+		{
+			m_connection = conn;
+		}
+		
+		@Override
+		public TransportChannel createChannel() throws IOException
+		{
+			return new AmqpChannel(m_connection.createChannel());
+		}
+		
+		@Override
+		public boolean isOpen()
+		{
+			return m_connection.isOpen();
+		}
+		
+		@Override
+		public void addShutdownHandler(Transport.ShutdownHandler handler)
+		{
+			ShutdownListener listener = toListener(handler);
+			m_listeners.put(handler, listener);
+			m_connection.addShutdownListener(listener);
+		}
+		
+		@Override
+		public void removeShutdownHandler(Transport.ShutdownHandler handler)
+		{
+			ShutdownListener listener = m_listeners.remove(handler);
+			
+			if (listener != null)
+			{
+				m_connection.removeShutdownListener(listener);
+			}
+		}
+		
+		@Override
+		public void close() throws IOException
+		{
+			m_connection.close();
+		}
+	}
+	
+	/**
+	 * A channel of the client library.
+	 */
+	private static class AmqpChannel implements TransportChannel
+	{
+		private final Channel m_channel;
+		
+		
+		AmqpChannel(Channel ch)
+		{
+			m_channel = ch;
+		}
+		
+		@Override
+		public void exchangeDeclare(String exchange, boolean durable, boolean autoDelete) throws IOException
+		{
+			m_channel.exchangeDeclare(exchange, "topic", durable, autoDelete, null);
+		}
+		
+		@Override
+		public String queueDeclare() throws IOException
+		{
+			String explicitName = ""; // Empty value; the name will be generated
+			boolean durable = false; // The queue does not survive a broker restart
+			boolean exclusive = true; // Exclusive to this app, delete on exit
+			boolean autoDelete = true; // Delete the queue if no consumer uses it
+			return m_channel.queueDeclare(explicitName, durable, exclusive, autoDelete, null).getQueue();
+		}
+		
+		@Override
+		public void queueBind(String queue, String exchange, String routingKey, boolean wait) throws IOException
+		{
+			if (wait)
+			{
+				m_channel.queueBind(queue, exchange, routingKey);
+			}
+			else
+			{
+				m_channel.queueBindNoWait(queue, exchange, routingKey, null);
+			}
+		}
+		
+		@Override
+		public void queueUnbind(String queue, String exchange, String routingKey) throws IOException
+		{
+			m_channel.queueUnbind(queue, exchange, routingKey);
+		}
+		
+		@Override
+		public void basicQos(int prefetch) throws IOException
+		{
+			// "Global" applies the limit to the channel and enables changing it
+			// while the consumers are active
+			m_channel.basicQos(prefetch, true);
+		}
+		
+		@Override
+		public void basicConsume(String queue, boolean autoAck, final DeliveryHandler handler) throws IOException
+		{
+			m_channel.basicConsume(queue, autoAck, new DefaultConsumer(m_channel)
+			{
+				@Override
+				public void handleDelivery(String consumerTag, Envelope envelope,
+						BasicProperties properties, byte[] body) throws IOException
+				{
+					handler.handleDelivery(envelope.getDeliveryTag(), envelope.getRoutingKey(), properties, body);
+				}
+			});
+		}
+		
+		@Override
+		public void basicAck(long deliveryTag, boolean multiple) throws IOException
+		{
+			m_channel.basicAck(deliveryTag, multiple);
+		}
+		
+		@Override
+		public void confirmSelect(final ConfirmHandler handler) throws IOException
+		{
+			m_channel.confirmSelect();
+			m_channel.addConfirmListener(new ConfirmListener()
+			{
+				@Override
+				public void handleAck(long deliveryTag, boolean multiple)
+				{
+					handler.handleConfirm(deliveryTag, multiple, true);
+				}
+				
+				@Override
+				public void handleNack(long deliveryTag, boolean multiple)
+				{
+					handler.handleConfirm(deliveryTag, multiple, false);
+				}
+			});
+		}
+		
+		@Override
+		public long getNextPublishSeqNo()
+		{
+			return m_channel.getNextPublishSeqNo();
+		}
+		
+		@Override
+		public void basicPublish(String exchange, String routingKey, BasicProperties props, byte[] body) throws IOException
+		{
+			try
+			{
+				m_channel.basicPublish(exchange, routingKey, props, body);
+			}
+			catch (AlreadyClosedException e)
+			{
+				// The connection has just closed
+				throw new IOException("The channel is closed", e);
+			}
+		}
+		
+		@Override
+		public void addShutdownHandler(Transport.ShutdownHandler handler)
+		{
+			m_channel.addShutdownListener(toListener(handler));
+		}
+		
+		@Override
+		public void close() throws IOException
+		{
+			try
+			{
+				m_channel.close();
+			}
+			catch (TimeoutException e)
+			{
+				throw new IOException("Closing the channel timed out", e);
+			}
+		}
+	}
+}
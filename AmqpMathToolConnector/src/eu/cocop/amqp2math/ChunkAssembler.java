@@ -0,0 +1,379 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splits large payloads into chunks and reassembles them. Each chunk is a
+ * message of its own with the type "amqp2math.chunk". The chunks of a
+ * transfer are sent in order to one topic, but a chunk resent after a nack
+ * arrives after those that follow it. Therefore, the chunks that arrive ahead
+ * of their turn are held in memory until the missing ones arrive, and
+ * duplicates are ignored. Once the first chunk has arrived, a transfer of a
+ * known size is reassembled in a pre-sized array if the memory limit permits.
+ * Otherwise, it is reassembled in a temporary file. Transfers that have received nothing for a timeout
+ * are discarded, which is also how a chunk that never arrives is noticed.
+ * The object is thread-safe.
+ * @author Petri Kannisto
+ */
+class ChunkAssembler
+{
+	/*
+	Chunk layout (big endian): transfer ID (2 x long), sequence number (int),
+	flags (byte, 1 = last chunk), total size (long, -1 if unknown), data
+	*/
+	
+	/**
+	 * The message type of chunks.
+	 */
+	static final String ChunkType = "amqp2math.chunk";
+	
+	static final int HeaderSize = 29;
+	
+	private static final byte FlagLast = 1;
+	
+	// How far ahead of the expected chunk a chunk can be. A chunk further
+	// ahead is taken as the middle of a transfer that began before subscribing.
+	private static final int MaxChunksAhead = 1024;
+	
+	private final long m_memoryLimit;
+	private final long m_timeout_ns;
+	
+	// Mutual exclusion for all variables below: use "this" as the lock
+	private final HashMap<UUID, Transfer> m_transfers = new HashMap<>();
+	private long m_memoryInUse = 0;
+	
+	
+	/**
+	 * Constructor.
+	 * @param memoryLimit The maximum count of bytes reassembled in memory at a time.
+	 * @param timeout_ms The time after which an incomplete transfer is discarded.
+	 */
+	ChunkAssembler(long memoryLimit, long timeout_ms)
+	{
+		m_memoryLimit = memoryLimit;
+		m_timeout_ns = TimeUnit.MILLISECONDS.toNanos(timeout_ms);
+	}
+	
+	/**
+	 * Creates a chunk.
+	 * @param id Transfer ID.
+	 * @param sequence The sequence number of the chunk, starting from 0.
+	 * @param last Whether this is the last chunk.
+	 * @param totalSize The size of the whole payload or -1 if unknown.
+	 * @param data Data.
+	 * @param length The count of bytes to take from the data.
+	 * @return Chunk.
+	 */
+	static byte[] createChunk(UUID id, int sequence, boolean last, long totalSize, byte[] data, int length)
+	{
+		ByteBuffer buf = ByteBuffer.allocate(HeaderSize + length);
+		buf.putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits());
+		buf.putInt(sequence);
+		buf.put(last ? FlagLast : 0);
+		buf.putLong(totalSize);
+		buf.put(data, 0, length);
+		return buf.array();
+	}
+	
+	/**
+	 * Adds a received chunk.
+	 * @param chunk Chunk.
+	 * @return The reassembled payload if this completed the transfer, otherwise null.
+	 * Null is also returned for duplicates and for chunks of a transfer whose
+	 * beginning was not received.
+	 * @throws IOException Thrown if the chunk is invalid, the chunks ahead of their turn
+	 * exceed the memory limit or writing a file fails. Then, the transfer is discarded.
+	 */
+	synchronized Payload add(byte[] chunk) throws IOException
+	{
+		if (chunk.length < HeaderSize)
+		{
+			throw new IOException("The chunk is too short");
+		}
+		
+		ByteBuffer buf = ByteBuffer.wrap(chunk);
+		UUID id = new UUID(buf.getLong(), buf.getLong());
+		int sequence = buf.getInt();
+		boolean last = (buf.get() & FlagLast) != 0;
+		long totalSize = buf.getLong();
+		int dataLength = chunk.length - HeaderSize;
+		
+		Transfer transfer = m_transfers.get(id);
+		
+		int nextSequence = transfer == null ? 0 : transfer.nextSequence;
+		
+		if (sequence < nextSequence || sequence - nextSequence > MaxChunksAhead)
+		{
+			// Either a duplicate or, probably, subscribed in the middle of the transfer
+			return null;
+		}
+		
+		if (transfer == null)
+		{
+			// Nothing is allocated until the first chunk arrives, because
+			// it may never arrive if subscribed in the middle of the transfer
+			transfer = new Transfer(totalSize);
+			m_transfers.put(id, transfer);
+		}
+		
+		try
+		{
+			transfer.lastActivity_ns = System.nanoTime();
+			
+			if (last)
+			{
+				transfer.lastSequence = sequence;
+			}
+			
+			if (sequence > transfer.nextSequence)
+			{
+				// Held until the chunks before it have arrived
+				if (!transfer.chunksAhead.containsKey(sequence))
+				{
+					if (m_memoryInUse + dataLength > m_memoryLimit)
+					{
+						throw new IOException("Too many chunks arrived ahead of chunk " + transfer.nextSequence);
+					}
+					
+					transfer.chunksAhead.put(sequence, chunk);
+					transfer.memoryReserved += dataLength;
+					m_memoryInUse += dataLength;
+				}
+				
+				return null;
+			}
+			
+			if (sequence == 0)
+			{
+				openTransfer(transfer);
+			}
+			
+			transfer.append(chunk);
+			
+			// Appending the chunks held until now
+			for (byte[] next = transfer.chunksAhead.remove(transfer.nextSequence); next != null;
+					next = transfer.chunksAhead.remove(transfer.nextSequence))
+			{
+				transfer.memoryReserved -= next.length - HeaderSize;
+				m_memoryInUse -= next.length - HeaderSize;
+				transfer.append(next);
+			}
+			
+			if (transfer.lastSequence < 0 || transfer.nextSequence <= transfer.lastSequence)
+			{
+				return null;
+			}
+			
+			if (transfer.totalSize >= 0 && transfer.position != transfer.totalSize)
+			{
+				throw new IOException("The transfer is smaller than announced");
+			}
+			
+			m_transfers.remove(id);
+			m_memoryInUse -= transfer.memoryReserved;
+			return transfer.finish();
+		}
+		catch (IOException e)
+		{
+			discard(id, transfer);
+			throw e;
+		}
+	}
+	
+	/**
+	 * Discards the transfers that have received nothing for the timeout.
+	 * @return The count of transfers discarded.
+	 */
+	synchronized int expire()
+	{
+		long now_ns = System.nanoTime();
+		int count = 0;
+		
+		for (Iterator<Transfer> iter = m_transfers.values().iterator(); iter.hasNext(); )
+		{
+			Transfer transfer = iter.next();
+			
+			if (now_ns - transfer.lastActivity_ns > m_timeout_ns)
+			{
+				iter.remove();
+				m_memoryInUse -= transfer.memoryReserved;
+				transfer.abort();
+				++count;
+			}
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * Discards all incomplete transfers.
+	 */
+	synchronized void close()
+	{
+		for (Transfer transfer : m_transfers.values())
+		{
+			transfer.abort();
+		}
+		
+		m_transfers.clear();
+		m_memoryInUse = 0;
+	}
+	
+	private void openTransfer(Transfer transfer) throws IOException
+	{
+		// In memory if the size is known and fits in the limit. The chunks
+		// held so far are released as soon as they have been appended.
+		long totalSize = transfer.totalSize;
+		
+		if (totalSize >= 0 && totalSize <= Integer.MAX_VALUE - 8 &&
+				m_memoryInUse - transfer.memoryReserved + totalSize <= m_memoryLimit)
+		{
+			m_memoryInUse += totalSize;
+			transfer.memoryReserved += totalSize;
+			transfer.buffer = new byte[(int)totalSize];
+			return;
+		}
+		
+		File file = File.createTempFile("amqp2math-", ".part");
+		file.deleteOnExit();
+		
+		try
+		{
+			transfer.file = new RandomAccessFile(file, "rw");
+			transfer.path = file;
+		}
+		catch (IOException e)
+		{
+			file.delete();
+			throw e;
+		}
+	}
+	
+	private void discard(UUID id, Transfer transfer)
+	{
+		if (m_transfers.remove(id) != null)
+		{
+			m_memoryInUse -= transfer.memoryReserved;
+		}
+		
+		transfer.abort();
+	}
+	
+	
+	/**
+	 * A reassembled payload. Either the body or the file contains the data.
+	 */
+	static class Payload
+	{
+		/**
+		 * The data if reassembled in memory. Otherwise, an empty array.
+		 */
+		final byte[] body;
+		
+		/**
+		 * The file that contains the data or null if reassembled in memory.
+		 */
+		final File file;
+		
+		
+		Payload(byte[] b, File f)
+		{
+			body = b;
+			file = f;
+		}
+	}
+	
+	private static class Transfer
+	{
+		final long totalSize;
+		
+		// Either the buffer or the file is set once the first chunk has arrived
+		byte[] buffer = null;
+		RandomAccessFile file = null;
+		File path = null;
+		
+		// The chunks that arrived ahead of their turn by sequence number
+		final TreeMap<Integer, byte[]> chunksAhead = new TreeMap<>();
+		
+		long memoryReserved = 0;
+		int nextSequence = 0;
+		int lastSequence = -1; // Unknown until the last chunk arrives
+		long position = 0;
+		long lastActivity_ns = System.nanoTime();
+		
+		
+		Transfer(long size)
+		{
+			totalSize = size;
+		}
+		
+		void append(byte[] chunk) throws IOException
+		{
+			int length = chunk.length - HeaderSize;
+			
+			if (totalSize >= 0 && position + length > totalSize)
+			{
+				throw new IOException("The transfer is larger than announced");
+			}
+			
+			write(chunk, HeaderSize, length);
+			++nextSequence;
+		}
+		
+		void write(byte[] data, int offset, int length) throws IOException
+		{
+			if (buffer != null)
+			{
+				System.arraycopy(data, offset, buffer, (int)position, length);
+			}
+			else
+			{
+				file.write(data, offset, length);
+			}
+			
+			position += length;
+		}
+		
+		Payload finish() throws IOException
+		{
+			if (buffer != null)
+			{
+				return new Payload(buffer, null);
+			}
+			
+			file.close();
+			return new Payload(new byte[0], path);
+		}
+		
+		void abort()
+		{
+			if (file != null)
+			{
+				try {
+					file.close();
+				} catch (IOException ignore) {}
+				
+				path.delete();
+			}
+		}
+	}
+}
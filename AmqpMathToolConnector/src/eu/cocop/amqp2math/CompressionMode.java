@@ -0,0 +1,36 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+/**
+ * Specifies how outbound messages are compressed. Either way, the messages
+ * are compressed with Deflate, which the receiver recognises from the
+ * content encoding of the message.
+ * @author Petri Kannisto
+ */
+public enum CompressionMode
+{
+	/**
+	 * No compression.
+	 */
+	NONE,
+	
+	/**
+	 * Fast compression with a moderate ratio. This suits frequent messages.
+	 */
+	FAST,
+	
+	/**
+	 * Slower compression with the best ratio. This suits slow links.
+	 */
+	DENSE
+}
@@ -0,0 +1,152 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps track of the publishes that the broker has not confirmed yet
+ * (publisher confirms). Each channel in the confirm mode has its own tracker,
+ * because the sequence numbers are channel-specific.
+ * @author Petri Kannisto
+ * @param <T> The type of tracked items.
+ */
+class ConfirmTracker<T>
+{
+	private final int m_window;
+	
+	// Outstanding publishes ordered by sequence number.
+	// Mutual exclusion: use "this" as the lock.
+	private final TreeMap<Long, T> m_outstanding = new TreeMap<>();
+	
+	private boolean m_closed = false;
+	
+	
+	/**
+	 * Constructor.
+	 * @param window The maximum count of outstanding publishes.
+	 */
+	ConfirmTracker(int window)
+	{
+		if (window < 1)
+		{
+			throw new IllegalArgumentException("The confirm window must be at least 1");
+		}
+		
+		m_window = window;
+	}
+	
+	/**
+	 * Waits until the window has room for another publish.
+	 * @return True if there is room, false if the tracker was closed while waiting.
+	 * @throws InterruptedException Thrown if interrupted.
+	 */
+	synchronized boolean awaitCapacity() throws InterruptedException
+	{
+		while (!m_closed && m_outstanding.size() >= m_window)
+		{
+			wait();
+		}
+		
+		return !m_closed;
+	}
+	
+	/**
+	 * Registers a publish. Call this before publishing, because the confirm
+	 * can arrive before the publish call has returned.
+	 * @param seqNo Sequence number.
+	 * @param item Item.
+	 */
+	synchronized void add(long seqNo, T item)
+	{
+		m_outstanding.put(seqNo, item);
+	}
+	
+	/**
+	 * Unregisters a publish that failed to be sent.
+	 * @param seqNo Sequence number.
+	 */
+	synchronized void remove(long seqNo)
+	{
+		m_outstanding.remove(seqNo);
+		notifyAll();
+	}
+	
+	/**
+	 * Processes an ack or a nack from the broker.
+	 * @param seqNo Sequence number.
+	 * @param multiple If true, the confirm covers all publishes up to the sequence number.
+	 * @return The items confirmed.
+	 */
+	synchronized List<T> confirm(long seqNo, boolean multiple)
+	{
+		ArrayList<T> retval = new ArrayList<>();
+		
+		if (multiple)
+		{
+			// Taking all items up to and including the sequence number at once
+			Map<Long, T> confirmed = m_outstanding.headMap(seqNo, true);
+			retval.addAll(confirmed.values());
+			confirmed.clear();
+		}
+		else
+		{
+			T item = m_outstanding.remove(seqNo);
+			
+			if (item != null)
+			{
+				retval.add(item);
+			}
+		}
+		
+		notifyAll();
+		return retval;
+	}
+	
+	/**
+	 * Marks the tracker closed, e.g., because the channel has shut down. This
+	 * wakes up anyone waiting for capacity. The outstanding items are retained
+	 * until close() is called.
+	 */
+	synchronized void markClosed()
+	{
+		m_closed = true;
+		notifyAll();
+	}
+	
+	/**
+	 * Closes the tracker and takes all outstanding items.
+	 * @return All items that remained unconfirmed in sequence number order.
+	 */
+	synchronized List<T> close()
+	{
+		m_closed = true;
+		
+		ArrayList<T> retval = new ArrayList<>(m_outstanding.values());
+		m_outstanding.clear();
+		
+		notifyAll();
+		return retval;
+	}
+	
+	/**
+	 * Returns the count of outstanding publishes.
+	 * @return Count.
+	 */
+	synchronized int getOutstandingCount()
+	{
+		return m_outstanding.size();
+	}
+}
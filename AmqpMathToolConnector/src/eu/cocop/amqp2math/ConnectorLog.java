@@ -0,0 +1,428 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import java.io.PrintStream;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.helpers.MessageFormatter;
+import org.slf4j.helpers.NOPLoggerFactory;
+
+/**
+ * Asynchronous logging. The calling thread only puts the entry to a ring
+ * buffer, and a background thread formats and writes it. Therefore, logging
+ * never waits for the console or a file, and a message is only formatted if
+ * it is written. The messages use the SLF4J syntax, where "{}" is replaced
+ * with an argument.
+ *
+ * If an SLF4J binding is on the classpath, the messages are forwarded to it
+ * under the logger name of the source class. Otherwise, such as with the
+ * default slf4j-nop, they are printed to the standard output (debug) and
+ * error (errors). If the buffer is full, messages are dropped rather than
+ * blocking, and the count of the dropped messages is logged once there is room.
+ *
+ * Objects of this class are thread-safe.
+ * @author Petri Kannisto
+ */
+final class ConnectorLog
+{
+	/**
+	 * The capacity of the ring buffer shared by all loggers.
+	 */
+	static final int Capacity = 4096;
+	
+	private static final int LevelDebug = 0;
+	private static final int LevelInfo = 1;
+	private static final int LevelError = 2;
+	
+	private static final boolean s_forwardToSlf4j = !(LoggerFactory.getILoggerFactory() instanceof NOPLoggerFactory);
+	
+	// Mutual exclusion: use this as the lock for the ring buffer and the writer state
+	private static final Object s_lock = new Object();
+	private static final Entry[] s_ring = createRing();
+	private static int s_head = 0;
+	private static int s_count = 0;
+	private static long s_droppedUnreported = 0;
+	private static boolean s_writing = false;
+	private static Thread s_writer = null;
+	
+	// These are only used by the writer thread
+	private static final DateTimeFormatter s_timeFormatter = DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
+	private static final StringBuilder s_line = new StringBuilder(256);
+	private static final Entry s_current = new Entry();
+	
+	private final String m_name;
+	private final Logger m_logger;
+	private final boolean m_debugEnabled;
+	
+	
+	/**
+	 * Constructor.
+	 * @param source The class that logs. Its name appears in the messages.
+	 * @param debugEnabled Whether to write debug messages regardless of the SLF4J configuration.
+	 */
+	ConnectorLog(Class<?> source, boolean debugEnabled)
+	{
+		m_name = source.getSimpleName();
+		m_logger = LoggerFactory.getLogger(source);
+		m_debugEnabled = debugEnabled;
+	}
+	
+	/**
+	 * Returns whether debug messages are written. Check this before
+	 * preparing the arguments of a debug message is costly.
+	 * @return True if enabled, otherwise false.
+	 */
+	boolean isDebugEnabled()
+	{
+		return m_debugEnabled || (s_forwardToSlf4j && m_logger.isDebugEnabled());
+	}
+	
+	/**
+	 * Logs a debug message.
+	 * @param msg Message.
+	 */
+	void debug(String msg)
+	{
+		if (isDebugEnabled())
+		{
+			enqueue(getDebugLevel(), msg, 0, null, null);
+		}
+	}
+	
+	/**
+	 * Logs a debug message.
+	 * @param format Message with one "{}".
+	 * @param arg Argument.
+	 */
+	void debug(String format, Object arg)
+	{
+		if (isDebugEnabled())
+		{
+			enqueue(getDebugLevel(), format, 1, arg, null);
+		}
+	}
+	
+	/**
+	 * Logs a debug message.
+	 * @param format Message with two "{}".
+	 * @param arg1 First argument.
+	 * @param arg2 Second argument.
+	 */
+	void debug(String format, Object arg1, Object arg2)
+	{
+		if (isDebugEnabled())
+		{
+			enqueue(getDebugLevel(), format, 2, arg1, arg2);
+		}
+	}
+	
+	/**
+	 * Logs a message that is written even if debug is disabled.
+	 * @param msg Message.
+	 */
+	void info(String msg)
+	{
+		if (!s_forwardToSlf4j || m_logger.isInfoEnabled())
+		{
+			enqueue(LevelInfo, msg, 0, null, null);
+		}
+	}
+	
+	/**
+	 * Logs an error.
+	 * @param msg Message.
+	 */
+	void error(String msg)
+	{
+		if (!s_forwardToSlf4j || m_logger.isErrorEnabled())
+		{
+			enqueue(LevelError, msg, 0, null, null);
+		}
+	}
+	
+	/**
+	 * Logs an error.
+	 * @param format Message with one "{}".
+	 * @param arg Argument.
+	 */
+	void error(String format, Object arg)
+	{
+		if (!s_forwardToSlf4j || m_logger.isErrorEnabled())
+		{
+			enqueue(LevelError, format, 1, arg, null);
+		}
+	}
+	
+	/**
+	 * Logs an error.
+	 * @param format Message with two "{}".
+	 * @param arg1 First argument.
+	 * @param arg2 Second argument.
+	 */
+	void error(String format, Object arg1, Object arg2)
+	{
+		if (!s_forwardToSlf4j || m_logger.isErrorEnabled())
+		{
+			enqueue(LevelError, format, 2, arg1, arg2);
+		}
+	}
+	
+	/**
+	 * Waits until the messages logged so far have been written.
+	 * @param timeout_ms Timeout in milliseconds.
+	 * @return True if written, false if timed out.
+	 * @throws InterruptedException Thrown if interrupted.
+	 */
+	static boolean flush(long timeout_ms) throws InterruptedException
+	{
+		long deadline_ms = System.currentTimeMillis() + timeout_ms;
+		
+		synchronized (s_lock)
+		{
+			while (s_count > 0 || s_droppedUnreported > 0 || s_writing)
+			{
+				long wait_ms = deadline_ms - System.currentTimeMillis();
+				
+				if (wait_ms <= 0)
+				{
+					return false;
+				}
+				
+				s_lock.wait(wait_ms);
+			}
+			
+			return true;
+		}
+	}
+	
+	
+	// ### Private methods ###
+	
+	private static Entry[] createRing()
+	{
+		// The entries are allocated once and reused
+		Entry[] retval = new Entry[Capacity];
+		
+		for (int i = 0; i < retval.length; ++i)
+		{
+			retval[i] = new Entry();
+		}
+		
+		return retval;
+	}
+	
+	private int getDebugLevel()
+	{
+		// If the debug flag is set, the message is written even if the
+		// SLF4J configuration excludes the debug level
+		return m_debugEnabled ? LevelInfo : LevelDebug;
+	}
+	
+	private void enqueue(int level, String format, int argCount, Object arg1, Object arg2)
+	{
+		long time_ms = System.currentTimeMillis();
+		
+		synchronized (s_lock)
+		{
+			if (s_count == Capacity)
+			{
+				++s_droppedUnreported;
+				return;
+			}
+			
+			Entry entry = s_ring[(s_head + s_count) % Capacity];
+			entry.set(this, level, time_ms, format, argCount, arg1, arg2);
+			++s_count;
+			
+			if (s_writer == null)
+			{
+				s_writer = new Thread(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						runWriter();
+					}
+				}, "AmqpConnector log");
+				
+				// A daemon thread never prevents the JVM from exiting
+				s_writer.setDaemon(true);
+				s_writer.start();
+			}
+			else if (s_count == 1)
+			{
+				s_lock.notifyAll();
+			}
+		}
+	}
+	
+	private static void runWriter()
+	{
+		while (true)
+		{
+			long dropped = 0;
+			boolean haveEntry = false;
+			
+			try
+			{
+				synchronized (s_lock)
+				{
+					s_writing = false;
+					
+					while (s_count == 0 && s_droppedUnreported == 0)
+					{
+						// Waking up the threads that flush
+						s_lock.notifyAll();
+						s_lock.wait();
+					}
+					
+					s_writing = true;
+					
+					if (s_count > 0)
+					{
+						// Copying the entry so that the slot can be reused right away
+						Entry entry = s_ring[s_head];
+						s_current.copyFrom(entry);
+						entry.clear();
+						s_head = (s_head + 1) % Capacity;
+						--s_count;
+						haveEntry = true;
+					}
+					
+					dropped = s_droppedUnreported;
+					s_droppedUnreported = 0;
+				}
+				
+				if (haveEntry)
+				{
+					write(s_current);
+					s_current.clear();
+				}
+				
+				if (dropped > 0)
+				{
+					String msg = "Log buffer full; dropped " + dropped + " message(s)";
+					writeOne(null, LevelError, System.currentTimeMillis(), msg, 0, null, null);
+				}
+			}
+			catch (InterruptedException e)
+			{
+				// The thread is not interrupted by this class, so continuing
+			}
+			catch (RuntimeException e)
+			{
+				// A failing binding must not end the thread
+			}
+		}
+	}
+	
+	private static void write(Entry entry)
+	{
+		writeOne(entry.source, entry.level, entry.time_ms, entry.format, entry.argCount, entry.arg1, entry.arg2);
+	}
+	
+	private static void writeOne(ConnectorLog source, int level, long time_ms, String format, int argCount, Object arg1, Object arg2)
+	{
+		if (s_forwardToSlf4j)
+		{
+			Logger logger = source == null ? LoggerFactory.getLogger(ConnectorLog.class) : source.m_logger;
+			writeSlf4j(logger, level, format, argCount, arg1, arg2);
+			return;
+		}
+		
+		// Printing like "12:34:56.789 [AmqpConnector] (ERR) message"
+		s_line.setLength(0);
+		s_timeFormatter.formatTo(Instant.ofEpochMilli(time_ms).atZone(ZoneId.systemDefault()), s_line);
+		s_line.append(" [").append(source == null ? "AmqpConnector" : source.m_name).append("] (");
+		s_line.append(level == LevelError ? "ERR" : "INF").append(") ");
+		
+		switch (argCount)
+		{
+		case 0:
+			s_line.append(format);
+			break;
+		case 1:
+			s_line.append(MessageFormatter.format(format, arg1).getMessage());
+			break;
+		default:
+			s_line.append(MessageFormatter.format(format, arg1, arg2).getMessage());
+			break;
+		}
+		
+		PrintStream stream = level == LevelError ? System.err : System.out;
+		stream.println(s_line);
+	}
+	
+	private static void writeSlf4j(Logger logger, int level, String format, int argCount, Object arg1, Object arg2)
+	{
+		// The binding formats the message. A message without arguments is
+		// passed as an argument in case it contains "{}".
+		String fmt = argCount == 0 ? "{}" : format;
+		Object a1 = argCount == 0 ? format : arg1;
+		
+		switch (level)
+		{
+		case LevelDebug:
+			logger.debug(fmt, a1, arg2);
+			break;
+		case LevelInfo:
+			logger.info(fmt, a1, arg2);
+			break;
+		default:
+			logger.error(fmt, a1, arg2);
+			break;
+		}
+	}
+	
+	
+	/**
+	 * An entry of the ring buffer.
+	 */
+	private static class Entry
+	{
+		ConnectorLog source = null;
+		int level = 0;
+		long time_ms = 0;
+		String format = null;
+		int argCount = 0;
+		Object arg1 = null;
+		Object arg2 = null;
+		
+		
+		void set(ConnectorLog src, int lev, long time, String fmt, int count, Object a1, Object a2)
+		{
+			source = src;
+			level = lev;
+			time_ms = time;
+			format = fmt;
+			argCount = count;
+			arg1 = a1;
+			arg2 = a2;
+		}
+		
+		void copyFrom(Entry other)
+		{
+			set(other.source, other.level, other.time_ms, other.format, other.argCount, other.arg1, other.arg2);
+		}
+		
+		void clear()
+		{
+			// Releasing the references so that the arguments can be collected
+			set(null, 0, 0, null, 0, null, null);
+		}
+	}
+}
@@ -0,0 +1,133 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The metrics of publishing and of the connection. Recording a published
+ * message allocates nothing and uses striped counters, so the publisher
+ * threads do not contend. The object is thread-safe.
+ * @author Petri Kannisto
+ */
+final class ConnectorMetrics
+{
+	private final RateMeter m_published = new RateMeter();
+	private final LongAdder m_bytesPublished = new LongAdder();
+	private final LatencyHistogram m_publishLatency = new LatencyHistogram();
+	
+	// Mutual exclusion for the connection state: use "this" as the lock
+	private boolean m_everConnected = false;
+	private long m_lostAt_ns = 0;
+	private long m_reconnectCount = 0;
+	private long m_downtime_ns = 0;
+	
+	
+	/**
+	 * Records that a message has been published (or confirmed).
+	 * @param message Message.
+	 */
+	void recordPublished(MessageToBeSent message)
+	{
+		m_published.increment();
+		m_bytesPublished.add(message.body.length);
+		m_publishLatency.record(System.nanoTime() - message.enqueued_ns);
+	}
+	
+	/**
+	 * Records that the connection has opened.
+	 */
+	synchronized void connectionOpened()
+	{
+		if (m_everConnected && m_lostAt_ns != 0)
+		{
+			++m_reconnectCount;
+			m_downtime_ns += System.nanoTime() - m_lostAt_ns;
+		}
+		
+		m_everConnected = true;
+		m_lostAt_ns = 0;
+	}
+	
+	/**
+	 * Records that the connection has been lost.
+	 */
+	synchronized void connectionLost()
+	{
+		if (m_everConnected && m_lostAt_ns == 0)
+		{
+			m_lostAt_ns = System.nanoTime();
+		}
+	}
+	
+	/**
+	 * Updates the rates. Call this periodically.
+	 */
+	void tick()
+	{
+		m_published.tick();
+	}
+	
+	/**
+	 * Gets the count of times the connection has been restored after a loss.
+	 * @return Count.
+	 */
+	synchronized long getReconnectCount()
+	{
+		return m_reconnectCount;
+	}
+	
+	/**
+	 * Gets the total time without a connection after the first connection.
+	 * @return Time in milliseconds.
+	 */
+	synchronized long getDowntime_ms()
+	{
+		long downtime_ns = m_downtime_ns;
+		
+		if (m_lostAt_ns != 0)
+		{
+			// The ongoing outage
+			downtime_ns += System.nanoTime() - m_lostAt_ns;
+		}
+		
+		return TimeUnit.NANOSECONDS.toMillis(downtime_ns);
+	}
+	
+	/**
+	 * Gets the meter of published messages.
+	 * @return Meter.
+	 */
+	RateMeter getPublished()
+	{
+		return m_published;
+	}
+	
+	/**
+	 * Gets the size of the messages published.
+	 * @return Size in bytes.
+	 */
+	long getBytesPublished()
+	{
+		return m_bytesPublished.sum();
+	}
+	
+	/**
+	 * Gets the histogram of publish latencies.
+	 * @return Histogram.
+	 */
+	LatencyHistogram getPublishLatency()
+	{
+		return m_publishLatency;
+	}
+}
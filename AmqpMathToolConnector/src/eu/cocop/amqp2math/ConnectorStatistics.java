@@ -0,0 +1,86 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+/**
+ * A snapshot of the statistics of a connector. Taking a snapshot is cheap,
+ * so the math tool can poll it. See ConnectorStatisticsMXBean for the meaning
+ * of each member.
+ * @author Petri Kannisto
+ */
+public final class ConnectorStatistics
+{
+	/**
+	 * When the snapshot was taken (milliseconds since the epoch).
+	 */
+	public final long timestamp_ms;
+	
+	public final boolean connected;
+	public final long reconnectCount;
+	public final long downtime_ms;
+	public final long sendQueueMessages;
+	public final long sendQueueBytes;
+	public final long messagesPublished;
+	public final long bytesPublished;
+	public final double publishRate;
+	public final double publishLatencyMean_ms;
+	public final double publishLatencyP99_ms;
+	public final double publishLatencyMax_ms;
+	public final long droppedMessages;
+	
+	/**
+	 * The statistics of each subscribed topic.
+	 */
+	public final TopicStatistics[] topics;
+	
+	
+	/**
+	 * Constructor.
+	 * @param source The source of the values.
+	 * @param t The statistics of the topics.
+	 */
+	ConnectorStatistics(ConnectorStatisticsMXBean source, TopicStatistics[] t)
+	{
+		timestamp_ms = System.currentTimeMillis();
+		connected = source.isConnected();
+		reconnectCount = source.getReconnectCount();
+		downtime_ms = source.getDowntime_ms();
+		sendQueueMessages = source.getSendQueueMessages();
+		sendQueueBytes = source.getSendQueueBytes();
+		messagesPublished = source.getMessagesPublished();
+		bytesPublished = source.getBytesPublished();
+		publishRate = source.getPublishRate();
+		publishLatencyMean_ms = source.getPublishLatencyMean_ms();
+		publishLatencyP99_ms = source.getPublishLatencyP99_ms();
+		publishLatencyMax_ms = source.getPublishLatencyMax_ms();
+		droppedMessages = source.getDroppedMessages();
+		topics = t;
+	}
+	
+	/**
+	 * Returns the statistics of a topic.
+	 * @param topic Topic (pattern) as subscribed.
+	 * @return Statistics or null if not subscribed.
+	 */
+	public TopicStatistics getTopic(String topic)
+	{
+		for (TopicStatistics t : topics)
+		{
+			if (t.topic.equals(topic))
+			{
+				return t;
+			}
+		}
+		
+		return null;
+	}
+}
@@ -0,0 +1,93 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+/**
+ * The statistics of a connector as a JMX MXBean. The object name is
+ * "eu.cocop.amqp2math:type=AmqpConnector,id=(number)". The durations are in
+ * milliseconds, and the rates are per second.
+ * @author Petri Kannisto
+ */
+public interface ConnectorStatisticsMXBean
+{
+	/**
+	 * Whether the connection is open.
+	 * @return True if open.
+	 */
+	boolean isConnected();
+	
+	/**
+	 * The count of times the connection has been restored after a loss.
+	 * @return Count.
+	 */
+	long getReconnectCount();
+	
+	/**
+	 * The total time without a connection after the first connection, including any ongoing outage.
+	 * @return Time in milliseconds.
+	 */
+	long getDowntime_ms();
+	
+	/**
+	 * The count of messages in the send queues.
+	 * @return Count.
+	 */
+	long getSendQueueMessages();
+	
+	/**
+	 * The size of the messages in the send queues.
+	 * @return Size in bytes.
+	 */
+	long getSendQueueBytes();
+	
+	/**
+	 * The count of messages published. With publisher confirms, only the confirmed ones count.
+	 * @return Count.
+	 */
+	long getMessagesPublished();
+	
+	/**
+	 * The size of the messages published before compression.
+	 * @return Size in bytes.
+	 */
+	long getBytesPublished();
+	
+	/**
+	 * The count of messages published per second, measured over the latest second.
+	 * @return Rate.
+	 */
+	double getPublishRate();
+	
+	/**
+	 * The mean time from enqueueing a message to its publishing (or confirmation).
+	 * @return Time in milliseconds.
+	 */
+	double getPublishLatencyMean_ms();
+	
+	/**
+	 * The 99th percentile of the publish latency (approximate).
+	 * @return Time in milliseconds.
+	 */
+	double getPublishLatencyP99_ms();
+	
+	/**
+	 * The maximum publish latency.
+	 * @return Time in milliseconds.
+	 */
+	double getPublishLatencyMax_ms();
+	
+	/**
+	 * The count of outbound messages dropped because the send queue was full.
+	 * @return Count.
+	 */
+	long getDroppedMessages();
+}
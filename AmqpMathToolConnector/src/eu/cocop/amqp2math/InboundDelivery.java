@@ -0,0 +1,147 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A message received from the message bus, waiting to be delivered to the
+ * listeners of a notifier.
+ * @author Petri Kannisto
+ */
+class InboundDelivery
+{
+	public final String routingKey;
+	
+	// This is replaced once decompressed
+	public byte[] body;
+	
+	// The reception time (milliseconds since the epoch)
+	public final long timestamp_ms;
+	
+	// This is null if the acks are automatic
+	private final AckTracker m_ackTracker;
+	private final long m_deliveryTag;
+	
+	// If the message goes to multiple notifiers, each gets its own delivery
+	// object, and these share the count of those not completed yet. This is
+	// null if there is only one notifier.
+	private final AtomicInteger m_sharedRemaining;
+	
+	// For measuring how long the delivery took
+	private final long m_received_ns;
+	
+	// In the conflation mode, only one delivery per routing key is in the
+	// inbound queue. Such a delivery is a slot that takes the latest message
+	// of the routing key when dispatched.
+	boolean conflationSlot = false;
+	
+	// The content encoding if the sender compressed the message; otherwise, null
+	String contentEncoding = null;
+	
+	// The maximum length of the body once decompressed
+	int maxDecompressedSize = Integer.MAX_VALUE;
+	
+	// The file that contains a large message reassembled on disk; otherwise, null.
+	// The file is deleted once the delivery has been completed.
+	File file = null;
+	
+	// If the message is a request, the address for the reply and the
+	// correlation id; otherwise, null
+	String replyTo = null;
+	String correlationId = null;
+	
+	
+	/**
+	 * Constructor for a message that goes to one notifier only.
+	 * @param rkey Routing key.
+	 * @param b Message body.
+	 * @param time_ms The reception time (milliseconds since the epoch).
+	 * @param ackTracker Ack tracker or null if the acks are automatic.
+	 * @param deliveryTag Delivery tag.
+	 */
+	InboundDelivery(String rkey, byte[] b, long time_ms, AckTracker ackTracker, long deliveryTag)
+	{
+		this(rkey, b, time_ms, ackTracker, deliveryTag, null);
+	}
+	
+	/**
+	 * Constructor.
+	 * @param rkey Routing key.
+	 * @param b Message body.
+	 * @param time_ms The reception time (milliseconds since the epoch).
+	 * @param ackTracker Ack tracker or null if the acks are automatic.
+	 * @param deliveryTag Delivery tag.
+	 * @param sharedRemaining If the message goes to multiple notifiers, the count of
+	 * notifiers shared by the delivery objects of the message. Otherwise, null.
+	 */
+	InboundDelivery(String rkey, byte[] b, long time_ms, AckTracker ackTracker, long deliveryTag, AtomicInteger sharedRemaining)
+	{
+		routingKey = rkey;
+		body = b;
+		timestamp_ms = time_ms;
+		m_ackTracker = ackTracker;
+		m_deliveryTag = deliveryTag;
+		m_sharedRemaining = sharedRemaining;
+		m_received_ns = System.nanoTime();
+	}
+	
+	/**
+	 * Decompresses the body if it has a content encoding. Only the dispatch
+	 * thread of the notifier calls this, which keeps the decompression
+	 * away from the thread of the AMQP client.
+	 * @throws IOException Thrown if the encoding is not supported or the data is invalid.
+	 */
+	void decodeBody() throws IOException
+	{
+		if (contentEncoding != null)
+		{
+			body = PayloadCompression.decompress(contentEncoding, body, maxDecompressedSize);
+			contentEncoding = null;
+		}
+	}
+	
+	/**
+	 * Returns when the message was received.
+	 * @return Time (System.nanoTime).
+	 */
+	long getReceived_ns()
+	{
+		return m_received_ns;
+	}
+	
+	/**
+	 * Marks the delivery completed, i.e., the listeners have returned or
+	 * the message was dropped. With manual acks, this leads to an ack once
+	 * every notifier that received the message has completed it.
+	 * @throws IOException Thrown if acking fails.
+	 */
+	void complete() throws IOException
+	{
+		if (m_sharedRemaining != null && m_sharedRemaining.decrementAndGet() > 0)
+		{
+			return; // Other notifiers still have the message
+		}
+		
+		if (file != null)
+		{
+			file.delete();
+		}
+		
+		if (m_ackTracker != null)
+		{
+			m_ackTracker.complete(m_deliveryTag, System.nanoTime() - m_received_ns);
+		}
+	}
+}
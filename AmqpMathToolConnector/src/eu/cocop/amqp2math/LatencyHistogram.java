@@ -0,0 +1,136 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations with a bucket for each power of two nanoseconds.
+ * Recording is lock-free and allocates nothing, so it is cheap enough for
+ * every message. Percentiles are approximate: each is the upper bound of
+ * the bucket where it falls. The object is thread-safe.
+ * @author Petri Kannisto
+ */
+final class LatencyHistogram
+{
+	private static final int BucketCount = 64;
+	
+	// Bucket i holds the durations from 2^i to 2^(i+1)-1 ns. Bucket 0 also holds 0.
+	// Most durations fall in a few buckets, so each bucket is striped to keep
+	// the threads that record at the same time from contending for one counter.
+	private final LongAdder[] m_buckets = new LongAdder[BucketCount];
+	private final LongAdder m_count = new LongAdder();
+	private final LongAdder m_sum_ns = new LongAdder();
+	private final AtomicLong m_max_ns = new AtomicLong(0);
+	
+	
+	/**
+	 * Constructor.
+	 */
+	LatencyHistogram()
+	{
+		for (int i = 0; i < BucketCount; ++i)
+		{
+			m_buckets[i] = new LongAdder();
+		}
+	}
+	
+	/**
+	 * Records a duration.
+	 * @param duration_ns Duration in nanoseconds. A negative value counts as 0.
+	 */
+	void record(long duration_ns)
+	{
+		long value = Math.max(0, duration_ns);
+		int bucket = value == 0 ? 0 : 63 - Long.numberOfLeadingZeros(value);
+		
+		m_buckets[bucket].increment();
+		m_count.increment();
+		m_sum_ns.add(value);
+		
+		// Updating the maximum without allocating
+		long max = m_max_ns.get();
+		
+		while (value > max && !m_max_ns.compareAndSet(max, value))
+		{
+			max = m_max_ns.get();
+		}
+	}
+	
+	/**
+	 * Returns the count of durations recorded.
+	 * @return Count.
+	 */
+	long getCount()
+	{
+		return m_count.sum();
+	}
+	
+	/**
+	 * Returns the mean duration.
+	 * @return Mean in milliseconds or 0 if nothing has been recorded.
+	 */
+	double getMean_ms()
+	{
+		long count = m_count.sum();
+		return count == 0 ? 0 : m_sum_ns.sum() / (double)count / 1e6;
+	}
+	
+	/**
+	 * Returns the longest duration.
+	 * @return Maximum in milliseconds.
+	 */
+	double getMax_ms()
+	{
+		return m_max_ns.get() / 1e6;
+	}
+	
+	/**
+	 * Returns an approximate percentile.
+	 * @param percentile Percentile from 0 to 100.
+	 * @return Duration in milliseconds or 0 if nothing has been recorded.
+	 */
+	double getPercentile_ms(double percentile)
+	{
+		long[] counts = new long[BucketCount];
+		long total = 0;
+		
+		for (int i = 0; i < BucketCount; ++i)
+		{
+			counts[i] = m_buckets[i].sum();
+			total += counts[i];
+		}
+		
+		if (total == 0)
+		{
+			return 0;
+		}
+		
+		long rank = (long)Math.ceil(percentile / 100 * total);
+		long cumulative = 0;
+		
+		for (int i = 0; i < BucketCount; ++i)
+		{
+			cumulative += counts[i];
+			
+			if (cumulative >= rank && counts[i] > 0)
+			{
+				// The upper bound of the bucket, but not beyond the maximum
+				double upper_ns = i >= 62 ? Long.MAX_VALUE : (2L << i) - 1;
+				return Math.min(upper_ns, m_max_ns.get()) / 1e6;
+			}
+		}
+		
+		return getMax_ms();
+	}
+}
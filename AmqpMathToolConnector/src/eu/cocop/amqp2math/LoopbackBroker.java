@@ -0,0 +1,1130 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+
+/**
+ * An in-process message broker. With this, the connector can be tested and
+ * benchmarked without a network or an AMQP server. The broker implements
+ * the part of AMQP 0-9-1 that the connector uses: topic exchanges, the
+ * default exchange, queues, bindings, prefetch, acks, publisher confirms and
+ * the direct reply-to of RabbitMQ. Deliveries that are not acked when a
+ * channel closes are requeued.
+ *
+ * Like a real broker under load, the broker coalesces the acks of publisher
+ * confirms that have not been sent yet into one ack with the "multiple" flag.
+ *
+ * Faults can be injected to test the recovery of the connector: dropping
+ * the connections, refusing to connect, nacking messages, withholding
+ * confirms and slowing down consumers.
+ *
+ * To use the broker, pass it to AmqpPropsManager.setLoopbackBroker().
+ * Any connectors in the same JVM can share the broker. The object is thread-safe.
+ * @author Petri Kannisto
+ */
+public final class LoopbackBroker
+{
+	private static final AtomicInteger s_brokerCounter = new AtomicInteger(0);
+	private static final AtomicInteger s_threadCounter = new AtomicInteger(0);
+	
+	private final int m_id = s_brokerCounter.incrementAndGet();
+	private final Transport m_transport = new LoopbackTransport();
+	
+	// Mutual exclusion for all variables below and the state of the nested
+	// objects: use this as the lock. The threads that wait for deliveries wait on it.
+	private final Object m_lock = new Object();
+	private final HashMap<String, Exchange> m_exchanges = new HashMap<>();
+	private final HashMap<String, Queue> m_queues = new HashMap<>();
+	private final ArrayList<LoopbackConnection> m_connections = new ArrayList<>();
+	private int m_queueCounter = 0;
+	private long m_publishedCount = 0;
+	private long m_deliveredCount = 0;
+	
+	// Faults
+	private boolean m_refuseConnections = false;
+	private int m_nackCount = 0;
+	private boolean m_withholdConfirms = false;
+	private long m_consumerDelay_ns = 0;
+	
+	
+	/**
+	 * Constructor.
+	 */
+	public LoopbackBroker()
+	{
+		// Nothing to do
+	}
+	
+	/**
+	 * Drops all connections as if the network had failed. The connectors
+	 * notice this and reconnect.
+	 */
+	public void dropConnections()
+	{
+		ArrayList<LoopbackConnection> connections;
+		
+		synchronized (m_lock)
+		{
+			connections = new ArrayList<>(m_connections);
+		}
+		
+		for (LoopbackConnection conn : connections)
+		{
+			conn.shutDown(false);
+		}
+	}
+	
+	/**
+	 * Sets whether new connections are refused, as if the broker were down.
+	 * @param refuse True to refuse, false to accept.
+	 */
+	public void setRefuseConnections(boolean refuse)
+	{
+		synchronized (m_lock)
+		{
+			m_refuseConnections = refuse;
+		}
+	}
+	
+	/**
+	 * Makes the broker nack the next messages published in the confirm mode.
+	 * The messages are still routed to the queues.
+	 * @param count The count of messages to nack.
+	 */
+	public void nackNext(int count)
+	{
+		synchronized (m_lock)
+		{
+			m_nackCount = count;
+		}
+	}
+	
+	/**
+	 * Sets whether publisher confirms are withheld, as if the broker were slow
+	 * to take responsibility of the messages. Once released, the confirms are
+	 * sent in order, and the acks withheld in a row are sent as one ack with the
+	 * "multiple" flag. The confirms of a channel that closes meanwhile are never sent.
+	 * @param withhold True to withhold, false to release.
+	 */
+	public void setWithholdConfirms(boolean withhold)
+	{
+		synchronized (m_lock)
+		{
+			m_withholdConfirms = withhold;
+			
+			if (!withhold)
+			{
+				for (LoopbackConnection conn : m_connections)
+				{
+					for (LoopbackChannel channel : conn.m_channels)
+					{
+						channel.releaseConfirmsLocked();
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Closes the channels that consume direct replies, as if the broker had
+	 * closed them due to a channel error. The connections stay open.
+	 */
+	public void closeReplyChannels()
+	{
+		synchronized (m_lock)
+		{
+			for (LoopbackConnection conn : m_connections)
+			{
+				for (LoopbackChannel channel : new ArrayList<>(conn.m_channels))
+				{
+					if (channel.m_replyQueue != null)
+					{
+						channel.shutDownLocked(false);
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Sets a delay before each delivery to a consumer. This simulates a slow
+	 * consumer or a slow network. The default is 0.
+	 * @param delay_ms Delay in milliseconds.
+	 * @exception IllegalArgumentException Thrown if the delay is negative.
+	 */
+	public void setConsumerDelay(int delay_ms)
+	{
+		if (delay_ms < 0)
+		{
+			throw new IllegalArgumentException("The delay must not be negative");
+		}
+		
+		synchronized (m_lock)
+		{
+			m_consumerDelay_ns = TimeUnit.MILLISECONDS.toNanos(delay_ms);
+		}
+	}
+	
+	/**
+	 * Returns the count of messages published.
+	 * @return Count.
+	 */
+	public long getPublishedCount()
+	{
+		synchronized (m_lock)
+		{
+			return m_publishedCount;
+		}
+	}
+	
+	/**
+	 * Returns the count of deliveries to consumers, including redeliveries.
+	 * @return Count.
+	 */
+	public long getDeliveredCount()
+	{
+		synchronized (m_lock)
+		{
+			return m_deliveredCount;
+		}
+	}
+	
+	/**
+	 * Returns the count of messages that wait in queues for delivery.
+	 * @return Count.
+	 */
+	public int getQueuedCount()
+	{
+		synchronized (m_lock)
+		{
+			int retval = 0;
+			
+			for (Queue q : m_queues.values())
+			{
+				retval += q.messages.size();
+			}
+			
+			return retval;
+		}
+	}
+	
+	/**
+	 * Returns the count of open connections.
+	 * @return Count.
+	 */
+	public int getConnectionCount()
+	{
+		synchronized (m_lock)
+		{
+			return m_connections.size();
+		}
+	}
+	
+	/**
+	 * Gets the transport that connects to this broker.
+	 * @return Transport.
+	 */
+	Transport getTransport()
+	{
+		return m_transport;
+	}
+	
+	private static Thread createThread(Runnable r, String name)
+	{
+		// Daemon threads never prevent the JVM from exiting
+		Thread thread = new Thread(r, "LoopbackBroker " + name + " " + s_threadCounter.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	}
+	
+	// Only call this method when the lock is applied!
+	private void deleteQueueLocked(Queue queue)
+	{
+		m_queues.remove(queue.name);
+		
+		for (Exchange ex : m_exchanges.values())
+		{
+			ex.unbindAll(queue);
+		}
+	}
+	
+	
+	/**
+	 * A message in a queue.
+	 */
+	private static class Message
+	{
+		final String routingKey;
+		final BasicProperties properties;
+		final byte[] body;
+		
+		
+		Message(String rkey, BasicProperties props, byte[] b)
+		{
+			routingKey = rkey;
+			properties = props;
+			body = b;
+		}
+	}
+	
+	/**
+	 * A queue. The lock of the broker protects this.
+	 */
+	private static class Queue
+	{
+		final String name;
+		final LoopbackConnection owner;
+		final ArrayDeque<Message> messages = new ArrayDeque<>();
+		int consumerCount = 0;
+		
+		
+		Queue(String n, LoopbackConnection o)
+		{
+			name = n;
+			owner = o;
+		}
+	}
+	
+	/**
+	 * A topic exchange. The lock of the broker protects this.
+	 */
+	private static class Exchange
+	{
+		// The queues bound with each pattern
+		private final HashMap<String, LinkedHashSet<Queue>> m_bindings = new HashMap<>();
+		private TopicMatcher<LinkedHashSet<Queue>> m_matcher = new TopicMatcher<>(m_bindings);
+		
+		
+		void bind(String pattern, Queue queue)
+		{
+			LinkedHashSet<Queue> queues = m_bindings.get(pattern);
+			
+			if (queues == null)
+			{
+				queues = new LinkedHashSet<>();
+				m_bindings.put(pattern, queues);
+			}
+			
+			queues.add(queue);
+			m_matcher = new TopicMatcher<>(m_bindings);
+		}
+		
+		void unbind(String pattern, Queue queue)
+		{
+			LinkedHashSet<Queue> queues = m_bindings.get(pattern);
+			
+			if (queues != null && queues.remove(queue) && queues.isEmpty())
+			{
+				m_bindings.remove(pattern);
+			}
+			
+			m_matcher = new TopicMatcher<>(m_bindings);
+		}
+		
+		void unbindAll(Queue queue)
+		{
+			for (Iterator<LinkedHashSet<Queue>> iter = m_bindings.values().iterator(); iter.hasNext(); )
+			{
+				LinkedHashSet<Queue> queues = iter.next();
+				
+				if (queues.remove(queue) && queues.isEmpty())
+				{
+					iter.remove();
+				}
+			}
+			
+			m_matcher = new TopicMatcher<>(m_bindings);
+		}
+		
+		LinkedHashSet<Queue> route(String routingKey)
+		{
+			// Even if several bindings match, each queue gets the message once
+			LinkedHashSet<Queue> retval = new LinkedHashSet<>();
+			
+			for (LinkedHashSet<Queue> queues : m_matcher.match(routingKey))
+			{
+				retval.addAll(queues);
+			}
+			
+			return retval;
+		}
+	}
+	
+	/**
+	 * Opens connections to the broker.
+	 */
+	private class LoopbackTransport implements Transport
+	{
+		@Override
+		public String getConnectionKey(AmqpPropsManager props)
+		{
+			// Connectors with the same settings share a connection like with a real broker
+			return "loopback-" + m_id + " " + props.getUrl();
+		}
+		
+		@Override
+		public TransportConnection connect(AmqpPropsManager props) throws IOException
+		{
+			synchronized (m_lock)
+			{
+				if (m_refuseConnections)
+				{
+					throw new IOException("Connection refused by the loopback broker");
+				}
+				
+				LoopbackConnection conn = new LoopbackConnection();
+				m_connections.add(conn);
+				return conn;
+			}
+		}
+	}
+	
+	/**
+	 * A connection to the broker.
+	 */
+	private class LoopbackConnection implements TransportConnection
+	{
+		// Confirms and shutdown notifications run in this thread in order,
+		// like in the thread of a real client
+		private final ExecutorService m_events = Executors.newSingleThreadExecutor(new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				return createThread(r, "connection");
+			}
+		});
+		
+		private final CopyOnWriteArrayList<Transport.ShutdownHandler> m_shutdownHandlers = new CopyOnWriteArrayList<>();
+		
+		// The lock of the broker protects these
+		private final ArrayList<LoopbackChannel> m_channels = new ArrayList<>();
+		private boolean m_open = true;
+		
+		
+		@Override
+		public TransportChannel createChannel() throws IOException
+		{
+			synchronized (m_lock)
+			{
+				if (!m_open)
+				{
+					throw new IOException("The connection is closed");
+				}
+				
+				LoopbackChannel channel = new LoopbackChannel(this);
+				m_channels.add(channel);
+				return channel;
+			}
+		}
+		
+		@Override
+		public boolean isOpen()
+		{
+			synchronized (m_lock)
+			{
+				return m_open;
+			}
+		}
+		
+		@Override
+		public void addShutdownHandler(Transport.ShutdownHandler handler)
+		{
+			m_shutdownHandlers.add(handler);
+		}
+		
+		@Override
+		public void removeShutdownHandler(Transport.ShutdownHandler handler)
+		{
+			m_shutdownHandlers.remove(handler);
+		}
+		
+		@Override
+		public void close()
+		{
+			shutDown(true);
+		}
+		
+		/**
+		 * Closes the connection and its channels.
+		 * @param initiatedByApplication Whether the application closed the connection.
+		 */
+		void shutDown(final boolean initiatedByApplication)
+		{
+			synchronized (m_lock)
+			{
+				if (!m_open)
+				{
+					return;
+				}
+				
+				m_open = false;
+				m_connections.remove(this);
+				
+				for (LoopbackChannel channel : new ArrayList<>(m_channels))
+				{
+					channel.shutDownLocked(initiatedByApplication);
+				}
+				
+				// Exclusive queues are deleted with their connection
+				for (Queue q : new ArrayList<>(m_queues.values()))
+				{
+					if (q.owner == this)
+					{
+						deleteQueueLocked(q);
+					}
+				}
+				
+				post(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						for (Transport.ShutdownHandler handler : m_shutdownHandlers)
+						{
+							handler.shutdownCompleted(initiatedByApplication);
+						}
+					}
+				});
+				
+				// The notifications posted so far still run
+				m_events.shutdown();
+			}
+		}
+		
+		/**
+		 * Runs a task in the event thread of the connection.
+		 * @param task Task.
+		 */
+		void post(Runnable task)
+		{
+			if (!m_events.isShutdown())
+			{
+				m_events.execute(task);
+			}
+		}
+	}
+	
+	/**
+	 * A channel of a connection.
+	 */
+	private class LoopbackChannel implements TransportChannel
+	{
+		private final LoopbackConnection m_connection;
+		private final CopyOnWriteArrayList<Transport.ShutdownHandler> m_shutdownHandlers = new CopyOnWriteArrayList<>();
+		
+		// The lock of the broker protects these
+		private boolean m_open = true;
+		private int m_prefetch = 0; // 0 = unlimited
+		private ConfirmHandler m_confirmHandler = null;
+		private long m_nextPublishSeqNo = 0;
+		
+		// The acks not sent yet. Further acks are added to these until sent.
+		private AckBatch m_openAcks = null;
+		
+		// The confirms withheld in order
+		private final ArrayList<Runnable> m_withheldConfirms = new ArrayList<>();
+		private long m_nextDeliveryTag = 1;
+		private final LinkedHashMap<Long, Unacked> m_unacked = new LinkedHashMap<>();
+		private final ArrayList<Consumption> m_consumptions = new ArrayList<>();
+		private int m_nextConsumption = 0;
+		private Thread m_dispatcher = null;
+		
+		// The queue behind the direct reply-to pseudo-queue if consumed
+		private Queue m_replyQueue = null;
+		
+		
+		LoopbackChannel(LoopbackConnection conn)
+		{
+			m_connection = conn;
+		}
+		
+		@Override
+		public void exchangeDeclare(String exchange, boolean durable, boolean autoDelete) throws IOException
+		{
+			synchronized (m_lock)
+			{
+				expectOpen();
+				
+				if (!m_exchanges.containsKey(exchange))
+				{
+					m_exchanges.put(exchange, new Exchange());
+				}
+			}
+		}
+		
+		@Override
+		public String queueDeclare() throws IOException
+		{
+			synchronized (m_lock)
+			{
+				expectOpen();
+				
+				Queue queue = new Queue("amq.gen-" + (++m_queueCounter), m_connection);
+				m_queues.put(queue.name, queue);
+				return queue.name;
+			}
+		}
+		
+		@Override
+		public void queueBind(String queue, String exchange, String routingKey, boolean wait) throws IOException
+		{
+			synchronized (m_lock)
+			{
+				expectOpen();
+				getExchange(exchange).bind(routingKey, getQueue(queue));
+			}
+		}
+		
+		@Override
+		public void queueUnbind(String queue, String exchange, String routingKey) throws IOException
+		{
+			synchronized (m_lock)
+			{
+				expectOpen();
+				getExchange(exchange).unbind(routingKey, getQueue(queue));
+			}
+		}
+		
+		@Override
+		public void basicQos(int prefetch) throws IOException
+		{
+			synchronized (m_lock)
+			{
+				expectOpen();
+				m_prefetch = prefetch;
+				
+				// A larger window may enable deliveries
+				m_lock.notifyAll();
+			}
+		}
+		
+		@Override
+		public void basicConsume(String queue, boolean autoAck, DeliveryHandler handler) throws IOException
+		{
+			synchronized (m_lock)
+			{
+				expectOpen();
+				
+				Queue q;
+				
+				if (DirectReplyTo.equals(queue))
+				{
+					// The replies go to a hidden queue of the channel
+					if (!autoAck || m_replyQueue != null)
+					{
+						shutDownLocked(false);
+						throw new IOException("Direct reply-to requires automatic acks and one consumer per channel");
+					}
+					
+					q = new Queue(DirectReplyTo + ".g" + (++m_queueCounter), m_connection);
+					m_queues.put(q.name, q);
+					m_replyQueue = q;
+				}
+				else
+				{
+					q = getQueue(queue);
+				}
+				
+				++q.consumerCount;
+				m_consumptions.add(new Consumption(q, autoAck, handler));
+				
+				if (m_dispatcher == null)
+				{
+					m_dispatcher = createThread(new Runnable()
+					{
+						@Override
+						public void run()
+						{
+							runDispatcher();
+						}
+					}, "consumer");
+					m_dispatcher.start();
+				}
+				
+				m_lock.notifyAll();
+			}
+		}
+		
+		@Override
+		public void basicAck(long deliveryTag, boolean multiple) throws IOException
+		{
+			synchronized (m_lock)
+			{
+				expectOpen();
+				
+				if (multiple)
+				{
+					// The tags are in ascending order
+					for (Iterator<Long> iter = m_unacked.keySet().iterator(); iter.hasNext(); )
+					{
+						if (iter.next() > deliveryTag)
+						{
+							break;
+						}
+						
+						iter.remove();
+					}
+				}
+				else
+				{
+					m_unacked.remove(deliveryTag);
+				}
+				
+				// The prefetch window may have room now
+				m_lock.notifyAll();
+			}
+		}
+		
+		@Override
+		public void confirmSelect(ConfirmHandler handler) throws IOException
+		{
+			synchronized (m_lock)
+			{
+				expectOpen();
+				m_confirmHandler = handler;
+				m_nextPublishSeqNo = 1;
+			}
+		}
+		
+		@Override
+		public long getNextPublishSeqNo()
+		{
+			synchronized (m_lock)
+			{
+				return m_nextPublishSeqNo;
+			}
+		}
+		
+		@Override
+		public void basicPublish(String exchange, String routingKey, BasicProperties props, byte[] body) throws IOException
+		{
+			synchronized (m_lock)
+			{
+				expectOpen();
+				
+				if (props != null && DirectReplyTo.equals(props.getReplyTo()))
+				{
+					if (m_replyQueue == null)
+					{
+						// A real broker closes the channel as well
+						shutDownLocked(false);
+						throw new IOException("Direct reply-to requires consuming the replies on the same channel");
+					}
+					
+					// The consumer of the request sees the actual address
+					props = props.builder().replyTo(m_replyQueue.name).build();
+				}
+				
+				Message message = new Message(routingKey, props, body);
+				
+				if (exchange.isEmpty())
+				{
+					// The default exchange routes to the queue named by the routing key
+					Queue q = m_queues.get(routingKey);
+					
+					if (q != null)
+					{
+						q.messages.add(message);
+					}
+				}
+				else
+				{
+					Exchange ex = m_exchanges.get(exchange);
+					
+					if (ex == null)
+					{
+						// A real broker closes the channel as well
+						shutDownLocked(false);
+						throw new IOException("No exchange \"" + exchange + "\"");
+					}
+					
+					// Unroutable messages are discarded
+					for (Queue q : ex.route(routingKey))
+					{
+						q.messages.add(message);
+					}
+				}
+				
+				++m_publishedCount;
+				m_lock.notifyAll();
+				
+				if (m_confirmHandler != null)
+				{
+					confirmLocked(m_nextPublishSeqNo++);
+				}
+			}
+		}
+		
+		@Override
+		public void addShutdownHandler(Transport.ShutdownHandler handler)
+		{
+			m_shutdownHandlers.add(handler);
+		}
+		
+		@Override
+		public void close()
+		{
+			synchronized (m_lock)
+			{
+				shutDownLocked(true);
+			}
+		}
+		
+		/**
+		 * Sends the confirms that have been withheld.
+		 * Only call this method when the lock is applied!
+		 */
+		void releaseConfirmsLocked()
+		{
+			for (Runnable confirm : m_withheldConfirms)
+			{
+				m_connection.post(confirm);
+			}
+			
+			m_withheldConfirms.clear();
+		}
+		
+		/**
+		 * Closes the channel. The deliveries not acked are requeued.
+		 * Only call this method when the lock is applied!
+		 * @param initiatedByApplication Whether the application closed the channel.
+		 */
+		void shutDownLocked(final boolean initiatedByApplication)
+		{
+			if (!m_open)
+			{
+				return;
+			}
+			
+			m_open = false;
+			m_connection.m_channels.remove(this);
+			m_openAcks = null;
+			m_withheldConfirms.clear();
+			
+			// Requeuing in reverse so that the original order is retained at the head of each queue
+			ArrayList<Unacked> unacked = new ArrayList<>(m_unacked.values());
+			m_unacked.clear();
+			
+			for (int i = unacked.size() - 1; i >= 0; --i)
+			{
+				Unacked u = unacked.get(i);
+				
+				if (m_queues.get(u.queue.name) == u.queue)
+				{
+					u.queue.messages.addFirst(u.message);
+				}
+			}
+			
+			// Auto-delete queues are deleted once their last consumer is gone
+			for (Consumption c : m_consumptions)
+			{
+				if (--c.queue.consumerCount == 0)
+				{
+					deleteQueueLocked(c.queue);
+				}
+			}
+			
+			m_consumptions.clear();
+			
+			// Waking up the dispatcher so that it ends, and the other channels
+			// so that they take the requeued messages
+			m_lock.notifyAll();
+			
+			m_connection.post(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					for (Transport.ShutdownHandler handler : m_shutdownHandlers)
+					{
+						handler.shutdownCompleted(initiatedByApplication);
+					}
+				}
+			});
+		}
+		
+		private void runDispatcher()
+		{
+			try
+			{
+				while (true)
+				{
+					Delivery delivery;
+					long delay_ns;
+					
+					synchronized (m_lock)
+					{
+						while ((delivery = nextDeliveryLocked()) == null)
+						{
+							if (!m_open)
+							{
+								return;
+							}
+							
+							m_lock.wait();
+						}
+						
+						delay_ns = m_consumerDelay_ns;
+					}
+					
+					if (delay_ns > 0)
+					{
+						TimeUnit.NANOSECONDS.sleep(delay_ns);
+					}
+					
+					try
+					{
+						delivery.handler.handleDelivery(delivery.tag, delivery.message.routingKey,
+								delivery.message.properties, delivery.message.body);
+					}
+					catch (IOException | RuntimeException e)
+					{
+						// Like a real client, the consumer continues
+					}
+				}
+			}
+			catch (InterruptedException e)
+			{
+				// Ending
+			}
+		}
+		
+		// Only call this method when the lock is applied!
+		private Delivery nextDeliveryLocked()
+		{
+			if (!m_open || m_consumptions.isEmpty() || (m_prefetch > 0 && m_unacked.size() >= m_prefetch))
+			{
+				return null;
+			}
+			
+			// Round robin between the queues consumed
+			for (int i = 0; i < m_consumptions.size(); ++i)
+			{
+				int index = (m_nextConsumption + i) % m_consumptions.size();
+				Consumption c = m_consumptions.get(index);
+				Message message = c.queue.messages.poll();
+				
+				if (message != null)
+				{
+					m_nextConsumption = index + 1;
+					long tag = m_nextDeliveryTag++;
+					++m_deliveredCount;
+					
+					if (!c.autoAck)
+					{
+						m_unacked.put(tag, new Unacked(c.queue, message));
+					}
+					
+					return new Delivery(c.handler, tag, message);
+				}
+			}
+			
+			return null;
+		}
+		
+		// Only call this method when the lock is applied!
+		private void confirmLocked(final long seqNo)
+		{
+			if (m_nackCount == 0)
+			{
+				// Adding to the acks not sent yet if any
+				if (m_openAcks == null)
+				{
+					m_openAcks = new AckBatch(this, m_confirmHandler);
+					postConfirmLocked(m_openAcks);
+				}
+				
+				m_openAcks.add(seqNo);
+				return;
+			}
+			
+			--m_nackCount;
+			
+			// The acks sent after the nack must not cover the nacked message
+			final ConfirmHandler handler = m_confirmHandler;
+			m_openAcks = null;
+			
+			postConfirmLocked(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					handler.handleConfirm(seqNo, false, false);
+				}
+			});
+		}
+		
+		// Only call this method when the lock is applied!
+		private void postConfirmLocked(Runnable confirm)
+		{
+			if (m_withholdConfirms)
+			{
+				m_withheldConfirms.add(confirm);
+			}
+			else
+			{
+				m_connection.post(confirm);
+			}
+		}
+		
+		// Only call this method when the lock is applied!
+		private void expectOpen() throws IOException
+		{
+			if (!m_open)
+			{
+				throw new IOException("The channel is closed");
+			}
+		}
+		
+		// Only call this method when the lock is applied!
+		private Exchange getExchange(String name) throws IOException
+		{
+			Exchange retval = m_exchanges.get(name);
+			
+			if (retval == null)
+			{
+				throw new IOException("No exchange \"" + name + "\"");
+			}
+			
+			return retval;
+		}
+		
+		// Only call this method when the lock is applied!
+		private Queue getQueue(String name) throws IOException
+		{
+			Queue retval = m_queues.get(name);
+			
+			if (retval == null)
+			{
+				throw new IOException("No queue \"" + name + "\"");
+			}
+			
+			return retval;
+		}
+	}
+	
+	/**
+	 * Acks in a row to be sent as one.
+	 */
+	private class AckBatch implements Runnable
+	{
+		private final LoopbackChannel m_channel;
+		private final TransportChannel.ConfirmHandler m_handler;
+		
+		// The lock of the broker protects these
+		private long m_lastSeqNo = 0;
+		private int m_count = 0;
+		
+		
+		AckBatch(LoopbackChannel channel, TransportChannel.ConfirmHandler handler)
+		{
+			m_channel = channel;
+			m_handler = handler;
+		}
+		
+		// Only call this method when the lock is applied!
+		void add(long seqNo)
+		{
+			m_lastSeqNo = seqNo;
+			++m_count;
+		}
+		
+		@Override
+		public void run()
+		{
+			long lastSeqNo;
+			int count;
+			
+			synchronized (m_lock)
+			{
+				// Any further acks go to another batch
+				if (m_channel.m_openAcks == this)
+				{
+					m_channel.m_openAcks = null;
+				}
+				
+				lastSeqNo = m_lastSeqNo;
+				count = m_count;
+			}
+			
+			m_handler.handleConfirm(lastSeqNo, count > 1, true);
+		}
+	}
+	
+	/**
+	 * A queue consumed by a channel.
+	 */
+	private static class Consumption
+	{
+		final Queue queue;
+		final boolean autoAck;
+		final TransportChannel.DeliveryHandler handler;
+		
+		
+		Consumption(Queue q, boolean aa, TransportChannel.DeliveryHandler h)
+		{
+			queue = q;
+			autoAck = aa;
+			handler = h;
+		}
+	}
+	
+	/**
+	 * A delivery not acked yet.
+	 */
+	private static class Unacked
+	{
+		final Queue queue;
+		final Message message;
+		
+		
+		Unacked(Queue q, Message m)
+		{
+			queue = q;
+			message = m;
+		}
+	}
+	
+	/**
+	 * A delivery to be handed to a consumer.
+	 */
+	private static class Delivery
+	{
+		final TransportChannel.DeliveryHandler handler;
+		final long tag;
+		final Message message;
+		
+		
+		Delivery(TransportChannel.DeliveryHandler h, long t, Message m)
+		{
+			handler = h;
+			tag = t;
+			message = m;
+		}
+	}
+}
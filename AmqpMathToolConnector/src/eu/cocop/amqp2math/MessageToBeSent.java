@@ -0,0 +1,116 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * This class enables message information to be associated and enqueued together.
+ * @author Petri Kannisto
+ */
+class MessageToBeSent
+{
+	public final String topic;
+	public final byte[] body;
+	
+	// The message type, which the publisher puts in the "type" property.
+	// This is null for ordinary messages.
+	public final String type;
+	
+	// When the message was enqueued (System.nanoTime) for measuring the publish latency
+	public final long enqueued_ns;
+	
+	// This is null unless the caller wants to know when the message is delivered
+	private final CompletableFuture<Void> m_future;
+	
+	
+	/**
+	 * Constructor.
+	 * @param t Topic.
+	 * @param b Message body.
+	 * @param f Future to complete once delivered. May be null.
+	 */
+	MessageToBeSent(String t, byte[] b, CompletableFuture<Void> f)
+	{
+		this(t, null, b, f);
+	}
+	
+	/**
+	 * Constructor.
+	 * @param t Topic.
+	 * @param ty Message type or null.
+	 * @param b Message body.
+	 * @param f Future to complete once delivered. May be null.
+	 */
+	MessageToBeSent(String t, String ty, byte[] b, CompletableFuture<Void> f)
+	{
+		this(t, ty, b, f, System.nanoTime());
+	}
+	
+	/**
+	 * Constructor.
+	 * @param t Topic.
+	 * @param ty Message type or null.
+	 * @param b Message body.
+	 * @param f Future to complete once delivered. May be null.
+	 * @param enq_ns When the message was enqueued (System.nanoTime).
+	 */
+	MessageToBeSent(String t, String ty, byte[] b, CompletableFuture<Void> f, long enq_ns)
+	{
+		topic = t;
+		type = ty;
+		body = b;
+		m_future = f;
+		enqueued_ns = enq_ns;
+	}
+	
+	/**
+	 * Gets the future.
+	 * @return Future or null.
+	 */
+	CompletableFuture<Void> getFuture()
+	{
+		return m_future;
+	}
+	
+	/**
+	 * Completes the future (if any) successfully.
+	 */
+	void complete()
+	{
+		if (m_future != null)
+		{
+			m_future.complete(null);
+		}
+	}
+	
+	/**
+	 * Completes the future (if any) exceptionally.
+	 * @param e Exception.
+	 */
+	void fail(Exception e)
+	{
+		if (m_future != null)
+		{
+			m_future.completeExceptionally(e);
+		}
+	}
+	
+	/**
+	 * Returns whether the message was read from a spool, which retains it until completed.
+	 * @return True if so, otherwise false.
+	 */
+	boolean isSpooled()
+	{
+		return false;
+	}
+}
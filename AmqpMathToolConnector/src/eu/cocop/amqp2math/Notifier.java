@@ -7,13 +7,22 @@
 //
 // Author: Petri Kannisto, Tampere University, Finland
 // File created: 2/2018
-// Last modified: 3/2020
+// Last modified: 10/2026
 // 
 // Modified from code by Sathish Kumar Narayanan
 // https://github.com/ragavsathish/RabbitMQ-Matlab-Client/tree/master/src/mqwrapper
 
 package eu.cocop.amqp2math;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Class to enable eventing with a math tool, such as Matlab.
  * @author Sathish Kumar Narayanan
@@ -33,26 +42,91 @@ public class Notifier
 	  - this class was renamed from MessagingEvent
 	  - renamed method notifyMatlab to notifyMathTool
 	  - now using explicit typing for the Vector of message listeners
+	  - later replaced the Vector with copy-on-write arrays
 	- IMessageListener
 	  - this was renamed from MessageListener
 	- MessageReceivedEvent
 	  - this class was renamed from GetMessageEvent
 	  - new member: routing key
 	  - now delivering the message body as byte[] instead of string
+	- MessageBatchReceivedEvent, IMessageBatchListener: new
+	- Notifier: the listeners are now called in a dispatch thread of the notifier
+	- Notifier: new conflation mode
+	- MessageReceivedEvent: the routing key is now that of the message instead of the topic pattern
+	- MessageReceivedEvent: new accessors to decode numeric arrays
+	- Notifier: compressed messages are decompressed before notifying
+	- MessageReceivedEvent, MessageBatchReceivedEvent: new member for large messages in files
+	- Notifier: new metrics
+	- Notifier: errors are logged asynchronously
+	- MessageReceivedEvent: new members for replying to requests
 	*/
 	
+	private static final ConnectorLog s_log = new ConnectorLog(Notifier.class, false);
+	
 	private final String m_topic;
 	
-	private java.util.Vector<IMessageListener> m_listeners = new java.util.Vector<IMessageListener>();
+	// The listeners are copy-on-write arrays. This enables reading them without
+	// locking or copying for each message. Mutual exclusion for modifications: use "this".
+	private volatile IMessageListener[] m_listeners = new IMessageListener[0];
+	private volatile IMessageBatchListener[] m_batchListeners = new IMessageBatchListener[0];
+	
+	// Inbound messages wait here for the dispatch thread. This decouples the
+	// threads of the AMQP client from the listeners, which may be slow.
+	private final ArrayBlockingQueue<InboundDelivery> m_inboundQueue;
+	private final OverflowPolicy m_overflowPolicy;
+	private final AtomicLong m_droppedCount = new AtomicLong(0);
+	
+	// Conflation mode. The map has the latest pending message of each routing key
+	// that has a slot in the inbound queue. Mutual exclusion: use the conflation lock.
+	private volatile boolean m_conflationEnabled = false;
+	private final Object m_conflationLock = new Object();
+	private final HashMap<String, InboundDelivery> m_latestPending = new HashMap<>();
+	private final AtomicLong m_conflatedCount = new AtomicLong(0);
+	
+	// The dispatch thread calls the listeners. Each notifier has its own thread,
+	// which retains the order of messages within the topic while the topics
+	// are processed in parallel.
+	private final Thread m_dispatchThread;
+	private volatile boolean m_closed = false;
+	
+	// Batch thresholds
+	private volatile int m_batchMaxMessages = 100;
+	private volatile int m_batchMaxDelay_ms = 100;
+	
+	// The batch being collected. Only the dispatch thread accesses these.
+	private ArrayList<InboundDelivery> m_batch = new ArrayList<>();
+	private long m_batchDeadline_ns = 0;
+	
+	// Metrics. Only the dispatch thread records these.
+	private final RateMeter m_delivered = new RateMeter();
+	private final LatencyHistogram m_listenerTime = new LatencyHistogram();
+	private final LatencyHistogram m_deliveryLatency = new LatencyHistogram();
+	private final TopicMetrics m_metrics = new TopicMetrics();
 	
 	
 	/**
 	 * Constructor.
 	 * @param topic Topic.
+	 * @param queueCapacity The capacity of the inbound queue in messages.
+	 * @param policy What happens when the inbound queue is full.
 	 */
-	Notifier(String topic)
+	Notifier(String topic, int queueCapacity, OverflowPolicy policy)
 	{
 		m_topic = topic;
+		m_inboundQueue = new ArrayBlockingQueue<>(queueCapacity);
+		m_overflowPolicy = policy;
+		
+		// A daemon thread so that it will never prevent the JVM of the math tool from exiting
+		m_dispatchThread = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				runDispatch();
+			}
+		}, "Notifier dispatch " + topic);
+		m_dispatchThread.setDaemon(true);
+		m_dispatchThread.start();
 	}
 	
 	/**
@@ -65,10 +139,7 @@ public class Notifier
 		// Therefore, it is assumed that the math tool calls this in the background.
 		// It is also assumed that its name is fixed ("addListener").
 		
-		synchronized (this)
-		{
-			m_listeners.addElement(lis);
-		}
+		m_listeners = addToArray(m_listeners, lis);
 	}
 	
 	/**
@@ -81,32 +152,497 @@ public class Notifier
 		// Therefore, it is assumed that the math tool calls this in the background.
 		// It is also assumed that its name is fixed ("removeListener").
 		
-		synchronized (this)
+		m_listeners = removeFromArray(m_listeners, lis);
+	}
+	
+	/**
+	 * Adds a batch event listener. Batch listeners receive messages in batches,
+	 * which is much faster than one by one if the message rate is high, because the
+	 * overhead of calling the math tool occurs once per batch. See setBatchMode.
+	 * @param lis Listener.
+	 */
+	public synchronized void addBatchListener(IMessageBatchListener lis)
+	{
+		// This method is called explicitly neither here nor in the math tool (such as Matlab).
+		// Therefore, it is assumed that the math tool calls this in the background.
+		
+		m_batchListeners = addToArray(m_batchListeners, lis);
+	}
+	
+	/**
+	 * Removes a batch event listener.
+	 * @param lis Listener.
+	 */
+	public synchronized void removeBatchListener(IMessageBatchListener lis)
+	{
+		m_batchListeners = removeFromArray(m_batchListeners, lis);
+	}
+	
+	private static <T> T[] addToArray(T[] array, T item)
+	{
+		T[] retval = Arrays.copyOf(array, array.length + 1);
+		retval[array.length] = item;
+		return retval;
+	}
+	
+	private static <T> T[] removeFromArray(T[] array, T item)
+	{
+		// Removing the first occurrence like Vector.removeElement
+		for (int i = 0; i < array.length; ++i)
+		{
+			if (array[i].equals(item))
+			{
+				T[] retval = Arrays.copyOf(array, array.length - 1);
+				System.arraycopy(array, i + 1, retval, i, array.length - i - 1);
+				return retval;
+			}
+		}
+		
+		return array;
+	}
+	
+	/**
+	 * Sets when batch listeners are notified. A batch is delivered once it has
+	 * the maximum count of messages or once its first message has waited for the
+	 * maximum delay, whichever comes first. The default is 100 messages and 100 ms.
+	 * Listeners that are not batch listeners receive each message separately regardless.
+	 * @param maxMessages The maximum count of messages in a batch.
+	 * @param maxDelay_ms The maximum delay in milliseconds.
+	 * @exception IllegalArgumentException Thrown if either value is less than 1.
+	 */
+	public void setBatchMode(int maxMessages, int maxDelay_ms)
+	{
+		if (maxMessages < 1 || maxDelay_ms < 1)
+		{
+			throw new IllegalArgumentException("The batch thresholds must be at least 1");
+		}
+		
+		m_batchMaxMessages = maxMessages;
+		m_batchMaxDelay_ms = maxDelay_ms;
+	}
+	
+	/**
+	 * Returns the count of received messages dropped because the inbound
+	 * queue was full (see AmqpPropsManager.setInboundOverflowPolicy).
+	 * @return Count.
+	 */
+	public long getDroppedMessageCount()
+	{
+		return m_droppedCount.get();
+	}
+	
+	/**
+	 * Sets whether the conflation mode is enabled. In this mode, if a message
+	 * arrives while an older message with the same routing key is still waiting
+	 * for the listeners, the newer message replaces the older. That is, the
+	 * listeners only receive the latest value when they become free. This suits
+	 * topics that carry a state, where stale values are useless. The default is "false".
+	 * @param enabled True if enabled, otherwise false.
+	 */
+	public void setConflation(boolean enabled)
+	{
+		m_conflationEnabled = enabled;
+	}
+	
+	/**
+	 * Returns the count of messages that were replaced by newer messages in the
+	 * conflation mode and thus never delivered to the listeners.
+	 * @return Count.
+	 */
+	public long getConflatedMessageCount()
+	{
+		return m_conflatedCount.get();
+	}
+	
+	/**
+	 * Gets the statistics of the topic.
+	 * @return Statistics.
+	 */
+	TopicStatisticsMXBean getStatistics()
+	{
+		return m_metrics;
+	}
+	
+	/**
+	 * Updates the rates of the metrics. Call this periodically.
+	 */
+	void tickMetrics()
+	{
+		m_delivered.tick();
+	}
+	
+	/**
+	 * Releases the resources of the object.
+	 */
+	void close()
+	{
+		m_closed = true;
+		m_dispatchThread.interrupt();
+	}
+	
+	/**
+	 * Enqueues a received message. The dispatch thread will notify the math tool
+	 * (such as Matlab). If the inbound queue is full, the overflow policy applies.
+	 * @param delivery Message.
+	 * @throws IOException Thrown if acking a dropped message fails.
+	 * @throws InterruptedException Thrown if interrupted while waiting for room.
+	 */
+	void enqueue(InboundDelivery delivery) throws IOException, InterruptedException
+	{
+		if (m_closed)
+		{
+			// The topic has been unsubscribed. Completing so that the message
+			// will not hold back the acks of subsequent messages.
+			delivery.complete();
+			return;
+		}
+		
+		if (m_conflationEnabled)
+		{
+			InboundDelivery replaced;
+			delivery.conflationSlot = true;
+			
+			synchronized (m_conflationLock)
+			{
+				replaced = m_latestPending.put(delivery.routingKey, delivery);
+			}
+			
+			if (replaced != null)
+			{
+				// The routing key already has a slot in the queue, and the slot
+				// will now take this message instead of the replaced one
+				m_conflatedCount.incrementAndGet();
+				replaced.complete();
+				return;
+			}
+		}
+		
+		if (m_inboundQueue.offer(delivery))
 		{
-			m_listeners.removeElement(lis);
+			completeIfClosed();
+			return; // The usual case
+		}
+		
+		switch (m_overflowPolicy)
+		{
+		case DROP_OLDEST:
+			while (!m_inboundQueue.offer(delivery))
+			{
+				InboundDelivery oldest = m_inboundQueue.poll();
+				
+				if (oldest != null)
+				{
+					m_droppedCount.incrementAndGet();
+					resolveConflation(oldest).complete();
+				}
+			}
+			break;
+			
+		case REJECT_NEWEST:
+			m_droppedCount.incrementAndGet();
+			resolveConflation(delivery).complete();
+			break;
+			
+		default:
+			// Blocking. This stops the consumer, which causes the
+			// unacked messages to stay in the broker.
+			m_inboundQueue.put(delivery);
+			break;
+		}
+		
+		completeIfClosed();
+	}
+	
+	private void completeIfClosed() throws IOException
+	{
+		// The notifier may have been closed while enqueuing. If so,
+		// there is no dispatch thread to complete the message anymore.
+		if (m_closed)
+		{
+			completeAllPending();
+		}
+	}
+	
+	private void completeAllPending() throws IOException
+	{
+		InboundDelivery delivery;
+		
+		while ((delivery = m_inboundQueue.poll()) != null)
+		{
+			resolveConflation(delivery).complete();
+		}
+	}
+	
+	private void runDispatch()
+	{
+		while (!m_closed)
+		{
+			try
+			{
+				// Waiting for a message. If a batch is being collected, the waiting
+				// ends at the latest when the batch reaches the delay threshold.
+				InboundDelivery delivery = null;
+				
+				if (m_batch.isEmpty())
+				{
+					delivery = m_inboundQueue.take();
+				}
+				else
+				{
+					long remaining_ns = m_batchDeadline_ns - System.nanoTime();
+					delivery = m_inboundQueue.poll(Math.max(0, remaining_ns), TimeUnit.NANOSECONDS);
+				}
+				
+				if (delivery != null)
+				{
+					notifyMathTool(resolveConflation(delivery));
+				}
+				
+				if (!m_batch.isEmpty() && System.nanoTime() - m_batchDeadline_ns >= 0)
+				{
+					// Delay threshold reached
+					flushBatch();
+				}
+			}
+			catch (InterruptedException e)
+			{
+				// Closing
+			}
+			catch (CommunicationException | IOException | RuntimeException e)
+			{
+				// There is nobody to pass the error to. Carrying on with the next message.
+				s_log.error("Failed to notify listeners of \"{}\": {}", m_topic, e.getMessage());
+			}
+		}
+		
+		// Closed. Completing whatever remains undelivered, because with manual acks,
+		// the messages would otherwise hold back the acks of the other topics.
+		try
+		{
+			for (InboundDelivery delivery : m_batch)
+			{
+				delivery.complete();
+			}
+			
+			m_batch.clear();
+			completeAllPending();
+		}
+		catch (IOException e)
+		{
+			// The connection is probably closing as well
+		}
+	}
+	
+	/**
+	 * Takes the latest message for a conflation slot. Once taken, the next message
+	 * with the same routing key will get a new slot in the queue.
+	 * @param delivery Delivery from the queue.
+	 * @return The delivery itself unless it is a conflation slot, otherwise the latest message.
+	 */
+	private InboundDelivery resolveConflation(InboundDelivery delivery)
+	{
+		if (!delivery.conflationSlot)
+		{
+			return delivery;
+		}
+		
+		synchronized (m_conflationLock)
+		{
+			return m_latestPending.remove(delivery.routingKey);
 		}
 	}
 	
 	/**
 	 * Notifies the math tool (such as Matlab) with a message.
-	 * @param msg Message.
+	 * @param delivery Message.
 	 * @exception CommunicationException Thrown if an error occurs.
+	 * @throws IOException Thrown if acking the message fails.
 	 */
-	@SuppressWarnings("unchecked")
-	void notifyMathTool(byte[] msg) throws CommunicationException
+	private void notifyMathTool(InboundDelivery delivery) throws CommunicationException, IOException
 	{
-		// Copying the listener list in case it is modified during notifications
-		java.util.Vector<IMessageListener> listenersCopy;
+		// The array is never modified, so it needs no copying even
+		// if the listeners are modified during notifications
+		IMessageListener[] listeners = m_listeners;
 		
-		synchronized (this)
+		try
+		{
+			delivery.decodeBody();
+		}
+		catch (IOException e)
 		{
-			listenersCopy = (java.util.Vector<IMessageListener>)m_listeners.clone();
+			// Dropping the message, because the listeners could not make use of it
+			delivery.complete();
+			throw new CommunicationException("Failed to decompress a message of \"" + delivery.routingKey + "\": " + e.getMessage(), e);
 		}
 		
-		for (int i = 0; i < listenersCopy.size(); i++)
+		try
 		{
-			MessageReceivedEvent event = new MessageReceivedEvent(this, m_topic, msg);
-			((IMessageListener)listenersCopy.elementAt(i)).listen(event);
+			if (listeners.length > 0)
+			{
+				// The event is immutable, so all listeners can share it
+				MessageReceivedEvent event = new MessageReceivedEvent(this, delivery.routingKey, delivery.body, delivery.file,
+						delivery.replyTo, delivery.correlationId);
+				long start_ns = System.nanoTime();
+				
+				try
+				{
+					for (IMessageListener lis : listeners)
+					{
+						lis.listen(event);
+					}
+				}
+				finally
+				{
+					m_listenerTime.record(System.nanoTime() - start_ns);
+				}
+			}
+		}
+		finally
+		{
+			// Even if a listener fails, the message must be completed,
+			// because it would otherwise hold back the subsequent acks
+			if (m_batchListeners.length == 0)
+			{
+				recordDelivered(delivery);
+				delivery.complete();
+			}
+			else
+			{
+				// Completed once the batch has been delivered
+				addToBatch(delivery);
+			}
+		}
+	}
+	
+	private void recordDelivered(InboundDelivery delivery)
+	{
+		m_delivered.increment();
+		m_deliveryLatency.record(System.nanoTime() - delivery.getReceived_ns());
+	}
+	
+	private void addToBatch(InboundDelivery delivery) throws CommunicationException, IOException
+	{
+		m_batch.add(delivery);
+		
+		if (m_batch.size() >= m_batchMaxMessages)
+		{
+			// Size threshold reached
+			flushBatch();
+		}
+		else if (m_batch.size() == 1)
+		{
+			// First message of the batch; this sets the deadline of the delay threshold
+			m_batchDeadline_ns = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(m_batchMaxDelay_ms);
+		}
+	}
+	
+	private void flushBatch() throws CommunicationException, IOException
+	{
+		ArrayList<InboundDelivery> batch = m_batch;
+		int count = batch.size();
+		
+		// Starting a new batch
+		m_batch = new ArrayList<>();
+		
+		String[] routingKeys = new String[count];
+		byte[][] messages = new byte[count][];
+		long[] timestamps = new long[count];
+		File[] files = new File[count];
+		
+		for (int i = 0; i < count; ++i)
+		{
+			InboundDelivery delivery = batch.get(i);
+			routingKeys[i] = delivery.routingKey;
+			messages[i] = delivery.body;
+			timestamps[i] = delivery.timestamp_ms;
+			files[i] = delivery.file;
+		}
+		
+		MessageBatchReceivedEvent event = new MessageBatchReceivedEvent(this, routingKeys, messages, timestamps, files);
+		long start_ns = System.nanoTime();
+		
+		try
+		{
+			for (IMessageBatchListener lis : m_batchListeners)
+			{
+				lis.listenBatch(event);
+			}
+		}
+		finally
+		{
+			m_listenerTime.record(System.nanoTime() - start_ns);
+			
+			for (InboundDelivery delivery : batch)
+			{
+				recordDelivered(delivery);
+				delivery.complete();
+			}
+		}
+	}
+	
+	/**
+	 * Provides the metrics of the notifier for JMX.
+	 */
+	private class TopicMetrics implements TopicStatisticsMXBean
+	{
+		@Override
+		public String getTopic()
+		{
+			return m_topic;
+		}
+		
+		@Override
+		public long getMessagesDelivered()
+		{
+			return m_delivered.getCount();
+		}
+		
+		@Override
+		public double getDeliveryRate()
+		{
+			return m_delivered.getRate();
+		}
+		
+		@Override
+		public int getInboundQueueSize()
+		{
+			return m_inboundQueue.size();
+		}
+		
+		@Override
+		public long getDroppedMessages()
+		{
+			return m_droppedCount.get();
+		}
+		
+		@Override
+		public long getConflatedMessages()
+		{
+			return m_conflatedCount.get();
+		}
+		
+		@Override
+		public double getListenerTimeMean_ms()
+		{
+			return m_listenerTime.getMean_ms();
+		}
+		
+		@Override
+		public double getListenerTimeP99_ms()
+		{
+			return m_listenerTime.getPercentile_ms(99);
+		}
+		
+		@Override
+		public double getDeliveryLatencyMean_ms()
+		{
+			return m_deliveryLatency.getMean_ms();
+		}
+		
+		@Override
+		public double getDeliveryLatencyP99_ms()
+		{
+			return m_deliveryLatency.getPercentile_ms(99);
 		}
 	}
 	
@@ -130,6 +666,28 @@ public class Notifier
 		 */
 		public final byte[] message;
 		
+		/**
+		 * If a large message was reassembled in a temporary file, this is the
+		 * file, and the message is empty. Otherwise, this is null. The file is
+		 * deleted after the listeners have returned, so move or copy it to keep it.
+		 */
+		public final File file;
+		
+		/**
+		 * If the message is a request sent with AmqpConnector.request(), this
+		 * is the address for the reply. Otherwise, this is null. To reply,
+		 * call AmqpConnector.reply().
+		 */
+		public final String replyTo;
+		
+		/**
+		 * The correlation id of a request or null.
+		 */
+		public final String correlationId;
+		
+		// Decoded lazily
+		private volatile double[] m_decodedValues = null;
+		
 		/**
 		 * Constructor.
 		 * @param obj Source object.
@@ -137,10 +695,137 @@ public class Notifier
 		 * @param obs Message.
 		 */
 		MessageReceivedEvent(Object obj, String rkey, byte[] msg)
+		{
+			this(obj, rkey, msg, null);
+		}
+		
+		/**
+		 * Constructor.
+		 * @param obj Source object.
+		 * @param rkey The routing key of the message.
+		 * @param msg Message.
+		 * @param f The file that contains the message or null.
+		 */
+		MessageReceivedEvent(Object obj, String rkey, byte[] msg, File f)
+		{
+			this(obj, rkey, msg, f, null, null);
+		}
+		
+		/**
+		 * Constructor.
+		 * @param obj Source object.
+		 * @param rkey The routing key of the message.
+		 * @param msg Message.
+		 * @param f The file that contains the message or null.
+		 * @param rto The address for the reply or null.
+		 * @param corrId Correlation id or null.
+		 */
+		MessageReceivedEvent(Object obj, String rkey, byte[] msg, File f, String rto, String corrId)
 		{
 			super(obj);
 			this.routingKey = rkey;
 			this.message = msg;
+			this.file = f;
+			this.replyTo = rto;
+			this.correlationId = corrId;
+		}
+		
+		/**
+		 * Returns whether the message is a numeric array encoded with NumericCodec.
+		 * @return True if so, otherwise false.
+		 */
+		public boolean isNumeric()
+		{
+			return NumericCodec.isNumeric(message);
+		}
+		
+		/**
+		 * Decodes the message as doubles in the column-major order. The values
+		 * of any numeric type are converted to double. The message is decoded
+		 * once, and all listeners receive the same array, so do not modify it.
+		 * @return Values.
+		 * @exception IllegalArgumentException Thrown if the message is not a numeric array.
+		 */
+		public double[] asDoubles()
+		{
+			// Several listeners may decode at the same time, but the result is the same
+			double[] values = m_decodedValues;
+			
+			if (values == null)
+			{
+				values = NumericCodec.decodeDoubles(message);
+				m_decodedValues = values;
+			}
+			
+			return values;
+		}
+		
+		/**
+		 * Decodes the message as a matrix of doubles, which Matlab converts to a matrix.
+		 * @return Matrix indexed by row and then by column.
+		 * @exception IllegalArgumentException Thrown if the message is not a numeric array.
+		 */
+		public double[][] asMatrix()
+		{
+			return NumericCodec.toMatrix(asDoubles(), NumericCodec.getRows(message), NumericCodec.getColumns(message));
+		}
+	}
+	
+	/**
+	 * Batch event class. These events are delivered to batch listeners when a
+	 * batch of messages has arrived from the message bus. The arrays have a
+	 * member for each message in the order of arrival.
+	 * @author Petri Kannisto
+	 */
+	public class MessageBatchReceivedEvent extends java.util.EventObject
+	{
+		private static final long serialVersionUID = 1L;
+		
+		/**
+		 * The routing keys of the messages.
+		 */
+		public final String[] routingKeys;
+		
+		/**
+		 * Messages.
+		 */
+		public final byte[][] messages;
+		
+		/**
+		 * The reception times of the messages (milliseconds since the epoch).
+		 */
+		public final long[] timestamps;
+		
+		/**
+		 * For each large message reassembled in a temporary file, the file;
+		 * otherwise, null. See MessageReceivedEvent.file.
+		 */
+		public final File[] files;
+		
+		/**
+		 * Constructor.
+		 * @param obj Source object.
+		 * @param rkeys The routing keys of the messages.
+		 * @param msgs Messages.
+		 * @param times The reception times of the messages.
+		 * @param f The files of the messages reassembled in files.
+		 */
+		MessageBatchReceivedEvent(Object obj, String[] rkeys, byte[][] msgs, long[] times, File[] f)
+		{
+			super(obj);
+			this.routingKeys = rkeys;
+			this.messages = msgs;
+			this.timestamps = times;
+			this.files = f;
+		}
+		
+		/**
+		 * Returns the count of messages in the batch.
+		 * @return Count.
+		 */
+		public int getCount()
+		{
+			return messages.length;
 		}
 	}
 	
@@ -161,4 +846,18 @@ public class Notifier
 		 */
 		void listen(MessageReceivedEvent event) throws CommunicationException;
 	}
+	
+	/**
+	 * Batch listener interface.
+	 * @author Petri Kannisto
+	 */
+	public interface IMessageBatchListener extends java.util.EventListener
+	{
+		/**
+		 * Listener function. The math tool implements this.
+		 * @param event Event object.
+		 * @exception CommunicationException Thrown if an error occurs.
+		 */
+		void listenBatch(MessageBatchReceivedEvent event) throws CommunicationException;
+	}
 }
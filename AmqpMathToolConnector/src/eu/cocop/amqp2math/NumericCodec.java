@@ -0,0 +1,421 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Encodes numeric arrays to message bodies and decodes them back. This spares
+ * the math tool from converting arrays to bytes, which is slow in M-code.
+ * A matrix is stored in the column-major order like in Matlab.
+ *
+ * Format (little endian): 'N', 'M', version (byte), type (byte),
+ * rows (int32), columns (int32), and then the values.
+ * @author Petri Kannisto
+ */
+public final class NumericCodec
+{
+	/**
+	 * Type code for double values.
+	 */
+	public static final byte TypeDouble = 1;
+	
+	/**
+	 * Type code for single (float) values.
+	 */
+	public static final byte TypeSingle = 2;
+	
+	/**
+	 * Type code for int16 values.
+	 */
+	public static final byte TypeInt16 = 3;
+	
+	/**
+	 * Type code for int32 values.
+	 */
+	public static final byte TypeInt32 = 4;
+	
+	/**
+	 * Type code for int64 values.
+	 */
+	public static final byte TypeInt64 = 5;
+	
+	static final int HeaderSize = 12;
+	
+	private static final byte Version = 1;
+	
+	
+	private NumericCodec()
+	{
+		// Static methods only
+	}
+	
+	/**
+	 * Encodes a matrix of double values.
+	 * @param data Values in the column-major order.
+	 * @param rows Row count.
+	 * @param cols Column count.
+	 * @return Message body.
+	 * @exception IllegalArgumentException Thrown if the size does not match the data.
+	 */
+	public static byte[] encode(double[] data, int rows, int cols)
+	{
+		ByteBuffer buf = createBuffer(TypeDouble, data.length, rows, cols);
+		buf.asDoubleBuffer().put(data);
+		return buf.array();
+	}
+	
+	/**
+	 * Encodes a matrix of single values.
+	 * @param data Values in the column-major order.
+	 * @param rows Row count.
+	 * @param cols Column count.
+	 * @return Message body.
+	 * @exception IllegalArgumentException Thrown if the size does not match the data.
+	 */
+	public static byte[] encode(float[] data, int rows, int cols)
+	{
+		ByteBuffer buf = createBuffer(TypeSingle, data.length, rows, cols);
+		buf.asFloatBuffer().put(data);
+		return buf.array();
+	}
+	
+	/**
+	 * Encodes a matrix of int16 values.
+	 * @param data Values in the column-major order.
+	 * @param rows Row count.
+	 * @param cols Column count.
+	 * @return Message body.
+	 * @exception IllegalArgumentException Thrown if the size does not match the data.
+	 */
+	public static byte[] encode(short[] data, int rows, int cols)
+	{
+		ByteBuffer buf = createBuffer(TypeInt16, data.length, rows, cols);
+		buf.asShortBuffer().put(data);
+		return buf.array();
+	}
+	
+	/**
+	 * Encodes a matrix of int32 values.
+	 * @param data Values in the column-major order.
+	 * @param rows Row count.
+	 * @param cols Column count.
+	 * @return Message body.
+	 * @exception IllegalArgumentException Thrown if the size does not match the data.
+	 */
+	public static byte[] encode(int[] data, int rows, int cols)
+	{
+		ByteBuffer buf = createBuffer(TypeInt32, data.length, rows, cols);
+		buf.asIntBuffer().put(data);
+		return buf.array();
+	}
+	
+	/**
+	 * Encodes a matrix of int64 values.
+	 * @param data Values in the column-major order.
+	 * @param rows Row count.
+	 * @param cols Column count.
+	 * @return Message body.
+	 * @exception IllegalArgumentException Thrown if the size does not match the data.
+	 */
+	public static byte[] encode(long[] data, int rows, int cols)
+	{
+		ByteBuffer buf = createBuffer(TypeInt64, data.length, rows, cols);
+		buf.asLongBuffer().put(data);
+		return buf.array();
+	}
+	
+	/**
+	 * Returns whether a message body has been encoded with this codec.
+	 * @param msg Message body.
+	 * @return True if so, otherwise false.
+	 */
+	public static boolean isNumeric(byte[] msg)
+	{
+		if (msg.length < HeaderSize || msg[0] != 'N' || msg[1] != 'M' || msg[2] != Version)
+		{
+			return false;
+		}
+		
+		ByteBuffer buf = wrap(msg);
+		int typeSize = getTypeSize(msg[3]);
+		int rows = buf.getInt(4);
+		int cols = buf.getInt(8);
+		
+		// Two negative dimensions would give a positive count
+		if (typeSize == 0 || rows < 0 || cols < 0)
+		{
+			return false;
+		}
+		
+		return msg.length == HeaderSize + (long)rows * cols * typeSize;
+	}
+	
+	/**
+	 * Gets the type code of an encoded message.
+	 * @param msg Message body.
+	 * @return Type code.
+	 * @exception IllegalArgumentException Thrown if the message has not been encoded with this codec.
+	 */
+	public static byte getType(byte[] msg)
+	{
+		expectNumeric(msg);
+		return msg[3];
+	}
+	
+	/**
+	 * Gets the row count of an encoded message.
+	 * @param msg Message body.
+	 * @return Row count.
+	 * @exception IllegalArgumentException Thrown if the message has not been encoded with this codec.
+	 */
+	public static int getRows(byte[] msg)
+	{
+		expectNumeric(msg);
+		return wrap(msg).getInt(4);
+	}
+	
+	/**
+	 * Gets the column count of an encoded message.
+	 * @param msg Message body.
+	 * @return Column count.
+	 * @exception IllegalArgumentException Thrown if the message has not been encoded with this codec.
+	 */
+	public static int getColumns(byte[] msg)
+	{
+		expectNumeric(msg);
+		return wrap(msg).getInt(8);
+	}
+	
+	/**
+	 * Decodes the values of a message as doubles in the column-major order.
+	 * The values of any type are converted to double.
+	 * @param msg Message body.
+	 * @return Values.
+	 * @exception IllegalArgumentException Thrown if the message has not been encoded with this codec.
+	 */
+	public static double[] decodeDoubles(byte[] msg)
+	{
+		expectNumeric(msg);
+		
+		ByteBuffer buf = wrapValues(msg);
+		int count = getCount(msg);
+		double[] retval = new double[count];
+		
+		switch (msg[3])
+		{
+		case TypeDouble:
+			buf.asDoubleBuffer().get(retval);
+			break;
+		
+		case TypeSingle:
+			for (int i = 0; i < count; ++i)
+			{
+				retval[i] = buf.getFloat();
+			}
+			break;
+		
+		case TypeInt16:
+			for (int i = 0; i < count; ++i)
+			{
+				retval[i] = buf.getShort();
+			}
+			break;
+		
+		case TypeInt32:
+			for (int i = 0; i < count; ++i)
+			{
+				retval[i] = buf.getInt();
+			}
+			break;
+		
+		default: // TypeInt64
+			for (int i = 0; i < count; ++i)
+			{
+				retval[i] = buf.getLong();
+			}
+			break;
+		}
+		
+		return retval;
+	}
+	
+	/**
+	 * Decodes the values of a message as a matrix of doubles. The values of
+	 * any type are converted to double. Matlab converts the return value to a matrix.
+	 * @param msg Message body.
+	 * @return Matrix indexed by row and then by column.
+	 * @exception IllegalArgumentException Thrown if the message has not been encoded with this codec.
+	 */
+	public static double[][] decodeMatrix(byte[] msg)
+	{
+		return toMatrix(decodeDoubles(msg), getRows(msg), getColumns(msg));
+	}
+	
+	/**
+	 * Converts values in the column-major order to a matrix.
+	 * @param values Values.
+	 * @param rows Row count.
+	 * @param cols Column count.
+	 * @return Matrix indexed by row and then by column.
+	 */
+	static double[][] toMatrix(double[] values, int rows, int cols)
+	{
+		double[][] retval = new double[rows][cols];
+		
+		// From the column-major order
+		for (int c = 0; c < cols; ++c)
+		{
+			int offset = c * rows;
+			
+			for (int r = 0; r < rows; ++r)
+			{
+				retval[r][c] = values[offset + r];
+			}
+		}
+		
+		return retval;
+	}
+	
+	/**
+	 * Decodes single values in the column-major order.
+	 * @param msg Message body.
+	 * @return Values.
+	 * @exception IllegalArgumentException Thrown if the message does not contain single values.
+	 */
+	public static float[] decodeSingles(byte[] msg)
+	{
+		expectType(msg, TypeSingle);
+		
+		float[] retval = new float[getCount(msg)];
+		wrapValues(msg).asFloatBuffer().get(retval);
+		return retval;
+	}
+	
+	/**
+	 * Decodes int16 values in the column-major order.
+	 * @param msg Message body.
+	 * @return Values.
+	 * @exception IllegalArgumentException Thrown if the message does not contain int16 values.
+	 */
+	public static short[] decodeInt16s(byte[] msg)
+	{
+		expectType(msg, TypeInt16);
+		
+		short[] retval = new short[getCount(msg)];
+		wrapValues(msg).asShortBuffer().get(retval);
+		return retval;
+	}
+	
+	/**
+	 * Decodes int32 values in the column-major order.
+	 * @param msg Message body.
+	 * @return Values.
+	 * @exception IllegalArgumentException Thrown if the message does not contain int32 values.
+	 */
+	public static int[] decodeInt32s(byte[] msg)
+	{
+		expectType(msg, TypeInt32);
+		
+		int[] retval = new int[getCount(msg)];
+		wrapValues(msg).asIntBuffer().get(retval);
+		return retval;
+	}
+	
+	/**
+	 * Decodes int64 values in the column-major order.
+	 * @param msg Message body.
+	 * @return Values.
+	 * @exception IllegalArgumentException Thrown if the message does not contain int64 values.
+	 */
+	public static long[] decodeInt64s(byte[] msg)
+	{
+		expectType(msg, TypeInt64);
+		
+		long[] retval = new long[getCount(msg)];
+		wrapValues(msg).asLongBuffer().get(retval);
+		return retval;
+	}
+	
+	private static ByteBuffer createBuffer(byte type, int length, int rows, int cols)
+	{
+		if (rows < 0 || cols < 0 || (long)rows * cols != length)
+		{
+			throw new IllegalArgumentException("The size " + rows + "x" + cols + " does not match the data length " + length);
+		}
+		
+		// The size must fit in an array
+		long size = HeaderSize + (long)length * getTypeSize(type);
+		
+		if (size > Integer.MAX_VALUE)
+		{
+			throw new IllegalArgumentException("The data is too large to encode: " + length + " values");
+		}
+		
+		ByteBuffer buf = ByteBuffer.allocate((int)size).order(ByteOrder.LITTLE_ENDIAN);
+		buf.put((byte)'N').put((byte)'M').put(Version).put(type).putInt(rows).putInt(cols);
+		return buf;
+	}
+	
+	private static ByteBuffer wrap(byte[] msg)
+	{
+		return ByteBuffer.wrap(msg).order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	private static ByteBuffer wrapValues(byte[] msg)
+	{
+		ByteBuffer buf = wrap(msg);
+		buf.position(HeaderSize);
+		return buf.slice().order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	private static int getCount(byte[] msg)
+	{
+		return (msg.length - HeaderSize) / getTypeSize(msg[3]);
+	}
+	
+	private static int getTypeSize(byte type)
+	{
+		switch (type)
+		{
+		case TypeDouble:
+		case TypeInt64:
+			return 8;
+		case TypeSingle:
+		case TypeInt32:
+			return 4;
+		case TypeInt16:
+			return 2;
+		default:
+			return 0; // Unknown
+		}
+	}
+	
+	private static void expectNumeric(byte[] msg)
+	{
+		if (!isNumeric(msg))
+		{
+			throw new IllegalArgumentException("The message is not a numeric array");
+		}
+	}
+	
+	private static void expectType(byte[] msg, byte type)
+	{
+		expectNumeric(msg);
+		
+		if (msg[3] != type)
+		{
+			throw new IllegalArgumentException("The message has type " + msg[3] + " instead of " + type);
+		}
+	}
+}
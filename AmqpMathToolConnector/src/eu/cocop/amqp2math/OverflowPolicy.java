@@ -0,0 +1,40 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+/**
+ * Specifies what happens when a bounded queue is full.
+ * @author Petri Kannisto
+ */
+public enum OverflowPolicy
+{
+	/**
+	 * The caller waits until there is room. If the timeout expires first,
+	 * the new message is dropped.
+	 */
+	BLOCK,
+	
+	/**
+	 * The oldest messages in the queue are dropped to make room.
+	 */
+	DROP_OLDEST,
+	
+	/**
+	 * The new message is dropped.
+	 */
+	REJECT_NEWEST,
+	
+	/**
+	 * The new message is not enqueued, and an IllegalStateException is thrown.
+	 */
+	THROW
+}
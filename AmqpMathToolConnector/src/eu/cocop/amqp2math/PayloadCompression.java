@@ -0,0 +1,207 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses outbound messages according to their topics and decompresses
+ * inbound ones. A compressed message carries the encoding in the
+ * "content-encoding" property. An instance reuses its compressors, so it
+ * must only be used in one thread. Decompression is thread-safe. The mode
+ * of each topic is cached together with its properties in PublishProperties.
+ * @author Petri Kannisto
+ */
+final class PayloadCompression
+{
+	/**
+	 * The content encoding of compressed messages.
+	 */
+	static final String EncodingDeflate = "deflate";
+	
+	private final TopicMatcher<CompressionMode> m_matcher;
+	private final int m_threshold;
+	
+	private final Deflater m_fastDeflater = new Deflater(Deflater.BEST_SPEED);
+	private final Deflater m_denseDeflater = new Deflater(Deflater.BEST_COMPRESSION);
+	
+	// Reused output buffer. This grows as needed.
+	private byte[] m_buffer = new byte[64 * 1024];
+	
+	
+	/**
+	 * Constructor.
+	 * @param topics Topic patterns and their modes.
+	 * @param threshold Messages smaller than this are not compressed (bytes).
+	 */
+	PayloadCompression(Map<String, CompressionMode> topics, int threshold)
+	{
+		m_matcher = new TopicMatcher<>(topics);
+		m_threshold = threshold;
+	}
+	
+	/**
+	 * Gets the compression mode of a topic. This matches the topic against
+	 * the patterns, so the caller should cache the result.
+	 * @param topic Topic.
+	 * @return Mode.
+	 */
+	CompressionMode getMode(String topic)
+	{
+		// If several patterns match, the densest mode applies
+		CompressionMode mode = CompressionMode.NONE;
+		List<CompressionMode> matches = m_matcher.match(topic);
+		
+		for (CompressionMode m : matches)
+		{
+			if (m.ordinal() > mode.ordinal())
+			{
+				mode = m;
+			}
+		}
+		
+		return mode;
+	}
+	
+	/**
+	 * Compresses a message if the mode has compression and the message is
+	 * large enough.
+	 * @param mode The compression mode of the topic.
+	 * @param body Message body.
+	 * @return Compressed body or null if not compressed. This is also null if compressing would not make the message smaller.
+	 */
+	byte[] compress(CompressionMode mode, byte[] body)
+	{
+		if (body.length < m_threshold)
+		{
+			return null;
+		}
+		
+		Deflater deflater;
+		
+		switch (mode)
+		{
+		case FAST:
+			deflater = m_fastDeflater;
+			break;
+		case DENSE:
+			deflater = m_denseDeflater;
+			break;
+		default:
+			return null;
+		}
+		
+		deflater.reset();
+		deflater.setInput(body);
+		deflater.finish();
+		
+		int length = 0;
+		
+		while (!deflater.finished())
+		{
+			if (length >= body.length)
+			{
+				return null; // Not worth it
+			}
+			
+			if (length == m_buffer.length)
+			{
+				m_buffer = Arrays.copyOf(m_buffer, m_buffer.length * 2);
+			}
+			
+			length += deflater.deflate(m_buffer, length, m_buffer.length - length);
+		}
+		
+		return length < body.length ? Arrays.copyOf(m_buffer, length) : null;
+	}
+	
+	/**
+	 * Decompresses a message according to its content encoding.
+	 * @param encoding Content encoding. If null or "identity", the body is returned as such.
+	 * @param body Message body.
+	 * @param maxLength The maximum length of the decompressed body.
+	 * @return Decompressed body.
+	 * @throws IOException Thrown if the encoding is not supported, the data is invalid or the decompressed body would exceed the maximum length.
+	 */
+	static byte[] decompress(String encoding, byte[] body, int maxLength) throws IOException
+	{
+		if (encoding == null || encoding.isEmpty() || encoding.equals("identity"))
+		{
+			return body;
+		}
+		
+		if (!encoding.equals(EncodingDeflate))
+		{
+			throw new IOException("Unsupported content encoding \"" + encoding + "\"");
+		}
+		
+		Inflater inflater = new Inflater();
+		
+		try
+		{
+			inflater.setInput(body);
+			
+			// Assuming a decent compression ratio for the initial size
+			long initialLength = Math.max(1024, body.length * 4L);
+			byte[] retval = new byte[(int)Math.min(initialLength, maxLength)];
+			int length = 0;
+			
+			while (!inflater.finished())
+			{
+				if (length == retval.length)
+				{
+					// Otherwise, a small message could expand to exhaust the memory
+					if (length >= maxLength)
+					{
+						throw new IOException("The decompressed data exceeds " + maxLength + " bytes");
+					}
+					
+					retval = Arrays.copyOf(retval, (int)Math.min(retval.length * 2L, maxLength));
+				}
+				
+				int count = inflater.inflate(retval, length, retval.length - length);
+				
+				if (count == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+				{
+					throw new IOException("The compressed data is truncated");
+				}
+				
+				length += count;
+			}
+			
+			return length == retval.length ? retval : Arrays.copyOf(retval, length);
+		}
+		catch (DataFormatException e)
+		{
+			throw new IOException("Invalid compressed data: " + e.getMessage(), e);
+		}
+		finally
+		{
+			inflater.end();
+		}
+	}
+	
+	/**
+	 * Releases the compressors.
+	 */
+	void close()
+	{
+		m_fastDeflater.end();
+		m_denseDeflater.end();
+	}
+}
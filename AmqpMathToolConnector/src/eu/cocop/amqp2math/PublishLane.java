@@ -0,0 +1,640 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+
+/**
+ * A publish lane has a send queue, a publisher thread and a channel of its own.
+ * The connector maps each topic to a lane, which retains the order of messages
+ * within a topic while the lanes publish in parallel. A lane that is slow or
+ * has failed does not hold back the other lanes.
+ * @author Petri Kannisto
+ */
+class PublishLane
+{
+	private final ConnectorLog m_log;
+	private final AmqpPropsManager m_amqpProperties;
+	private final ConnectorMetrics m_metrics;
+	
+	// Bounded lock-free queue for the messages not sent yet
+	private final SendQueue m_sendQueue;
+	
+	// Messages that the broker has nacked. These are sent again.
+	private final ConcurrentLinkedQueue<MessageToBeSent> m_nackedMessages = new ConcurrentLinkedQueue<>();
+	
+	// This is null unless spooling is enabled. Only the publisher thread uses the spool.
+	private final Spool m_spool;
+	
+	// This is null unless any topic has compression. Only the publisher thread uses this.
+	private final PayloadCompression m_compression;
+	
+	// The properties of messages by topic. Only the publisher thread uses this.
+	private final PublishProperties m_publishProperties;
+	
+	// The publisher thread sends messages as soon as they are enqueued.
+	// It parks while there is nothing to do.
+	private final Thread m_publisherThread;
+	
+	// This is used as the lock object for the channel-related objects
+	// (those that begin with "chan"). Publishing does not hold the lock,
+	// so a stuck publish blocks neither the reconnect logic nor the other lanes.
+	private final Object m_channelLock = new Object();
+	private TransportChannel m_chanChannel = null;
+	
+	// This is null unless publisher confirms are enabled.
+	// The tracker is replaced each time the channel is replaced.
+	private ConfirmTracker<MessageToBeSent> m_chanConfirmTracker = null;
+	
+	// Whether the lane has a channel that has not failed
+	private volatile boolean m_channelIsOpenNow = false;
+	private volatile boolean m_closed = false;
+	
+	
+	/**
+	 * Constructor. This starts the publisher thread.
+	 * @param log The log of the connector that owns the lane.
+	 * @param props Properties.
+	 * @param metrics Metrics to record the published messages in.
+	 * @param index The index of the lane.
+	 * @param laneCount The total count of lanes. The message capacity of the send queue is divided between lanes.
+	 * @param queueBytes The bytes in the send queues of all lanes. The lanes share the byte capacity.
+	 * @throws CommunicationException Thrown if opening the spool fails.
+	 */
+	PublishLane(ConnectorLog log, AmqpPropsManager props, ConnectorMetrics metrics, int index, int laneCount,
+			AtomicLong queueBytes) throws CommunicationException
+	{
+		m_log = log;
+		m_amqpProperties = props;
+		m_metrics = metrics;
+		
+		// Rounding up so that each lane can hold at least one message.
+		// The byte capacity applies to all lanes together, so that any lane
+		// can take a message as large as the capacity.
+		int capacity = (props.getSendQueueCapacity() + laneCount - 1) / laneCount;
+		m_sendQueue = new SendQueue(capacity, props.getSendQueueCapacityBytes(), queueBytes,
+				props.getSendQueueOverflowPolicy(), props.getSendQueueBlockTimeout());
+		
+		if (props.getSpoolDirectory() != null)
+		{
+			// Each lane has a directory of its own
+			File dir = new File(props.getSpoolDirectory(), "lane-" + index);
+			
+			try
+			{
+				m_spool = new Spool(dir, props.getSpoolSegmentSize());
+			}
+			catch (IOException e)
+			{
+				throw new CommunicationException("Failed to open spool: " + e.getMessage(), e);
+			}
+		}
+		else
+		{
+			m_spool = null;
+		}
+		
+		Map<String, CompressionMode> compressionTopics = props.getCompressionTopics();
+		m_compression = compressionTopics.isEmpty() ? null :
+			new PayloadCompression(compressionTopics, props.getCompressionThreshold());
+		
+		m_publishProperties = new PublishProperties(props.getDefaultPublishProfile(), props.getPublishProfiles(), m_compression);
+		
+		// This is a daemon thread so that it will never
+		// prevent the JVM of the math tool from exiting
+		m_publisherThread = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				runPublisher();
+			}
+		}, "AmqpConnector publisher " + index);
+		m_publisherThread.setDaemon(true);
+		m_publisherThread.start();
+	}
+	
+	/**
+	 * Enqueues a message for sending.
+	 * @param topic Topic.
+	 * @param msg Message.
+	 * @param future Future to complete once sent or null.
+	 */
+	void offer(String topic, byte[] msg, CompletableFuture<Void> future)
+	{
+		m_sendQueue.offer(topic, msg, future);
+	}
+	
+	/**
+	 * Enqueues a message for sending, waiting for room regardless of the overflow policy.
+	 * @param topic Topic.
+	 * @param type Message type or null.
+	 * @param msg Message.
+	 * @return True if enqueued, false if the lane was closed or the thread was interrupted.
+	 */
+	boolean offerWait(String topic, String type, byte[] msg)
+	{
+		return m_sendQueue.offerWait(topic, type, msg);
+	}
+	
+	/**
+	 * Enqueues a batch of messages for sending atomically.
+	 * @param topics Topics.
+	 * @param msgs Messages.
+	 */
+	void offerAll(String[] topics, byte[][] msgs)
+	{
+		m_sendQueue.offerAll(topics, msgs);
+	}
+	
+	/**
+	 * Returns the count of messages dropped because the send queue was full.
+	 * @return Count.
+	 */
+	long getDroppedCount()
+	{
+		return m_sendQueue.getDroppedCount();
+	}
+	
+	/**
+	 * Returns the count of messages in the send queue.
+	 * @return Count.
+	 */
+	int getQueueSize()
+	{
+		return m_sendQueue.size();
+	}
+	
+	/**
+	 * Returns the size of the messages in the send queue.
+	 * @return Size in bytes.
+	 */
+	long getQueueBytes()
+	{
+		return m_sendQueue.sizeBytes();
+	}
+	
+	/**
+	 * Returns whether the lane has a working channel.
+	 * @return True if so, otherwise false.
+	 */
+	boolean isChannelOpen()
+	{
+		return m_channelIsOpenNow;
+	}
+	
+	/**
+	 * Starts using a new channel. This wakes up the publisher.
+	 * @param channel Channel.
+	 * @throws IOException Thrown if enabling publisher confirms fails.
+	 */
+	void attach(TransportChannel channel) throws IOException
+	{
+		synchronized (m_channelLock)
+		{
+			chanDetach();
+			m_chanChannel = channel;
+			
+			if (m_amqpProperties.getPublisherConfirms())
+			{
+				chanEnableConfirms();
+			}
+			
+			m_channelIsOpenNow = true;
+		}
+		
+		// Waking up the publisher in case there is anything to send
+		LockSupport.unpark(m_publisherThread);
+	}
+	
+	/**
+	 * Stops using the current channel and closes it.
+	 */
+	void detach()
+	{
+		synchronized (m_channelLock)
+		{
+			chanDetach();
+		}
+	}
+	
+	/**
+	 * Stops the publisher. The messages not sent yet are failed.
+	 * With a spool, they are spooled to be sent by the next connector.
+	 */
+	void close()
+	{
+		m_closed = true;
+		LockSupport.unpark(m_publisherThread);
+		
+		if (m_spool == null)
+		{
+			// This wakes up the publisher if it waits for messages
+			failUnsent(m_sendQueue.close());
+			return;
+		}
+		
+		// The publisher spools whatever is unsent as it ends. Waiting for a
+		// while, because the JVM may exit soon and the thread is a daemon.
+		m_sendQueue.shutDown();
+		
+		try
+		{
+			m_publisherThread.join(5000);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	private void runPublisher()
+	{
+		// The confirm tracker of the channel most recently used. If the channel
+		// changes, the messages that the old channel never got confirmed are sent again.
+		// Only the publisher thread takes messages from trackers; this retains the order.
+		ConfirmTracker<MessageToBeSent> lastTracker = null;
+		
+		// Messages taken from the queue but not sent yet. Only the publisher
+		// thread accesses this list, and these are sent before anything in the queue.
+		LinkedList<MessageToBeSent> pending = new LinkedList<>();
+		
+		try
+		{
+			while (!m_closed)
+			{
+				// Sleeping until there is a channel and something to send with it.
+				// The waiting does not consume any CPU. Parking may end spuriously,
+				// so the loop checks the conditions again.
+				if (!m_channelIsOpenNow)
+				{
+					// With a spool, the messages are moved from memory to disk
+					// until the channel is back. The queue wakes up the publisher.
+					if (m_spool != null && spoolQueued(pending))
+					{
+						m_sendQueue.awaitMessages();
+					}
+					else
+					{
+						LockSupport.park(this);
+					}
+					
+					continue;
+				}
+				
+				TransportChannel channel;
+				ConfirmTracker<MessageToBeSent> currentTracker;
+				
+				synchronized (m_channelLock)
+				{
+					channel = m_chanChannel;
+					currentTracker = m_chanConfirmTracker;
+				}
+				
+				// This is checked before waiting for new messages. Otherwise, if the
+				// lane is idle, the unconfirmed messages would wait for new traffic.
+				if (lastTracker != null && lastTracker != currentTracker)
+				{
+					// Resending whatever the old channel did not get confirmed.
+					// These messages precede anything else.
+					List<MessageToBeSent> unconfirmed = lastTracker.close();
+					
+					if (!unconfirmed.isEmpty())
+					{
+						m_log.debug("Resending {} unconfirmed message(s)", unconfirmed.size());
+						pending.addAll(0, unconfirmed);
+					}
+				}
+				
+				lastTracker = currentTracker;
+				
+				// Attaching a channel also ends the waiting, and the loop then takes the new channel.
+				// If the channel has changed while the messages arrived, sending with the old one
+				// fails without consuming any messages.
+				if (pending.isEmpty() && m_nackedMessages.isEmpty() && !hasSpooledMessages() &&
+						!m_sendQueue.awaitMessages())
+				{
+					continue;
+				}
+				
+				// Resending whatever the broker has nacked
+				MessageToBeSent nacked = null;
+				
+				while ((nacked = m_nackedMessages.poll()) != null)
+				{
+					pending.add(nacked);
+				}
+				
+				if (channel != null)
+				{
+					sendAll(pending, channel, currentTracker);
+				}
+			}
+			
+			m_log.debug("User wants to quit, publisher ending");
+		}
+		catch (InterruptedException e)
+		{
+			m_log.debug("Publisher interrupted, ending");
+		}
+		
+		// Failing the futures of any messages that remain unsent.
+		// With a spool, the messages are spooled first. A message sent but not
+		// confirmed may precede messages that were spooled earlier.
+		if (lastTracker != null)
+		{
+			spoolAndFail(lastTracker.close());
+		}
+		
+		spoolAndFail(pending);
+		spoolAndFail(new LinkedList<>(m_nackedMessages));
+		spoolAndFail(m_sendQueue.close());
+		
+		if (m_spool != null)
+		{
+			m_spool.close();
+		}
+		
+		if (m_compression != null)
+		{
+			m_compression.close();
+		}
+	}
+	
+	private void sendAll(LinkedList<MessageToBeSent> pending, TransportChannel channel, ConfirmTracker<MessageToBeSent> tracker)
+			throws InterruptedException
+	{
+		try
+		{
+			// Sending the pending messages first, then the spooled ones
+			// and then everything in the queue until it is empty
+			while (true)
+			{
+				MessageToBeSent messageData = pending.peek();
+				
+				if (messageData == null && m_spool != null)
+				{
+					messageData = m_spool.read();
+					
+					if (messageData != null)
+					{
+						pending.add(messageData);
+					}
+				}
+				
+				if (messageData == null)
+				{
+					messageData = m_sendQueue.poll();
+					
+					if (messageData == null)
+					{
+						return; // All sent
+					}
+					
+					pending.add(messageData);
+				}
+				
+				// In the confirm mode, wait until the window has room
+				if (tracker != null && !tracker.awaitCapacity())
+				{
+					throw new IOException("The channel closed while waiting for publisher confirms");
+				}
+				
+				// Compressing again if resent, because the compressed body is not retained
+				PublishProperties.TopicSettings settings = m_publishProperties.get(messageData.topic);
+				byte[] body = m_compression == null ? null : m_compression.compress(settings.compressionMode, messageData.body);
+				BasicProperties msgProps = settings.getProperties(body != null);
+				
+				if (messageData.type != null)
+				{
+					// Typed messages are few, so building the properties each time is fine
+					msgProps = msgProps.builder().type(messageData.type).build();
+				}
+				
+				sendMessage(messageData, body == null ? messageData.body : body, msgProps, channel, tracker);
+				
+				// No exception -> sent successfully. Remove the message from the list.
+				// In the confirm mode, the tracker now holds the message until confirmed.
+				m_log.debug("Message was sent to topic \"{}\"", messageData.topic);
+				pending.remove();
+				
+				if (tracker == null)
+				{
+					m_metrics.recordPublished(messageData);
+					messageData.complete();
+				}
+			}
+		}
+		// This also catches the errors where the connection has just closed. A retry will occur.
+		catch (IOException | RuntimeException e)
+		{
+			m_log.error("Failed to send: {}", e.getMessage());
+		}
+		
+		// The unsent messages remain pending, which retains the order.
+		// Dropping the channel; the connector will attach a new one.
+		// If the channel has been replaced meanwhile, there is no need for that.
+		synchronized (m_channelLock)
+		{
+			if (m_chanChannel == channel)
+			{
+				chanDetach();
+			}
+		}
+	}
+	
+	private void handleConfirm(List<MessageToBeSent> confirmed, boolean ack)
+	{
+		if (ack)
+		{
+			for (MessageToBeSent m : confirmed)
+			{
+				m_metrics.recordPublished(m);
+				m.complete();
+			}
+		}
+		else if (!confirmed.isEmpty())
+		{
+			// The broker failed to take responsibility of the messages.
+			// Sending again to retain at-least-once delivery.
+			m_log.error("The broker rejected {} message(s). These will be resent.", confirmed.size());
+			
+			m_nackedMessages.addAll(confirmed);
+			m_sendQueue.wakeUpConsumer();
+		}
+	}
+	
+	private void sendMessage(MessageToBeSent messageData, byte[] body, BasicProperties props,
+			TransportChannel channel, ConfirmTracker<MessageToBeSent> tracker) throws IOException
+	{
+		// No lock is needed, because only the publisher thread publishes to the
+		// channel. If the channel is detached meanwhile, publishing fails.
+		// Without publisher confirms, this will not fail immediately after losing the connection.
+		// It is unclear what happens to messages sent before the connection is
+		// declared lost. In the confirm mode, such messages remain unconfirmed and are resent.
+		long seqNo = 0;
+		
+		if (tracker != null)
+		{
+			// Registering before publishing, because the confirm may arrive
+			// before basicPublish returns
+			seqNo = channel.getNextPublishSeqNo();
+			tracker.add(seqNo, messageData);
+		}
+		
+		try
+		{
+			channel.basicPublish(m_amqpProperties.getExchange(), messageData.topic, props, body);
+		}
+		catch (IOException | RuntimeException e)
+		{
+			// Not sent, so the caller will retry
+			if (tracker != null)
+			{
+				tracker.remove(seqNo);
+			}
+			
+			throw e;
+		}
+	}
+	
+	private boolean hasSpooledMessages()
+	{
+		return m_spool != null && m_spool.hasUnread();
+	}
+	
+	private boolean spoolQueued(LinkedList<MessageToBeSent> pending)
+	{
+		MessageToBeSent m = null;
+		int count = 0;
+		
+		while ((m = m_sendQueue.poll()) != null)
+		{
+			try
+			{
+				m_spool.append(m.topic, m.type, m.body, m.getFuture());
+				++count;
+			}
+			catch (IOException e)
+			{
+				// Keeping the message in memory instead
+				m_log.error("Failed to spool: {}", e.getMessage());
+				pending.add(m);
+				return false;
+			}
+		}
+		
+		if (count > 0)
+		{
+			m_log.debug("Spooled {} message(s)", count);
+		}
+		
+		return true;
+	}
+	
+	private void spoolAndFail(List<MessageToBeSent> unsent)
+	{
+		if (m_spool != null)
+		{
+			for (MessageToBeSent m : unsent)
+			{
+				// A message read from the spool is still there
+				if (m.isSpooled())
+				{
+					continue;
+				}
+				
+				try
+				{
+					m_spool.append(m.topic, m.type, m.body, null);
+				}
+				catch (IOException e)
+				{
+					m_log.error("Failed to spool: {}", e.getMessage());
+				}
+			}
+		}
+		
+		failUnsent(unsent);
+	}
+	
+	private void failUnsent(List<MessageToBeSent> unsent)
+	{
+		for (MessageToBeSent m : unsent)
+		{
+			m.fail(new CommunicationException("The connector was closed before the message was delivered", null));
+		}
+	}
+	
+	
+	// ### Methods that modify channel-related objects ###
+	
+	// Only call this method when the channel lock is applied!
+	private void chanEnableConfirms() throws IOException
+	{
+		final ConfirmTracker<MessageToBeSent> tracker = new ConfirmTracker<>(m_amqpProperties.getConfirmWindow());
+		
+		// Acks and nacks are processed in bulk if the broker sets the "multiple" flag
+		m_chanChannel.confirmSelect(new TransportChannel.ConfirmHandler()
+		{
+			@Override
+			public void handleConfirm(long deliveryTag, boolean multiple, boolean ack)
+			{
+				PublishLane.this.handleConfirm(tracker.confirm(deliveryTag, multiple), ack);
+			}
+		});
+		
+		// Waking up the publisher if it waits for confirms when the channel shuts down
+		m_chanChannel.addShutdownHandler(new Transport.ShutdownHandler()
+		{
+			@Override
+			public void shutdownCompleted(boolean initiatedByApplication)
+			{
+				tracker.markClosed();
+			}
+		});
+		
+		m_chanConfirmTracker = tracker;
+	}
+	
+	// Only call this method when the channel lock is applied!
+	private void chanDetach()
+	{
+		m_channelIsOpenNow = false;
+		
+		if (m_chanChannel != null)
+		{
+			try {
+				m_chanChannel.close();
+			} catch (Exception ignore) {}
+			
+			m_chanChannel = null;
+		}
+		
+		// The publisher will take the unconfirmed messages from the tracker
+		if (m_chanConfirmTracker != null)
+		{
+			m_chanConfirmTracker.markClosed();
+			m_chanConfirmTracker = null;
+		}
+	}
+}
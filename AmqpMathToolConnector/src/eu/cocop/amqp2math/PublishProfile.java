@@ -0,0 +1,173 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+
+/**
+ * The properties of the messages published to particular topics. Register
+ * profiles with AmqpPropsManager.setPublishProfile. The connector builds the
+ * AMQP properties of each profile once and reuses them for every message.
+ * @author Petri Kannisto
+ */
+public class PublishProfile
+{
+	private static final int defaultTtl_ms = 15 * 60 * 1000; // 15 minutes
+	
+	private int m_ttl_ms = defaultTtl_ms;
+	private boolean m_persistent = false;
+	private int m_priority = -1; // not set by default
+	private String m_contentType = null;
+	private final HashMap<String, Object> m_headers = new HashMap<>();
+	
+	
+	/**
+	 * Constructor. By default, the messages expire in 15 minutes,
+	 * they are not persistent, and no other properties are set.
+	 */
+	public PublishProfile()
+	{
+		// Empty ctor body
+	}
+	
+	/**
+	 * Copy constructor.
+	 * @param other Profile to copy.
+	 */
+	PublishProfile(PublishProfile other)
+	{
+		m_ttl_ms = other.m_ttl_ms;
+		m_persistent = other.m_persistent;
+		m_priority = other.m_priority;
+		m_contentType = other.m_contentType;
+		m_headers.putAll(other.m_headers);
+	}
+	
+	/**
+	 * Sets the time after which the broker discards the messages if not
+	 * consumed. Use a short time for topics that change fast.
+	 * @param ttl_ms Time in milliseconds or 0 for no expiration.
+	 * @exception IllegalArgumentException Thrown if the value is negative.
+	 */
+	public void setTtl(int ttl_ms)
+	{
+		if (ttl_ms < 0)
+		{
+			throw new IllegalArgumentException("The TTL must not be negative");
+		}
+		
+		m_ttl_ms = ttl_ms;
+	}
+	
+	/**
+	 * Sets whether the broker stores the messages on disk (delivery mode 2).
+	 * This only takes effect in durable queues.
+	 * @param persistent True if persistent.
+	 */
+	public void setPersistent(boolean persistent)
+	{
+		m_persistent = persistent;
+	}
+	
+	/**
+	 * Sets the priority of the messages. This only takes effect in queues
+	 * that have priorities.
+	 * @param priority Priority from 0 to 255 or -1 to leave unset.
+	 * @exception IllegalArgumentException Thrown if the value is out of range.
+	 */
+	public void setPriority(int priority)
+	{
+		if (priority < -1 || priority > 255)
+		{
+			throw new IllegalArgumentException("The priority must be from 0 to 255 or -1");
+		}
+		
+		m_priority = priority;
+	}
+	
+	/**
+	 * Sets the content type, such as "application/xml".
+	 * @param contentType Content type or null to leave unset.
+	 */
+	public void setContentType(String contentType)
+	{
+		m_contentType = contentType;
+	}
+	
+	/**
+	 * Sets a header that every message has.
+	 * @param name Name.
+	 * @param value Value: String, Boolean, Integer, Long, Short, Byte, Double, Float,
+	 * BigDecimal, or null to remove the header.
+	 * @exception IllegalArgumentException Thrown if the value has another type.
+	 */
+	public void setHeader(String name, Object value)
+	{
+		if (value == null)
+		{
+			m_headers.remove(name);
+			return;
+		}
+		
+		// Only the types that the AMQP client can write. Another type would
+		// fail each publish of the topics of the profile.
+		if (!(value instanceof String || value instanceof Boolean ||
+				value instanceof Integer || value instanceof Long ||
+				value instanceof Short || value instanceof Byte ||
+				value instanceof Double || value instanceof Float ||
+				value instanceof BigDecimal))
+		{
+			throw new IllegalArgumentException("Unsupported header value type " + value.getClass().getName());
+		}
+		
+		m_headers.put(name, value);
+	}
+	
+	/**
+	 * Builds the AMQP properties of the profile.
+	 * @return Properties.
+	 */
+	BasicProperties toProperties()
+	{
+		BasicProperties.Builder builder = new BasicProperties().builder();
+		
+		if (m_ttl_ms > 0)
+		{
+			builder.expiration(Integer.toString(m_ttl_ms));
+		}
+		
+		if (m_persistent)
+		{
+			builder.deliveryMode(2);
+		}
+		
+		if (m_priority >= 0)
+		{
+			builder.priority(m_priority);
+		}
+		
+		if (m_contentType != null)
+		{
+			builder.contentType(m_contentType);
+		}
+		
+		if (!m_headers.isEmpty())
+		{
+			builder.headers(new HashMap<String, Object>(m_headers));
+		}
+		
+		return builder.build();
+	}
+}
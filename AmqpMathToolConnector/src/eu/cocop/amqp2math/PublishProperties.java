@@ -0,0 +1,147 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+
+/**
+ * Provides the AMQP properties and the compression mode of outbound messages
+ * by topic. The properties of each publish profile are built once, and the
+ * result for each topic is cached, so publishing a message allocates nothing
+ * here. The object is not thread-safe; each publisher thread has its own.
+ * @author Petri Kannisto
+ */
+final class PublishProperties
+{
+	// The count of topics to cache the settings of
+	private static final int MaxCachedTopics = 10000;
+	
+	private final BasicProperties m_defaultProperties;
+	
+	// The properties of the profiles in the order of registration.
+	// The matcher maps topic patterns to indices in this list.
+	private final ArrayList<BasicProperties> m_profileProperties = new ArrayList<>();
+	private final TopicMatcher<Integer> m_matcher;
+	
+	// This is null if no topic has compression
+	private final PayloadCompression m_compression;
+	
+	private final HashMap<String, TopicSettings> m_cache = new HashMap<>();
+	
+	
+	/**
+	 * Constructor.
+	 * @param defaultProfile The profile of topics that match no pattern.
+	 * @param profiles Topic patterns and their profiles in the order of registration.
+	 * @param compression Compression or null if no topic has compression.
+	 */
+	PublishProperties(PublishProfile defaultProfile, Map<String, PublishProfile> profiles, PayloadCompression compression)
+	{
+		m_compression = compression;
+		m_defaultProperties = defaultProfile.toProperties();
+		
+		HashMap<String, Integer> indices = new HashMap<>();
+		
+		for (Map.Entry<String, PublishProfile> entry : profiles.entrySet())
+		{
+			indices.put(entry.getKey(), m_profileProperties.size());
+			m_profileProperties.add(entry.getValue().toProperties());
+		}
+		
+		m_matcher = new TopicMatcher<>(indices);
+	}
+	
+	/**
+	 * Gets the settings of a topic.
+	 * @param topic Topic.
+	 * @return Settings.
+	 */
+	TopicSettings get(String topic)
+	{
+		TopicSettings settings = m_cache.get(topic);
+		
+		if (settings == null)
+		{
+			if (m_cache.size() >= MaxCachedTopics)
+			{
+				m_cache.clear();
+			}
+			
+			CompressionMode mode = m_compression == null ? CompressionMode.NONE : m_compression.getMode(topic);
+			settings = new TopicSettings(resolve(topic), mode);
+			m_cache.put(topic, settings);
+		}
+		
+		return settings;
+	}
+	
+	private BasicProperties resolve(String topic)
+	{
+		// If several patterns match, the one registered last applies
+		int index = -1;
+		
+		for (Integer i : m_matcher.match(topic))
+		{
+			index = Math.max(index, i);
+		}
+		
+		return index < 0 ? m_defaultProperties : m_profileProperties.get(index);
+	}
+	
+	
+	/**
+	 * The publish settings of a topic.
+	 */
+	static final class TopicSettings
+	{
+		/**
+		 * The compression mode.
+		 */
+		final CompressionMode compressionMode;
+		
+		private final BasicProperties m_plain;
+		private BasicProperties m_compressed = null;
+		
+		
+		private TopicSettings(BasicProperties plain, CompressionMode mode)
+		{
+			m_plain = plain;
+			compressionMode = mode;
+		}
+		
+		/**
+		 * Gets the properties.
+		 * @param compressed Whether the message is compressed, which requires a content encoding.
+		 * @return Properties.
+		 */
+		BasicProperties getProperties(boolean compressed)
+		{
+			if (!compressed)
+			{
+				return m_plain;
+			}
+			
+			if (m_compressed == null)
+			{
+				m_compressed = m_plain.builder()
+						.contentEncoding(PayloadCompression.EncodingDeflate)
+						.build();
+			}
+			
+			return m_compressed;
+		}
+	}
+}
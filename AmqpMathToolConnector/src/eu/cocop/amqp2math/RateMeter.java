@@ -0,0 +1,85 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts events and the rate at which they occur. Counting uses a striped
+ * counter, so concurrent threads do not contend. The rate is updated when
+ * tick() is called, which the timer of the connector does periodically.
+ * The object is thread-safe.
+ * @author Petri Kannisto
+ */
+final class RateMeter
+{
+	private final LongAdder m_count = new LongAdder();
+	
+	// Mutual exclusion for the tick state: use "this" as the lock
+	private long m_lastCount = 0;
+	private long m_lastTick_ns = System.nanoTime();
+	private volatile double m_rate = 0;
+	
+	
+	/**
+	 * Counts an event.
+	 */
+	void increment()
+	{
+		m_count.increment();
+	}
+	
+	/**
+	 * Counts events.
+	 * @param count Count.
+	 */
+	void add(long count)
+	{
+		m_count.add(count);
+	}
+	
+	/**
+	 * Returns the total count of events.
+	 * @return Count.
+	 */
+	long getCount()
+	{
+		return m_count.sum();
+	}
+	
+	/**
+	 * Returns the rate measured at the most recent tick.
+	 * @return Events per second.
+	 */
+	double getRate()
+	{
+		return m_rate;
+	}
+	
+	/**
+	 * Updates the rate from the events since the previous tick.
+	 */
+	synchronized void tick()
+	{
+		long now_ns = System.nanoTime();
+		long count = m_count.sum();
+		long elapsed_ns = now_ns - m_lastTick_ns;
+		
+		if (elapsed_ns > 0)
+		{
+			m_rate = (count - m_lastCount) * 1e9 / elapsed_ns;
+		}
+		
+		m_lastCount = count;
+		m_lastTick_ns = now_ns;
+	}
+}
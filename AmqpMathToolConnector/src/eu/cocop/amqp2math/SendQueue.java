@@ -0,0 +1,588 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import java.util.LinkedList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A queue for outbound messages. The capacity is bounded both in messages
+ * and in bytes, and an overflow policy determines what happens when the queue
+ * is full. The byte capacity can be shared with other queues, in which case it
+ * limits the bytes of all of them together. Any number of threads can enqueue,
+ * whereas one publisher thread takes the messages.
+ *
+ * The queue is a lock-free ring buffer. Each slot has a sequence number that
+ * tells whether the slot is free for the producer of a particular position
+ * or filled for the consumer of that position (see D. Vyukov, "Bounded MPMC queue").
+ * The slots are allocated in the constructor, so enqueueing neither allocates
+ * nor blocks unless the queue is full. Dropping the oldest message makes
+ * a producer consume, which the algorithm permits. A batch claims a run of
+ * consecutive positions at once, so no other message can interleave with it.
+ * @author Petri Kannisto
+ */
+class SendQueue
+{
+	private final int m_capacity;
+	private final long m_capacityBytes;
+	private final OverflowPolicy m_policy;
+	private final long m_blockTimeout_ms;
+	
+	// The ring. The length is a power of two to enable masking instead of modulo.
+	private final int m_mask;
+	private final AtomicLongArray m_sequences;
+	private final String[] m_topics;
+	private final String[] m_types;
+	private final long[] m_enqueueTimes;
+	private final byte[][] m_bodies;
+	private final CompletableFuture<Void>[] m_futures;
+	
+	// The positions only ever grow
+	private final AtomicLong m_head = new AtomicLong(0);
+	private final AtomicLong m_tail = new AtomicLong(0);
+	
+	// The bytes in this queue and those in all queues that share the byte capacity
+	private final AtomicLong m_bytes = new AtomicLong(0);
+	private final AtomicLong m_sharedBytes;
+	private final AtomicLong m_droppedCount = new AtomicLong(0);
+	
+	// The consumer sets this before parking to have the producers wake it up
+	private volatile Thread m_waitingConsumer = null;
+	
+	private volatile boolean m_closed = false;
+	
+	
+	/**
+	 * Constructor.
+	 * @param capacity Capacity in messages.
+	 * @param capacityBytes Capacity in bytes (the sum of message body lengths).
+	 * @param policy Overflow policy.
+	 * @param blockTimeout_ms The maximum time to wait for room with the "block" policy.
+	 */
+	SendQueue(int capacity, long capacityBytes, OverflowPolicy policy, long blockTimeout_ms)
+	{
+		this(capacity, capacityBytes, new AtomicLong(0), policy, blockTimeout_ms);
+	}
+	
+	/**
+	 * Constructor.
+	 * @param capacity Capacity in messages.
+	 * @param capacityBytes Capacity in bytes (the sum of message body lengths).
+	 * @param sharedBytes The bytes in all queues that share the byte capacity. Each queue adds its bytes to this.
+	 * @param policy Overflow policy.
+	 * @param blockTimeout_ms The maximum time to wait for room with the "block" policy.
+	 */
+	@SuppressWarnings("unchecked")
+	SendQueue(int capacity, long capacityBytes, AtomicLong sharedBytes, OverflowPolicy policy, long blockTimeout_ms)
+	{
+		m_capacity = capacity;
+		m_capacityBytes = capacityBytes;
+		m_sharedBytes = sharedBytes;
+		m_policy = policy;
+		m_blockTimeout_ms = blockTimeout_ms;
+		
+		int ringSize = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+		m_mask = ringSize - 1;
+		m_sequences = new AtomicLongArray(ringSize);
+		m_topics = new String[ringSize];
+		m_types = new String[ringSize];
+		m_enqueueTimes = new long[ringSize];
+		m_bodies = new byte[ringSize][];
+		m_futures = (CompletableFuture<Void>[])new CompletableFuture<?>[ringSize];
+		
+		// Initially, each slot is free for the producer of the respective position
+		for (int i = 0; i < ringSize; ++i)
+		{
+			m_sequences.set(i, i);
+		}
+	}
+	
+	/**
+	 * Enqueues a message, applying the overflow policy if the queue is full.
+	 * If the message is dropped, its future completes exceptionally.
+	 * @param topic Topic.
+	 * @param body Message body.
+	 * @param future Future to complete once delivered. May be null.
+	 * @exception IllegalArgumentException Thrown if the message is larger than the byte capacity.
+	 * @exception IllegalStateException Thrown if the queue is full and the policy is "throw".
+	 */
+	void offer(String topic, byte[] body, CompletableFuture<Void> future)
+	{
+		if (body.length > m_capacityBytes)
+		{
+			throw new IllegalArgumentException("The message is larger than the byte capacity of the send queue");
+		}
+		
+		if (tryOffer(topic, null, body, future))
+		{
+			return; // The usual case
+		}
+		
+		switch (m_policy)
+		{
+		case BLOCK:
+			// Backing off with increasing sleeps until there is room or the timeout expires
+			long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(m_blockTimeout_ms);
+			long sleep_ns = 1000;
+			
+			while (!tryOffer(topic, null, body, future))
+			{
+				long remaining_ns = deadline - System.nanoTime();
+				
+				if (remaining_ns <= 0 || m_closed || Thread.currentThread().isInterrupted())
+				{
+					drop(future);
+					return;
+				}
+				
+				LockSupport.parkNanos(this, Math.min(sleep_ns, remaining_ns));
+				sleep_ns = Math.min(sleep_ns * 2, TimeUnit.MILLISECONDS.toNanos(10));
+			}
+			break;
+		
+		case DROP_OLDEST:
+			while (!tryOffer(topic, null, body, future))
+			{
+				MessageToBeSent oldest = poll();
+				
+				if (oldest == null && m_bytes.get() == 0)
+				{
+					// The other queues that share the byte capacity hold the bytes
+					drop(future);
+					return;
+				}
+				
+				if (oldest != null)
+				{
+					drop(oldest);
+				}
+			}
+			break;
+		
+		case REJECT_NEWEST:
+			drop(future);
+			break;
+		
+		case THROW:
+		default:
+			throw new IllegalStateException("The send queue is full");
+		}
+	}
+	
+	/**
+	 * Enqueues a message, waiting as long as needed for room regardless of
+	 * the overflow policy. This is for messages that must not be dropped,
+	 * such as the chunks of a large payload.
+	 * @param topic Topic.
+	 * @param type The message type or null.
+	 * @param body Message body.
+	 * @return True if enqueued, false if the queue was closed or the thread was interrupted.
+	 * @exception IllegalArgumentException Thrown if the message is larger than the byte capacity.
+	 */
+	boolean offerWait(String topic, String type, byte[] body)
+	{
+		if (body.length > m_capacityBytes)
+		{
+			throw new IllegalArgumentException("The message is larger than the byte capacity of the send queue");
+		}
+		
+		long sleep_ns = 1000;
+		
+		while (!tryOffer(topic, type, body, null))
+		{
+			if (m_closed || Thread.currentThread().isInterrupted())
+			{
+				return false;
+			}
+			
+			LockSupport.parkNanos(this, sleep_ns);
+			sleep_ns = Math.min(sleep_ns * 2, TimeUnit.MILLISECONDS.toNanos(10));
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Enqueues a batch of messages atomically: either all messages are enqueued
+	 * one after another or, if the overflow policy drops the batch, none are.
+	 * @param topics Topics. The array has the same length as the bodies.
+	 * @param bodies Message bodies.
+	 * @exception IllegalArgumentException Thrown if the batch is larger than the capacity.
+	 * @exception IllegalStateException Thrown if the queue is full and the policy is "throw".
+	 */
+	void offerAll(String[] topics, byte[][] bodies)
+	{
+		long batchBytes = 0;
+		
+		for (byte[] b : bodies)
+		{
+			batchBytes += b.length;
+		}
+		
+		if (bodies.length > m_capacity || batchBytes > m_capacityBytes)
+		{
+			throw new IllegalArgumentException("The batch is larger than the capacity of the send queue");
+		}
+		
+		if (bodies.length == 0 || tryOfferAll(topics, bodies, batchBytes))
+		{
+			return; // The usual case
+		}
+		
+		switch (m_policy)
+		{
+		case BLOCK:
+			// Backing off with increasing sleeps until there is room or the timeout expires
+			long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(m_blockTimeout_ms);
+			long sleep_ns = 1000;
+			
+			while (!tryOfferAll(topics, bodies, batchBytes))
+			{
+				long remaining_ns = deadline - System.nanoTime();
+				
+				if (remaining_ns <= 0 || m_closed || Thread.currentThread().isInterrupted())
+				{
+					m_droppedCount.addAndGet(bodies.length);
+					return;
+				}
+				
+				LockSupport.parkNanos(this, Math.min(sleep_ns, remaining_ns));
+				sleep_ns = Math.min(sleep_ns * 2, TimeUnit.MILLISECONDS.toNanos(10));
+			}
+			break;
+			
+		case DROP_OLDEST:
+			while (!tryOfferAll(topics, bodies, batchBytes))
+			{
+				MessageToBeSent oldest = poll();
+				
+				if (oldest == null && m_bytes.get() == 0)
+				{
+					// The other queues that share the byte capacity hold the bytes
+					m_droppedCount.addAndGet(bodies.length);
+					return;
+				}
+				
+				if (oldest != null)
+				{
+					drop(oldest);
+				}
+			}
+			break;
+			
+		case REJECT_NEWEST:
+			m_droppedCount.addAndGet(bodies.length);
+			break;
+			
+		case THROW:
+		default:
+			throw new IllegalStateException("The send queue is full");
+		}
+	}
+	
+	/**
+	 * Takes the oldest message in the queue.
+	 * @return Message or null if the queue is empty.
+	 */
+	MessageToBeSent poll()
+	{
+		long pos = m_head.get();
+		
+		while (true)
+		{
+			int index = (int)(pos & m_mask);
+			long diff = m_sequences.get(index) - (pos + 1);
+			
+			if (diff == 0)
+			{
+				if (m_head.compareAndSet(pos, pos + 1))
+				{
+					// Reading the slot, and then freeing it for the producer of the next lap
+					MessageToBeSent retval = new MessageToBeSent(m_topics[index], m_types[index], m_bodies[index],
+							m_futures[index], m_enqueueTimes[index]);
+					m_topics[index] = null;
+					m_types[index] = null;
+					m_bodies[index] = null;
+					m_futures[index] = null;
+					m_sequences.lazySet(index, pos + m_mask + 1);
+					
+					releaseBytes(retval.body.length);
+					return retval;
+				}
+				
+				pos = m_head.get();
+			}
+			else if (diff < 0)
+			{
+				return null; // Empty
+			}
+			else
+			{
+				// Another consumer took this position
+				pos = m_head.get();
+			}
+		}
+	}
+	
+	/**
+	 * Waits until the queue has messages. Only the consumer may call this.
+	 * The waiting ends early if wakeUpConsumer() is called.
+	 * @return True if there are messages, false if woken up while empty or if the queue is closed.
+	 */
+	boolean awaitMessages()
+	{
+		if (isEmpty() && !m_closed)
+		{
+			// Re-checking after registering, so that a producer cannot
+			// enqueue between the check and the registration unnoticed
+			m_waitingConsumer = Thread.currentThread();
+			
+			if (isEmpty() && !m_closed)
+			{
+				LockSupport.park(this);
+			}
+			
+			m_waitingConsumer = null;
+		}
+		
+		return !m_closed && !isEmpty();
+	}
+	
+	/**
+	 * Wakes up the consumer if it waits for messages.
+	 */
+	void wakeUpConsumer()
+	{
+		Thread consumer = m_waitingConsumer;
+		
+		if (consumer != null)
+		{
+			LockSupport.unpark(consumer);
+		}
+	}
+	
+	/**
+	 * Marks the queue closed and wakes up the consumer without taking the
+	 * messages from the queue. The consumer can still poll them.
+	 */
+	void shutDown()
+	{
+		m_closed = true;
+		wakeUpConsumer();
+	}
+	
+	/**
+	 * Closes the queue. This wakes up the consumer.
+	 * @return The messages that remained in the queue.
+	 */
+	LinkedList<MessageToBeSent> close()
+	{
+		shutDown();
+		
+		LinkedList<MessageToBeSent> retval = new LinkedList<>();
+		MessageToBeSent m = null;
+		
+		while ((m = poll()) != null)
+		{
+			retval.add(m);
+		}
+		
+		return retval;
+	}
+	
+	/**
+	 * Returns the count of messages dropped due to the overflow policy.
+	 * @return Count.
+	 */
+	long getDroppedCount()
+	{
+		return m_droppedCount.get();
+	}
+	
+	/**
+	 * Returns the count of messages in the queue. This is approximate if the
+	 * queue is being modified concurrently.
+	 * @return Count.
+	 */
+	int size()
+	{
+		return (int)Math.max(0, m_tail.get() - m_head.get());
+	}
+	
+	/**
+	 * Returns the size of the queue in bytes.
+	 * @return Size in bytes.
+	 */
+	long sizeBytes()
+	{
+		return m_bytes.get();
+	}
+	
+	private boolean isEmpty()
+	{
+		long pos = m_head.get();
+		return m_sequences.get((int)(pos & m_mask)) - (pos + 1) < 0;
+	}
+	
+	private boolean tryOffer(String topic, String type, byte[] body, CompletableFuture<Void> future)
+	{
+		// Reserving bytes first
+		if (!tryReserveBytes(body.length))
+		{
+			return false;
+		}
+		
+		long pos = m_tail.get();
+		
+		while (true)
+		{
+			if (pos - m_head.get() >= m_capacity)
+			{
+				releaseBytes(body.length);
+				return false; // Full in messages
+			}
+			
+			int index = (int)(pos & m_mask);
+			long diff = m_sequences.get(index) - pos;
+			
+			if (diff == 0)
+			{
+				if (m_tail.compareAndSet(pos, pos + 1))
+				{
+					// The slot is now reserved for this producer. Publishing the contents
+					// to the consumer with a volatile write to the sequence. A volatile write
+					// is required (instead of an ordered one) so that the consumer cannot
+					// register for wakeup unnoticed in between.
+					m_topics[index] = topic;
+					m_types[index] = type;
+					m_enqueueTimes[index] = System.nanoTime();
+					m_bodies[index] = body;
+					m_futures[index] = future;
+					m_sequences.set(index, pos + 1);
+					
+					wakeUpConsumer();
+					return true;
+				}
+				
+				pos = m_tail.get();
+			}
+			else if (diff < 0)
+			{
+				releaseBytes(body.length);
+				return false; // Full, the consumer has not freed the slot yet
+			}
+			else
+			{
+				// Another producer took this position
+				pos = m_tail.get();
+			}
+		}
+	}
+	
+	private boolean tryOfferAll(String[] topics, byte[][] bodies, long batchBytes)
+	{
+		if (!tryReserveBytes(batchBytes))
+		{
+			return false;
+		}
+		
+		int count = bodies.length;
+		long pos = m_tail.get();
+		
+		while (true)
+		{
+			if (pos + count - m_head.get() > m_capacity)
+			{
+				releaseBytes(batchBytes);
+				return false; // Full in messages
+			}
+			
+			if (m_tail.compareAndSet(pos, pos + count))
+			{
+				break;
+			}
+			
+			pos = m_tail.get();
+		}
+		
+		long now_ns = System.nanoTime();
+		
+		// The positions are now reserved for this producer. Because the head has
+		// passed the previous lap of each position, each slot is free or just
+		// being freed by a consumer, so any wait here is very short.
+		for (int i = 0; i < count; ++i)
+		{
+			long slotPos = pos + i;
+			int index = (int)(slotPos & m_mask);
+			
+			while (m_sequences.get(index) != slotPos)
+			{
+				Thread.yield();
+			}
+			
+			m_topics[index] = topics[i];
+			m_types[index] = null;
+			m_enqueueTimes[index] = now_ns;
+			m_bodies[index] = bodies[i];
+			m_futures[index] = null;
+			m_sequences.set(index, slotPos + 1);
+		}
+		
+		wakeUpConsumer();
+		return true;
+	}
+	
+	private boolean tryReserveBytes(long count)
+	{
+		while (true)
+		{
+			long current = m_sharedBytes.get();
+			
+			if (current + count > m_capacityBytes)
+			{
+				return false;
+			}
+			
+			if (m_sharedBytes.compareAndSet(current, current + count))
+			{
+				m_bytes.addAndGet(count);
+				return true;
+			}
+		}
+	}
+	
+	private void releaseBytes(long count)
+	{
+		m_bytes.addAndGet(-count);
+		m_sharedBytes.addAndGet(-count);
+	}
+	
+	private void drop(CompletableFuture<Void> future)
+	{
+		m_droppedCount.incrementAndGet();
+		
+		if (future != null)
+		{
+			future.completeExceptionally(new CommunicationException("The message was dropped, because the send queue was full", null));
+		}
+	}
+	
+	private void drop(MessageToBeSent msg)
+	{
+		m_droppedCount.incrementAndGet();
+		msg.fail(new CommunicationException("The message was dropped, because the send queue was full", null));
+	}
+}
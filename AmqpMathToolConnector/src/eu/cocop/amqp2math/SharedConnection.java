@@ -0,0 +1,261 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Timer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A reference-counted connection shared by the connectors that have the same
+ * connection settings in the same JVM. Each connector uses channels of its own.
+ * The connection is closed once the last connector has released it. If the
+ * connection is lost, the next connector to acquire it opens a new one.
+ * Connecting does not hold any lock shared with other connection keys, so
+ * a broker that does not respond only holds back the connectors that use it.
+ * The connectors also share one timer thread and a pool of threads for
+ * connect attempts.
+ * @author Petri Kannisto
+ */
+final class SharedConnection
+{
+	// The current connection of each connection key. While connecting,
+	// the future is incomplete, and the other connectors wait for it.
+	// Mutual exclusion: use the class as the lock for the static variables.
+	private static final HashMap<String, CompletableFuture<SharedConnection>> s_connections = new HashMap<>();
+	
+	private static Timer s_timer = null;
+	private static int s_timerReferences = 0;
+	
+	// Runs the connect attempts, because they block until the broker responds.
+	// The threads end once idle for a while.
+	private static final AtomicInteger s_connectThreadCounter = new AtomicInteger(0);
+	private static final ExecutorService s_connectExecutor = Executors.newCachedThreadPool(new ThreadFactory()
+	{
+		@Override
+		public Thread newThread(Runnable r)
+		{
+			// Daemon threads never prevent the JVM of the math tool from exiting
+			Thread thread = new Thread(r, "AmqpConnector connect " + s_connectThreadCounter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	
+	private final String m_key;
+	private final TransportConnection m_connection;
+	
+	// Mutual exclusion: use the class as the lock
+	private int m_references = 0;
+	
+	
+	private SharedConnection(String key, TransportConnection conn)
+	{
+		m_key = key;
+		m_connection = conn;
+	}
+	
+	/**
+	 * Acquires a connection for the given properties. If a connection exists
+	 * and is open, it is shared. Otherwise, a new connection is opened.
+	 * Call release() once the connection is no longer needed.
+	 * @param props Properties.
+	 * @return Shared connection.
+	 * @throws CommunicationException Thrown if the connection properties are invalid.
+	 * @throws IOException Thrown if connecting fails.
+	 * @throws TimeoutException Thrown if connecting times out.
+	 */
+	static SharedConnection acquire(AmqpPropsManager props) throws CommunicationException, IOException, TimeoutException
+	{
+		Transport transport = props.getTransport();
+		String key = transport.getConnectionKey(props);
+		
+		while (true)
+		{
+			CompletableFuture<SharedConnection> future;
+			boolean connectHere = false;
+			
+			synchronized (SharedConnection.class)
+			{
+				future = s_connections.get(key);
+				
+				if (future != null && future.isDone())
+				{
+					SharedConnection existing = future.isCompletedExceptionally() ? null : future.join();
+					
+					if (existing != null && existing.m_connection.isOpen())
+					{
+						++existing.m_references;
+						return existing;
+					}
+					
+					future = null; // Failed or lost, so connecting again
+				}
+				
+				if (future == null)
+				{
+					// The placeholder makes simultaneous connectors wait for
+					// this connect instead of opening a connection each
+					future = new CompletableFuture<>();
+					s_connections.put(key, future);
+					connectHere = true;
+				}
+			}
+			
+			if (connectHere)
+			{
+				connect(transport, props, key, future);
+			}
+			
+			// Waiting without the lock for the connect of this or another connector
+			SharedConnection shared = awaitConnect(future);
+			
+			synchronized (SharedConnection.class)
+			{
+				// If the connection has been lost or released meanwhile, trying again
+				if (s_connections.get(key) == future && shared.m_connection.isOpen())
+				{
+					++shared.m_references;
+					return shared;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Runs a connect attempt in a pool thread. The attempts block until
+	 * the broker responds, so they must not run in the shared timer thread.
+	 * @param attempt Attempt.
+	 */
+	static void runConnectAttempt(Runnable attempt)
+	{
+		s_connectExecutor.execute(attempt);
+	}
+	
+	/**
+	 * Gets the connection.
+	 * @return Connection.
+	 */
+	TransportConnection getConnection()
+	{
+		return m_connection;
+	}
+	
+	/**
+	 * Releases the connection. If no connector uses the connection anymore, it is closed.
+	 */
+	void release()
+	{
+		synchronized (SharedConnection.class)
+		{
+			if (--m_references > 0)
+			{
+				return;
+			}
+			
+			// A lost connection may have been replaced already
+			CompletableFuture<SharedConnection> current = s_connections.get(m_key);
+			
+			if (current != null && current.isDone() && !current.isCompletedExceptionally() && current.join() == this)
+			{
+				s_connections.remove(m_key);
+			}
+		}
+		
+		try {
+			m_connection.close();
+		} catch (Exception ignore) {}
+	}
+	
+	private static void connect(Transport transport, AmqpPropsManager props, String key,
+			CompletableFuture<SharedConnection> future) throws CommunicationException, IOException, TimeoutException
+	{
+		try
+		{
+			future.complete(new SharedConnection(key, transport.connect(props)));
+		}
+		catch (CommunicationException | IOException | TimeoutException | RuntimeException e)
+		{
+			// The next connector to acquire will try again
+			synchronized (SharedConnection.class)
+			{
+				if (s_connections.get(key) == future)
+				{
+					s_connections.remove(key);
+				}
+			}
+			
+			future.completeExceptionally(e);
+			throw e;
+		}
+	}
+	
+	private static SharedConnection awaitConnect(CompletableFuture<SharedConnection> future)
+			throws CommunicationException, IOException, TimeoutException
+	{
+		try
+		{
+			return future.join();
+		}
+		catch (CompletionException e)
+		{
+			// Another connector failed to connect with the same settings
+			Throwable cause = e.getCause();
+			
+			if (cause instanceof CommunicationException)
+			{
+				throw (CommunicationException)cause;
+			}
+			if (cause instanceof TimeoutException)
+			{
+				throw (TimeoutException)cause;
+			}
+			
+			throw new IOException(cause.getMessage(), cause);
+		}
+	}
+	
+	/**
+	 * Acquires the timer shared by the connectors. Call releaseTimer() once
+	 * the timer is no longer needed.
+	 * @return Timer.
+	 */
+	static synchronized Timer acquireTimer()
+	{
+		if (s_timer == null)
+		{
+			s_timer = new Timer("AmqpConnector timer");
+		}
+		
+		++s_timerReferences;
+		return s_timer;
+	}
+	
+	/**
+	 * Releases the shared timer. Once no connector uses the timer, its thread ends.
+	 */
+	static synchronized void releaseTimer()
+	{
+		if (--s_timerReferences == 0)
+		{
+			s_timer.cancel();
+			s_timer = null;
+		}
+	}
+}
@@ -0,0 +1,497 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A persistent spool for outbound messages. The messages are appended to
+ * memory-mapped segment files in a directory, and they are read back in the
+ * same order. A segment file is deleted once all of its messages have been
+ * confirmed (or sent, if publisher confirms are not used). If the process
+ * ends, the messages not confirmed yet are read again from the files on the
+ * next start. The spool is thread-safe.
+ * @author Petri Kannisto
+ */
+class Spool
+{
+	/*
+	Segment file layout (big endian):
+	- header: magic (int), version (int), write offset (long), confirmed offset (long), reserved (long)
+	- records from the end of the header: record length excluding this field (int),
+	  topic length (short), topic (UTF-8), type length (short, 0xffff if none), type (UTF-8), body
+	*/
+	
+	private static final int Magic = 0x4353504c; // "CSPL"
+	private static final int Version = 2;
+	private static final int HeaderSize = 32;
+	private static final int WriteOffsetPosition = 8;
+	private static final int ConfirmedOffsetPosition = 16;
+	private static final String FilePrefix = "spool-";
+	private static final String FileSuffix = ".seg";
+	
+	private final File m_directory;
+	private final int m_segmentSize;
+	
+	// Prevents another process or connector from using the same directory
+	private final RandomAccessFile m_lockFile;
+	private final FileLock m_lock;
+	
+	// Mutual exclusion for all variables below: use "this" as the lock.
+	// Segments from the oldest to the newest.
+	private final ArrayDeque<Segment> m_segments = new ArrayDeque<>();
+	private long m_nextSegmentNumber = 0;
+	private boolean m_closed = false;
+	
+	
+	/**
+	 * Constructor. This opens the existing segments in the directory, if any.
+	 * @param dir Directory. It is created if it does not exist.
+	 * @param segmentSize The size of a segment file in bytes. Larger messages get a segment of their own.
+	 * @throws IOException Thrown if an error occurs or if another spool has the directory open.
+	 */
+	Spool(File dir, int segmentSize) throws IOException
+	{
+		if (!dir.isDirectory() && !dir.mkdirs())
+		{
+			throw new IOException("Failed to create spool directory " + dir);
+		}
+		
+		m_directory = dir;
+		m_segmentSize = segmentSize;
+		m_lockFile = new RandomAccessFile(new File(dir, "spool.lock"), "rw");
+		
+		FileLock lock = null;
+		
+		try
+		{
+			lock = m_lockFile.getChannel().tryLock();
+		}
+		catch (OverlappingFileLockException e)
+		{
+			// Locked within this JVM
+		}
+		
+		if (lock == null)
+		{
+			m_lockFile.close();
+			throw new IOException("The spool directory is in use: " + dir);
+		}
+		
+		m_lock = lock;
+		openExistingSegments();
+	}
+	
+	/**
+	 * Appends a message to the spool. If the message has a future, it is
+	 * completed once the message has been read back and confirmed.
+	 * @param topic Topic.
+	 * @param type Message type or null.
+	 * @param body Message body.
+	 * @param future Future or null.
+	 * @throws IOException Thrown if an error occurs.
+	 */
+	synchronized void append(String topic, String type, byte[] body, CompletableFuture<Void> future) throws IOException
+	{
+		expectNotClosed();
+		
+		byte[] topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+		byte[] typeBytes = type == null ? new byte[0] : type.getBytes(StandardCharsets.UTF_8);
+		int recordLength = 2 + topicBytes.length + 2 + typeBytes.length + body.length;
+		int totalLength = 4 + recordLength;
+		
+		Segment segment = m_segments.peekLast();
+		
+		if (segment == null || segment.writeOffset + totalLength > segment.buffer.capacity())
+		{
+			// Starting a new segment. A large message gets a segment of its own.
+			segment = createSegment(Math.max(m_segmentSize, HeaderSize + totalLength));
+		}
+		
+		// Writing the record before the offset that makes it valid
+		ByteBuffer buf = segment.buffer;
+		int offset = segment.writeOffset;
+		buf.putInt(offset, recordLength);
+		buf.putShort(offset + 4, (short)topicBytes.length);
+		
+		ByteBuffer dup = buf.duplicate();
+		dup.position(offset + 6);
+		dup.put(topicBytes);
+		dup.putShort(type == null ? (short)0xffff : (short)typeBytes.length);
+		dup.put(typeBytes);
+		dup.put(body);
+		
+		segment.writeOffset = offset + totalLength;
+		buf.putLong(WriteOffsetPosition, segment.writeOffset);
+		
+		if (future != null)
+		{
+			segment.futures.put(offset, future);
+		}
+	}
+	
+	/**
+	 * Reads the next message not read yet. Once the message has been confirmed,
+	 * call its complete() method, which enables the spool to release its space.
+	 * @return Message or null if all messages have been read.
+	 */
+	synchronized MessageToBeSent read()
+	{
+		for (Segment segment : m_segments)
+		{
+			if (segment.readOffset < segment.writeOffset)
+			{
+				return readRecord(segment);
+			}
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Returns whether the spool has messages not read yet.
+	 * @return True if so, otherwise false.
+	 */
+	synchronized boolean hasUnread()
+	{
+		for (Segment segment : m_segments)
+		{
+			if (segment.readOffset < segment.writeOffset)
+			{
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Returns the count of bytes in the spool not confirmed yet.
+	 * @return Count.
+	 */
+	synchronized long getUnconfirmedBytes()
+	{
+		long retval = 0;
+		
+		for (Segment segment : m_segments)
+		{
+			retval += segment.writeOffset - segment.confirmedOffset;
+		}
+		
+		return retval;
+	}
+	
+	/**
+	 * Closes the spool. The messages not confirmed remain in the files.
+	 * Messages read but not confirmed yet will be read again the next time.
+	 */
+	synchronized void close()
+	{
+		if (m_closed)
+		{
+			return;
+		}
+		
+		m_closed = true;
+		
+		for (Segment segment : m_segments)
+		{
+			// Writing to disk in case the operating system fails as well
+			segment.buffer.force();
+			segment.close();
+		}
+		
+		m_segments.clear();
+		
+		try {
+			m_lock.release();
+			m_lockFile.close();
+		} catch (IOException ignore) {}
+	}
+	
+	private MessageToBeSent readRecord(Segment segment)
+	{
+		ByteBuffer buf = segment.buffer;
+		int offset = segment.readOffset;
+		int recordLength = buf.getInt(offset);
+		int topicLength = buf.getShort(offset + 4) & 0xffff;
+		
+		byte[] topicBytes = new byte[topicLength];
+		
+		ByteBuffer dup = buf.duplicate();
+		dup.position(offset + 6);
+		dup.get(topicBytes);
+		
+		int typeLength = dup.getShort() & 0xffff;
+		String type = null;
+		
+		if (typeLength != 0xffff)
+		{
+			byte[] typeBytes = new byte[typeLength];
+			dup.get(typeBytes);
+			type = new String(typeBytes, StandardCharsets.UTF_8);
+		}
+		else
+		{
+			typeLength = 0;
+		}
+		
+		byte[] body = new byte[recordLength - 4 - topicLength - typeLength];
+		dup.get(body);
+		
+		int end = offset + 4 + recordLength;
+		segment.readOffset = end;
+		
+		PendingRecord pending = new PendingRecord(segment, end);
+		segment.pendingRecords.add(pending);
+		
+		CompletableFuture<Void> future = segment.futures.remove(offset);
+		return new SpooledMessage(new String(topicBytes, StandardCharsets.UTF_8), type, body, future, pending);
+	}
+	
+	private synchronized void confirm(PendingRecord record)
+	{
+		if (m_closed)
+		{
+			return; // The record will be read again the next time
+		}
+		
+		record.done = true;
+		Segment segment = record.segment;
+		
+		// Advancing the confirmed offset over the records confirmed in a row
+		while (!segment.pendingRecords.isEmpty() && segment.pendingRecords.peek().done)
+		{
+			segment.confirmedOffset = segment.pendingRecords.poll().end;
+		}
+		
+		segment.buffer.putLong(ConfirmedOffsetPosition, segment.confirmedOffset);
+		
+		// Deleting the oldest segments once entirely confirmed. The segment
+		// being written is deleted as well, and the next append creates a new one.
+		while (!m_segments.isEmpty())
+		{
+			Segment oldest = m_segments.peek();
+			
+			if (oldest.confirmedOffset < oldest.writeOffset)
+			{
+				break;
+			}
+			
+			m_segments.poll();
+			oldest.close();
+			
+			if (!oldest.file.delete())
+			{
+				// Marking it confirmed is enough, because the offsets are in the header
+				oldest.file.deleteOnExit();
+			}
+		}
+	}
+	
+	private void openExistingSegments() throws IOException
+	{
+		File[] files = m_directory.listFiles();
+		
+		if (files == null)
+		{
+			throw new IOException("Failed to list spool directory " + m_directory);
+		}
+		
+		// The names have a fixed-width number, so the alphabetical order is the creation order
+		Arrays.sort(files);
+		
+		for (File f : files)
+		{
+			String name = f.getName();
+			
+			if (!name.startsWith(FilePrefix) || !name.endsWith(FileSuffix))
+			{
+				continue;
+			}
+			
+			long number = Long.parseLong(name.substring(FilePrefix.length(), name.length() - FileSuffix.length()));
+			m_nextSegmentNumber = Math.max(m_nextSegmentNumber, number + 1);
+			
+			Segment segment = new Segment(f, mapFile(f, f.length()));
+			ByteBuffer buf = segment.buffer;
+			
+			if (buf.capacity() < HeaderSize || buf.getInt(0) != Magic || buf.getInt(4) != Version)
+			{
+				throw new IOException("Invalid spool file " + f);
+			}
+			
+			segment.writeOffset = (int)buf.getLong(WriteOffsetPosition);
+			segment.confirmedOffset = (int)buf.getLong(ConfirmedOffsetPosition);
+			segment.readOffset = segment.confirmedOffset;
+			
+			if (segment.confirmedOffset >= segment.writeOffset)
+			{
+				// Nothing left to send
+				segment.close();
+				f.delete();
+				continue;
+			}
+			
+			m_segments.add(segment);
+		}
+	}
+	
+	private Segment createSegment(int size) throws IOException
+	{
+		String name = String.format("%s%019d%s", FilePrefix, m_nextSegmentNumber++, FileSuffix);
+		File f = new File(m_directory, name);
+		
+		Segment segment = new Segment(f, mapFile(f, size));
+		segment.buffer.putInt(0, Magic);
+		segment.buffer.putInt(4, Version);
+		segment.buffer.putLong(WriteOffsetPosition, HeaderSize);
+		segment.buffer.putLong(ConfirmedOffsetPosition, HeaderSize);
+		
+		m_segments.add(segment);
+		return segment;
+	}
+	
+	private static MappedByteBuffer mapFile(File f, long size) throws IOException
+	{
+		// The mapping remains valid after the file has been closed
+		try (RandomAccessFile raf = new RandomAccessFile(f, "rw"))
+		{
+			raf.setLength(size);
+			return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+		}
+	}
+	
+	/**
+	 * Unmaps a buffer right away instead of waiting for the garbage collector.
+	 * Otherwise, the file cannot be deleted on Windows. The JDK offers no public
+	 * API for this, so this uses reflection and gives up silently on failure.
+	 * @param buffer Buffer.
+	 */
+	private static void unmap(MappedByteBuffer buffer)
+	{
+		try
+		{
+			// Java 9 and later
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			invokeCleaner.invoke(theUnsafe.get(null), buffer);
+		}
+		catch (NoSuchMethodException e)
+		{
+			try
+			{
+				// Java 8
+				Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+				cleanerMethod.setAccessible(true);
+				Object cleaner = cleanerMethod.invoke(buffer);
+				cleaner.getClass().getMethod("clean").invoke(cleaner);
+			}
+			catch (Exception ignore) {}
+		}
+		catch (Exception ignore) {}
+	}
+	
+	private void expectNotClosed() throws IOException
+	{
+		if (m_closed)
+		{
+			throw new IOException("The spool has been closed");
+		}
+	}
+	
+	
+	private static class Segment
+	{
+		final File file;
+		final MappedByteBuffer buffer;
+		int writeOffset = HeaderSize;
+		int readOffset = HeaderSize;
+		int confirmedOffset = HeaderSize;
+		
+		// Records read but not confirmed yet in the order they were read
+		final ArrayDeque<PendingRecord> pendingRecords = new ArrayDeque<>();
+		
+		// The futures of the messages appended during this session by offset
+		final HashMap<Integer, CompletableFuture<Void>> futures = new HashMap<>();
+		
+		
+		Segment(File f, MappedByteBuffer buf)
+		{
+			file = f;
+			buffer = buf;
+		}
+		
+		void close()
+		{
+			unmap(buffer);
+		}
+	}
+	
+	private static class PendingRecord
+	{
+		final Segment segment;
+		final int end;
+		boolean done = false;
+		
+		
+		PendingRecord(Segment s, int e)
+		{
+			segment = s;
+			end = e;
+		}
+	}
+	
+	/**
+	 * A message read from the spool. Completing it confirms it in the spool.
+	 */
+	private class SpooledMessage extends MessageToBeSent
+	{
+		private final PendingRecord m_record;
+		
+		
+		SpooledMessage(String t, String ty, byte[] b, CompletableFuture<Void> f, PendingRecord record)
+		{
+			super(t, ty, b, f);
+			m_record = record;
+		}
+		
+		@Override
+		void complete()
+		{
+			super.complete();
+			confirm(m_record);
+		}
+		
+		@Override
+		boolean isSpooled()
+		{
+			return true;
+		}
+	}
+}
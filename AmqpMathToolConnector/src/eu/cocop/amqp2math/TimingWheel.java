@@ -0,0 +1,191 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * A hashed timing wheel to expire items. The time is divided into ticks, and
+ * each item goes to the slot of the tick of its deadline modulo the count of
+ * slots. Scheduling and cancelling take constant time regardless of the count
+ * of items, and advancing the time only visits the slots of the elapsed ticks.
+ * The items expire at most one tick late.
+ *
+ * The owner advances the wheel periodically and handles the items that have
+ * expired. Objects of this class are thread-safe.
+ * @author Petri Kannisto
+ * @param <T> Item type.
+ */
+final class TimingWheel<T>
+{
+	private final long m_tick_ms;
+	private final long m_start_ms;
+	private final int m_mask;
+	
+	// Mutual exclusion: use this object as the lock for the variables below
+	private final ArrayList<LinkedList<Timeout<T>>> m_slots;
+	private long m_currentTick = 0;
+	private int m_size = 0;
+	
+	
+	/**
+	 * Constructor.
+	 * @param tick_ms The length of a tick in milliseconds.
+	 * @param slotCount The count of slots. This is rounded up to a power of two.
+	 * @param now_ms The current time in milliseconds.
+	 * @exception IllegalArgumentException Thrown if the tick or slot count is not positive.
+	 */
+	TimingWheel(long tick_ms, int slotCount, long now_ms)
+	{
+		if (tick_ms < 1)
+		{
+			throw new IllegalArgumentException("The tick must be positive");
+		}
+		
+		if (slotCount < 1 || slotCount > (1 << 20))
+		{
+			throw new IllegalArgumentException("The slot count must be between 1 and 2^20");
+		}
+		
+		// A power of two enables masking instead of modulo
+		int size = Integer.highestOneBit(slotCount);
+		
+		if (size < slotCount)
+		{
+			size <<= 1;
+		}
+		
+		m_tick_ms = tick_ms;
+		m_start_ms = now_ms;
+		m_mask = size - 1;
+		m_slots = new ArrayList<>(size);
+		
+		for (int i = 0; i < size; ++i)
+		{
+			m_slots.add(new LinkedList<Timeout<T>>());
+		}
+	}
+	
+	/**
+	 * Schedules an item to expire.
+	 * @param item Item.
+	 * @param delay_ms Delay in milliseconds.
+	 * @param now_ms The current time in milliseconds.
+	 * @return Timeout that can be cancelled.
+	 */
+	synchronized Timeout<T> schedule(T item, long delay_ms, long now_ms)
+	{
+		// Rounding up so that the item never expires early. The deadline
+		// cannot be in a tick that has been processed already.
+		long deadline_ms = now_ms + Math.max(delay_ms, 0) - m_start_ms;
+		long deadlineTick = Math.max((deadline_ms + m_tick_ms - 1) / m_tick_ms, m_currentTick + 1);
+		
+		Timeout<T> timeout = new Timeout<>(item, deadlineTick);
+		m_slots.get((int)(deadlineTick & m_mask)).add(timeout);
+		++m_size;
+		return timeout;
+	}
+	
+	/**
+	 * Advances the time and removes the items that have expired.
+	 * @param now_ms The current time in milliseconds.
+	 * @return The items that have expired, in no particular order. Cancelled items are not included.
+	 */
+	synchronized List<T> advance(long now_ms)
+	{
+		ArrayList<T> retval = new ArrayList<>();
+		long targetTick = (now_ms - m_start_ms) / m_tick_ms;
+		
+		if (targetTick <= m_currentTick)
+		{
+			return retval;
+		}
+		
+		// If more ticks have elapsed than there are slots, each slot is visited once
+		long steps = Math.min(targetTick - m_currentTick, m_slots.size());
+		
+		for (long step = 1; step <= steps; ++step)
+		{
+			LinkedList<Timeout<T>> slot = m_slots.get((int)((m_currentTick + step) & m_mask));
+			
+			for (Iterator<Timeout<T>> iter = slot.iterator(); iter.hasNext(); )
+			{
+				Timeout<T> timeout = iter.next();
+				
+				if (timeout.isCancelled())
+				{
+					iter.remove();
+					--m_size;
+				}
+				else if (timeout.deadlineTick <= targetTick)
+				{
+					// Later rounds of the wheel remain in the slot
+					iter.remove();
+					--m_size;
+					retval.add(timeout.item);
+				}
+			}
+		}
+		
+		m_currentTick = targetTick;
+		return retval;
+	}
+	
+	/**
+	 * Returns the count of items in the wheel. Cancelled items are included
+	 * until their slot is visited.
+	 * @return Count.
+	 */
+	synchronized int size()
+	{
+		return m_size;
+	}
+	
+	
+	/**
+	 * A scheduled item.
+	 * @param <T> Item type.
+	 */
+	static final class Timeout<T>
+	{
+		private final T item;
+		private final long deadlineTick;
+		private volatile boolean m_cancelled = false;
+		
+		
+		private Timeout(T i, long tick)
+		{
+			item = i;
+			deadlineTick = tick;
+		}
+		
+		/**
+		 * Cancels the timeout. The item is removed once its slot is visited.
+		 */
+		void cancel()
+		{
+			m_cancelled = true;
+		}
+		
+		/**
+		 * Returns whether the timeout has been cancelled.
+		 * @return True if cancelled, otherwise false.
+		 */
+		boolean isCancelled()
+		{
+			return m_cancelled;
+		}
+	}
+}
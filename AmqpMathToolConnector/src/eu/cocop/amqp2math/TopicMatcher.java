@@ -0,0 +1,150 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Matches routing keys against AMQP topic patterns. In a pattern, the words
+ * are separated by dots, "*" matches exactly one word and "#" matches zero or
+ * more words, e.g., "plant.*.temperature" or "plant.#". The patterns are
+ * compiled into a trie, so a match takes time in proportion to the length of
+ * the routing key rather than the count of patterns. The object is immutable
+ * and thus thread-safe.
+ * @author Petri Kannisto
+ * @param <T> The type of the values associated with the patterns.
+ */
+final class TopicMatcher<T>
+{
+	private final Node<T> m_root = new Node<>();
+	
+	
+	/**
+	 * Constructor.
+	 * @param patterns Patterns and their values.
+	 */
+	TopicMatcher(Map<String, T> patterns)
+	{
+		for (Map.Entry<String, T> entry : patterns.entrySet())
+		{
+			Node<T> node = m_root;
+			
+			for (String word : splitWords(entry.getKey()))
+			{
+				node = node.getOrCreateChild(word);
+			}
+			
+			node.values.add(entry.getValue());
+		}
+	}
+	
+	/**
+	 * Returns the values of all patterns that match a routing key.
+	 * @param routingKey Routing key.
+	 * @return Matching values without duplicates. This is empty if none matches.
+	 */
+	List<T> match(String routingKey)
+	{
+		ArrayList<T> retval = new ArrayList<>(1);
+		match(m_root, splitWords(routingKey), 0, retval);
+		return retval;
+	}
+	
+	private static <T> void match(Node<T> node, String[] words, int index, List<T> results)
+	{
+		if (node.hashChild != null)
+		{
+			// "#" matches zero or more words, so trying each possible remainder
+			for (int i = index; i <= words.length; ++i)
+			{
+				match(node.hashChild, words, i, results);
+			}
+		}
+		
+		if (index == words.length)
+		{
+			// The end of the routing key
+			for (T value : node.values)
+			{
+				if (!results.contains(value))
+				{
+					results.add(value);
+				}
+			}
+			
+			return;
+		}
+		
+		Node<T> exact = node.children.get(words[index]);
+		
+		if (exact != null)
+		{
+			match(exact, words, index + 1, results);
+		}
+		
+		if (node.starChild != null)
+		{
+			match(node.starChild, words, index + 1, results);
+		}
+	}
+	
+	private static String[] splitWords(String s)
+	{
+		// The "-1" retains empty words, e.g., in "a..b", like AMQP does
+		return s.split("\\.", -1);
+	}
+	
+	
+	private static class Node<T>
+	{
+		final HashMap<String, Node<T>> children = new HashMap<>();
+		Node<T> starChild = null;
+		Node<T> hashChild = null;
+		
+		// The values of the patterns that end at this node
+		final ArrayList<T> values = new ArrayList<>(1);
+		
+		
+		Node<T> getOrCreateChild(String word)
+		{
+			switch (word)
+			{
+			case "*":
+				if (starChild == null)
+				{
+					starChild = new Node<>();
+				}
+				return starChild;
+			
+			case "#":
+				if (hashChild == null)
+				{
+					hashChild = new Node<>();
+				}
+				return hashChild;
+			
+			default:
+				Node<T> child = children.get(word);
+				
+				if (child == null)
+				{
+					child = new Node<>();
+					children.put(word, child);
+				}
+				return child;
+			}
+		}
+	}
+}
@@ -0,0 +1,50 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+/**
+ * A snapshot of the statistics of a subscribed topic. See TopicStatisticsMXBean
+ * for the meaning of each member.
+ * @author Petri Kannisto
+ */
+public final class TopicStatistics
+{
+	public final String topic;
+	public final long messagesDelivered;
+	public final double deliveryRate;
+	public final int inboundQueueSize;
+	public final long droppedMessages;
+	public final long conflatedMessages;
+	public final double listenerTimeMean_ms;
+	public final double listenerTimeP99_ms;
+	public final double deliveryLatencyMean_ms;
+	public final double deliveryLatencyP99_ms;
+	
+	
+	/**
+	 * Constructor.
+	 * @param source The source of the values.
+	 */
+	TopicStatistics(TopicStatisticsMXBean source)
+	{
+		topic = source.getTopic();
+		messagesDelivered = source.getMessagesDelivered();
+		deliveryRate = source.getDeliveryRate();
+		inboundQueueSize = source.getInboundQueueSize();
+		droppedMessages = source.getDroppedMessages();
+		conflatedMessages = source.getConflatedMessages();
+		listenerTimeMean_ms = source.getListenerTimeMean_ms();
+		listenerTimeP99_ms = source.getListenerTimeP99_ms();
+		deliveryLatencyMean_ms = source.getDeliveryLatencyMean_ms();
+		deliveryLatencyP99_ms = source.getDeliveryLatencyP99_ms();
+	}
+}
@@ -0,0 +1,81 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+/**
+ * The statistics of a subscribed topic as a JMX MXBean. The object name is
+ * "eu.cocop.amqp2math:type=AmqpConnector,id=(number),topic=(quoted topic)".
+ * The durations are in milliseconds, and the rates are per second.
+ * @author Petri Kannisto
+ */
+public interface TopicStatisticsMXBean
+{
+	/**
+	 * The topic (pattern).
+	 * @return Topic.
+	 */
+	String getTopic();
+	
+	/**
+	 * The count of messages delivered to the listeners.
+	 * @return Count.
+	 */
+	long getMessagesDelivered();
+	
+	/**
+	 * The count of messages delivered per second, measured over the latest second.
+	 * @return Rate.
+	 */
+	double getDeliveryRate();
+	
+	/**
+	 * The count of messages waiting for the listeners.
+	 * @return Count.
+	 */
+	int getInboundQueueSize();
+	
+	/**
+	 * The count of messages dropped because the inbound queue was full.
+	 * @return Count.
+	 */
+	long getDroppedMessages();
+	
+	/**
+	 * The count of messages replaced by newer ones in the conflation mode.
+	 * @return Count.
+	 */
+	long getConflatedMessages();
+	
+	/**
+	 * The mean time the listeners take per message or batch.
+	 * @return Time in milliseconds.
+	 */
+	double getListenerTimeMean_ms();
+	
+	/**
+	 * The 99th percentile of the listener time (approximate).
+	 * @return Time in milliseconds.
+	 */
+	double getListenerTimeP99_ms();
+	
+	/**
+	 * The mean time from receiving a message from the broker until the listeners have completed it.
+	 * @return Time in milliseconds.
+	 */
+	double getDeliveryLatencyMean_ms();
+	
+	/**
+	 * The 99th percentile of the delivery latency (approximate).
+	 * @return Time in milliseconds.
+	 */
+	double getDeliveryLatencyP99_ms();
+}
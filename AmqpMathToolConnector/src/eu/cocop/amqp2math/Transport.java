@@ -0,0 +1,56 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import java.io.IOException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Opens connections to a message broker. The connector uses the broker only
+ * through this interface, so the broker can be either an AMQP server
+ * (AmqpTransport) or an in-process broker (LoopbackBroker).
+ * @author Petri Kannisto
+ */
+interface Transport
+{
+	/**
+	 * Returns a key that identifies the connections with the given properties.
+	 * The connectors that have the same key share a connection.
+	 * @param props Properties.
+	 * @return Key.
+	 */
+	String getConnectionKey(AmqpPropsManager props);
+	
+	/**
+	 * Opens a connection.
+	 * @param props Properties.
+	 * @return Connection.
+	 * @throws CommunicationException Thrown if the connection properties are invalid.
+	 * @throws IOException Thrown if connecting fails.
+	 * @throws TimeoutException Thrown if connecting times out.
+	 */
+	TransportConnection connect(AmqpPropsManager props) throws CommunicationException, IOException, TimeoutException;
+	
+	
+	/**
+	 * Listener for the shutdown of a connection or channel.
+	 * @author Petri Kannisto
+	 */
+	interface ShutdownHandler
+	{
+		/**
+		 * Called once the connection or channel has shut down.
+		 * @param initiatedByApplication Whether the application closed it (rather than a failure).
+		 */
+		void shutdownCompleted(boolean initiatedByApplication);
+	}
+}
@@ -0,0 +1,163 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import java.io.IOException;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+
+/**
+ * A channel of a transport connection. This covers the AMQP 0-9-1 operations
+ * that the connector uses. Publishing to a channel that has closed throws
+ * an IOException. Only one thread may publish to a channel at a time.
+ * @author Petri Kannisto
+ */
+interface TransportChannel
+{
+	/**
+	 * The pseudo-queue of direct reply-to. A channel that consumes this
+	 * with automatic acks can publish requests with this as the reply address,
+	 * and the replies arrive to the consumer without a queue.
+	 */
+	String DirectReplyTo = "amq.rabbitmq.reply-to";
+	
+	
+	/**
+	 * Declares a topic exchange unless it exists already.
+	 * @param exchange Exchange name.
+	 * @param durable Whether the exchange survives a broker restart.
+	 * @param autoDelete Whether the exchange is deleted once no queue is bound to it.
+	 * @throws IOException Thrown if an error occurs.
+	 */
+	void exchangeDeclare(String exchange, boolean durable, boolean autoDelete) throws IOException;
+	
+	/**
+	 * Declares a queue with a generated name. The queue is exclusive to the
+	 * connection, and it is deleted once its consumer is gone.
+	 * @return Queue name.
+	 * @throws IOException Thrown if an error occurs.
+	 */
+	String queueDeclare() throws IOException;
+	
+	/**
+	 * Binds a queue to an exchange.
+	 * @param queue Queue name.
+	 * @param exchange Exchange name.
+	 * @param routingKey Topic pattern.
+	 * @param wait Whether to wait for the broker to reply. If not, a failure closes the channel later.
+	 * @throws IOException Thrown if an error occurs.
+	 */
+	void queueBind(String queue, String exchange, String routingKey, boolean wait) throws IOException;
+	
+	/**
+	 * Unbinds a queue from an exchange.
+	 * @param queue Queue name.
+	 * @param exchange Exchange name.
+	 * @param routingKey Topic pattern.
+	 * @throws IOException Thrown if an error occurs.
+	 */
+	void queueUnbind(String queue, String exchange, String routingKey) throws IOException;
+	
+	/**
+	 * Limits the deliveries not acked yet on the channel. This can be changed
+	 * while consuming.
+	 * @param prefetch Limit.
+	 * @throws IOException Thrown if an error occurs.
+	 */
+	void basicQos(int prefetch) throws IOException;
+	
+	/**
+	 * Starts consuming a queue.
+	 * @param queue Queue name.
+	 * @param autoAck Whether the broker considers messages acked once delivered.
+	 * @param handler Receives the deliveries.
+	 * @throws IOException Thrown if an error occurs.
+	 */
+	void basicConsume(String queue, boolean autoAck, DeliveryHandler handler) throws IOException;
+	
+	/**
+	 * Acks deliveries.
+	 * @param deliveryTag Delivery tag.
+	 * @param multiple Whether to ack all deliveries up to the tag.
+	 * @throws IOException Thrown if an error occurs.
+	 */
+	void basicAck(long deliveryTag, boolean multiple) throws IOException;
+	
+	/**
+	 * Enables publisher confirms.
+	 * @param handler Receives the confirms.
+	 * @throws IOException Thrown if an error occurs.
+	 */
+	void confirmSelect(ConfirmHandler handler) throws IOException;
+	
+	/**
+	 * Returns the sequence number of the next message published in the confirm mode.
+	 * @return Sequence number.
+	 */
+	long getNextPublishSeqNo();
+	
+	/**
+	 * Publishes a message.
+	 * @param exchange Exchange name.
+	 * @param routingKey Routing key.
+	 * @param props Message properties.
+	 * @param body Message body.
+	 * @throws IOException Thrown if an error occurs, including a closed channel.
+	 */
+	void basicPublish(String exchange, String routingKey, BasicProperties props, byte[] body) throws IOException;
+	
+	/**
+	 * Adds a listener for the shutdown of the channel.
+	 * @param handler Listener.
+	 */
+	void addShutdownHandler(Transport.ShutdownHandler handler);
+	
+	/**
+	 * Closes the channel.
+	 * @throws IOException Thrown if closing fails.
+	 */
+	void close() throws IOException;
+	
+	
+	/**
+	 * Receives deliveries from a consumer.
+	 * @author Petri Kannisto
+	 */
+	interface DeliveryHandler
+	{
+		/**
+		 * Called for each delivery. The deliveries of a channel are handled
+		 * one at a time in order.
+		 * @param deliveryTag Delivery tag.
+		 * @param routingKey Routing key.
+		 * @param properties Message properties.
+		 * @param body Message body.
+		 * @throws IOException Thrown if an error occurs.
+		 */
+		void handleDelivery(long deliveryTag, String routingKey, BasicProperties properties, byte[] body) throws IOException;
+	}
+	
+	/**
+	 * Receives publisher confirms.
+	 * @author Petri Kannisto
+	 */
+	interface ConfirmHandler
+	{
+		/**
+		 * Called when the broker has confirmed messages.
+		 * @param deliveryTag The sequence number of the message.
+		 * @param multiple Whether all messages up to the sequence number are confirmed.
+		 * @param ack True if acked, false if nacked.
+		 */
+		void handleConfirm(long deliveryTag, boolean multiple, boolean ack);
+	}
+}
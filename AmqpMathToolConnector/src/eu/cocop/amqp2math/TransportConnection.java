@@ -0,0 +1,52 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import java.io.IOException;
+
+/**
+ * A connection to a message broker. Implementations must be thread-safe.
+ * @author Petri Kannisto
+ */
+interface TransportConnection
+{
+	/**
+	 * Creates a channel.
+	 * @return Channel.
+	 * @throws IOException Thrown if the connection is closed or the broker refuses.
+	 */
+	TransportChannel createChannel() throws IOException;
+	
+	/**
+	 * Returns whether the connection is open.
+	 * @return True if so, otherwise false.
+	 */
+	boolean isOpen();
+	
+	/**
+	 * Adds a listener for the shutdown of the connection.
+	 * @param handler Listener.
+	 */
+	void addShutdownHandler(Transport.ShutdownHandler handler);
+	
+	/**
+	 * Removes a shutdown listener.
+	 * @param handler Listener.
+	 */
+	void removeShutdownHandler(Transport.ShutdownHandler handler);
+	
+	/**
+	 * Closes the connection and its channels.
+	 * @throws IOException Thrown if closing fails.
+	 */
+	void close() throws IOException;
+}
@@ -0,0 +1,32 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+
+/**
+ * Entry point for the benchmarks. Without arguments, this runs all of them.
+ * The arguments are those of JMH; for example, "-h" prints help, and
+ * "NotifierBenchmark -p listenerCount=10" runs one benchmark with one parameter value.
+ * @author Petri Kannisto
+ */
+public class BenchmarkProgram
+{
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException
+	{
+		// Without any includes, JMH runs all benchmarks on the classpath
+		new Runner(new CommandLineOptions(args)).run();
+	}
+}
@@ -0,0 +1,70 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Benchmarks how fast a notifier dispatches messages to 1 to 50 listeners.
+ * The inbound queue blocks when full, so the throughput of enqueueing
+ * equals that of the dispatch thread once the queue has filled up.
+ * @author Petri Kannisto
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NotifierBenchmark
+{
+	@Param({ "1", "10", "50" })
+	public int listenerCount;
+	
+	private Notifier m_notifier;
+	private final byte[] m_body = new byte[256];
+	
+	// The listeners write here so that the JIT cannot remove them
+	private volatile byte[] m_sink = null;
+	
+	
+	@Setup
+	public void setUp()
+	{
+		m_notifier = new Notifier("bench.topic", 1024, OverflowPolicy.BLOCK);
+		
+		for (int i = 0; i < listenerCount; ++i)
+		{
+			m_notifier.addListener(event -> m_sink = event.message);
+		}
+	}
+	
+	@TearDown
+	public void tearDown()
+	{
+		m_notifier.close();
+	}
+	
+	@Benchmark
+	public void dispatch() throws IOException, InterruptedException
+	{
+		m_notifier.enqueue(new InboundDelivery("bench.topic", m_body, 0, null, 0));
+	}
+}
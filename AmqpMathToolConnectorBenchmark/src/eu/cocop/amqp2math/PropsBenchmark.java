@@ -0,0 +1,60 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks the construction of the connection URL.
+ * @author Petri Kannisto
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PropsBenchmark
+{
+	@Param({ "false", "true" })
+	public boolean secure;
+	
+	@Param({ "false", "true" })
+	public boolean explicitPort;
+	
+	private AmqpPropsManager m_props;
+	
+	
+	@Setup
+	public void setUp()
+	{
+		m_props = new AmqpPropsManager("broker.example.com", "bench", "user", "pwd");
+		m_props.setSecure(secure);
+		
+		if (explicitPort)
+		{
+			m_props.setPort(5673);
+		}
+	}
+	
+	@Benchmark
+	public String getUrl()
+	{
+		return m_props.getUrl();
+	}
+}
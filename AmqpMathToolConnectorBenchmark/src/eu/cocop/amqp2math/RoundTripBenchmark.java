@@ -0,0 +1,93 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Benchmarks the latency of a publish/consume round trip through an
+ * AmqpConnector connected to the in-process loopback broker. A message goes
+ * through sendMessage, the send queue, a publish lane, the broker, the
+ * consumer and the notifier to the listener. Each operation sends one
+ * message and waits until the listener has received it. No network is
+ * involved, so this measures the overhead of the connector itself.
+ * @author Petri Kannisto
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RoundTripBenchmark
+{
+	private static final String Topic = "bench.topic";
+	
+	@Param({ "64", "65536" })
+	public int bodySize;
+	
+	private LoopbackBroker m_broker;
+	private AmqpConnector m_connector;
+	private byte[] m_body;
+	
+	private final AtomicLong m_received = new AtomicLong(0);
+	private long m_sent = 0;
+	
+	
+	@Setup
+	public void setUp() throws CommunicationException
+	{
+		m_body = new byte[bodySize];
+		m_broker = new LoopbackBroker();
+		
+		AmqpPropsManager props = new AmqpPropsManager("localhost", "bench", "guest", "guest");
+		props.setLoopbackBroker(m_broker);
+		props.setSendQueueOverflowPolicy(OverflowPolicy.BLOCK);
+		
+		m_connector = new AmqpConnector(props, Topic);
+		m_connector.getNotifierForTopic(Topic).addListener(event -> m_received.incrementAndGet());
+		
+		// The connector connects in the background, and the messages sent
+		// meanwhile wait in the send queue. Waiting for the first round trip
+		// keeps the connecting out of the measurements.
+		roundTrip();
+	}
+	
+	@TearDown
+	public void tearDown()
+	{
+		m_connector.close();
+	}
+	
+	@Benchmark
+	public long roundTrip()
+	{
+		long expected = ++m_sent;
+		m_connector.sendMessage(Topic, m_body);
+		
+		// Spinning, because parking would dominate the latency
+		while (m_received.get() < expected)
+		{
+			Thread.yield();
+		}
+		
+		return expected;
+	}
+}
@@ -0,0 +1,99 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Benchmarks the throughput of AmqpConnector.sendMessage with 1 to 16
+ * producer threads. No broker listens to the port, so this measures the
+ * enqueueing only. Once the send queue is full, each send drops the oldest
+ * message, which is the steady state of a long outage.
+ * @author Petri Kannisto
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SendMessageBenchmark
+{
+	@Param({ "64", "4096" })
+	public int bodySize;
+	
+	private AmqpConnector m_connector;
+	private byte[] m_body;
+	
+	
+	@Setup
+	public void setUp() throws CommunicationException
+	{
+		AmqpPropsManager props = new AmqpPropsManager("localhost", "bench", "guest", "guest");
+		props.setSecure(false);
+		props.setPort(1); // Nothing listens here
+		props.setReconnectDelay(60000, 60000);
+		props.setSendQueueOverflowPolicy(OverflowPolicy.DROP_OLDEST);
+		
+		m_connector = new AmqpConnector(props);
+		m_body = new byte[bodySize];
+	}
+	
+	@TearDown
+	public void tearDown()
+	{
+		m_connector.close();
+	}
+	
+	@Benchmark
+	@Threads(1)
+	public void threads01(ProducerState producer)
+	{
+		m_connector.sendMessage(producer.topic, m_body);
+	}
+	
+	@Benchmark
+	@Threads(4)
+	public void threads04(ProducerState producer)
+	{
+		m_connector.sendMessage(producer.topic, m_body);
+	}
+	
+	@Benchmark
+	@Threads(16)
+	public void threads16(ProducerState producer)
+	{
+		m_connector.sendMessage(producer.topic, m_body);
+	}
+	
+	
+	/**
+	 * Each producer thread sends to a topic of its own, so the producers
+	 * spread over the publish lanes like in a real application.
+	 */
+	@State(Scope.Thread)
+	public static class ProducerState
+	{
+		private static final AtomicInteger s_counter = new AtomicInteger(0);
+		
+		public final String topic = "bench.producer" + s_counter.getAndIncrement();
+	}
+}
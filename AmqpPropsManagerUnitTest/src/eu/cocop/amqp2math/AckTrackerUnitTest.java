@@ -0,0 +1,210 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+
+public class AckTrackerUnitTest
+{
+	private static final long Millisecond_ns = 1000L * 1000;
+	
+	
+	@Test
+	public void acksInBatches() throws Exception
+	{
+		// Prefetch 8 -> batches of 2
+		RecordingChannel channel = new RecordingChannel();
+		AckTracker testObject = new AckTracker(channel, 8, false);
+		assertEquals("[8]", channel.qos.toString());
+		
+		testObject.complete(1, 0);
+		assertTrue(channel.acks.isEmpty());
+		
+		// One ack with the "multiple" flag for both
+		testObject.complete(2, 0);
+		assertEquals("[2]", channel.acks.toString());
+	}
+	
+	@Test
+	public void acksOnlyContiguous() throws Exception
+	{
+		RecordingChannel channel = new RecordingChannel();
+		AckTracker testObject = new AckTracker(channel, 8, false);
+		
+		// 1 is still in progress, so nothing can be acked
+		testObject.complete(2, 0);
+		testObject.complete(3, 0);
+		testObject.complete(4, 0);
+		assertTrue(channel.acks.isEmpty());
+		
+		testObject.complete(1, 0);
+		assertEquals("[4]", channel.acks.toString());
+		
+		// The tracker continues from the next tag
+		testObject.complete(6, 0);
+		testObject.complete(5, 0);
+		assertEquals("[4, 6]", channel.acks.toString());
+	}
+	
+	@Test
+	public void flushAcksBelowBatchSize() throws Exception
+	{
+		RecordingChannel channel = new RecordingChannel();
+		AckTracker testObject = new AckTracker(channel, 8, false);
+		
+		testObject.complete(1, 0);
+		testObject.complete(3, 0);
+		
+		// Only up to the gap
+		testObject.flush();
+		assertEquals("[1]", channel.acks.toString());
+		
+		// Nothing more to ack
+		testObject.flush();
+		assertEquals("[1]", channel.acks.toString());
+	}
+	
+	@Test
+	public void adaptivePrefetchGrowsForFastListeners() throws Exception
+	{
+		RecordingChannel channel = new RecordingChannel();
+		AckTracker testObject = new AckTracker(channel, 10, true);
+		
+		// 1 ms per message -> 200 messages would fill the target buffer,
+		// but the maximum is ten times the initial value
+		completeMany(testObject, 1, 100, Millisecond_ns);
+		assertEquals(100, testObject.getPrefetch());
+		assertEquals("[10, 100]", channel.qos.toString());
+	}
+	
+	@Test
+	public void adaptivePrefetchShrinksForSlowListeners() throws Exception
+	{
+		RecordingChannel channel = new RecordingChannel();
+		AckTracker testObject = new AckTracker(channel, 10, true);
+		
+		// 1 s per message -> the minimum of 1
+		completeMany(testObject, 1, 100, 1000 * Millisecond_ns);
+		assertEquals(1, testObject.getPrefetch());
+	}
+	
+	@Test
+	public void adaptivePrefetchIgnoresSmallChanges() throws Exception
+	{
+		RecordingChannel channel = new RecordingChannel();
+		AckTracker testObject = new AckTracker(channel, 10, true);
+		
+		// 22 ms per message -> 10 is close enough to the target of 10
+		completeMany(testObject, 1, 100, 22 * Millisecond_ns);
+		assertEquals(10, testObject.getPrefetch());
+		assertEquals("[10]", channel.qos.toString());
+	}
+	
+	private void completeMany(AckTracker tracker, long firstTag, int count, long latency_ns) throws IOException
+	{
+		for (int i = 0; i < count; ++i)
+		{
+			tracker.complete(firstTag + i, latency_ns);
+		}
+	}
+	
+	
+	/**
+	 * Records the acks and prefetch counts.
+	 */
+	private static class RecordingChannel implements TransportChannel
+	{
+		final ArrayList<Long> acks = new ArrayList<>();
+		final ArrayList<Integer> qos = new ArrayList<>();
+		
+		
+		@Override
+		public void basicAck(long deliveryTag, boolean multiple) throws IOException
+		{
+			assertTrue(multiple);
+			acks.add(deliveryTag);
+		}
+		
+		@Override
+		public void basicQos(int prefetch) throws IOException
+		{
+			qos.add(prefetch);
+		}
+		
+		@Override
+		public void exchangeDeclare(String exchange, boolean durable, boolean autoDelete)
+		{
+			throw new UnsupportedOperationException();
+		}
+		
+		@Override
+		public String queueDeclare()
+		{
+			throw new UnsupportedOperationException();
+		}
+		
+		@Override
+		public void queueBind(String queue, String exchange, String routingKey, boolean wait)
+		{
+			throw new UnsupportedOperationException();
+		}
+		
+		@Override
+		public void queueUnbind(String queue, String exchange, String routingKey)
+		{
+			throw new UnsupportedOperationException();
+		}
+		
+		@Override
+		public void basicConsume(String queue, boolean autoAck, DeliveryHandler handler)
+		{
+			throw new UnsupportedOperationException();
+		}
+		
+		@Override
+		public void confirmSelect(ConfirmHandler handler)
+		{
+			throw new UnsupportedOperationException();
+		}
+		
+		@Override
+		public long getNextPublishSeqNo()
+		{
+			throw new UnsupportedOperationException();
+		}
+		
+		@Override
+		public void basicPublish(String exchange, String routingKey, BasicProperties props, byte[] body)
+		{
+			throw new UnsupportedOperationException();
+		}
+		
+		@Override
+		public void addShutdownHandler(Transport.ShutdownHandler handler)
+		{
+			throw new UnsupportedOperationException();
+		}
+		
+		@Override
+		public void close()
+		{
+			// Nothing to do
+		}
+	}
+}
@@ -0,0 +1,210 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.UUID;
+
+import org.junit.Test;
+
+public class ChunkAssemblerUnitTest
+{
+	@Test
+	public void reassembleInMemory() throws IOException
+	{
+		ChunkAssembler testObject = new ChunkAssembler(1000, 60000);
+		byte[] data = createData(250);
+		UUID id = UUID.randomUUID();
+		
+		assertNull(testObject.add(createChunk(id, 0, false, 250, data, 0, 100)));
+		assertNull(testObject.add(createChunk(id, 1, false, 250, data, 100, 100)));
+		ChunkAssembler.Payload payload = testObject.add(createChunk(id, 2, true, 250, data, 200, 50));
+		
+		assertNotNull(payload);
+		assertNull(payload.file);
+		assertArrayEquals(data, payload.body);
+	}
+	
+	@Test
+	public void reassembleInFile() throws IOException
+	{
+		// The size is unknown, so the payload goes to a file
+		ChunkAssembler testObject = new ChunkAssembler(1000, 60000);
+		byte[] data = createData(150);
+		UUID id = UUID.randomUUID();
+		
+		assertNull(testObject.add(createChunk(id, 0, false, -1, data, 0, 100)));
+		ChunkAssembler.Payload payload = testObject.add(createChunk(id, 1, true, -1, data, 100, 50));
+		
+		try
+		{
+			assertEquals(0, payload.body.length);
+			assertArrayEquals(data, Files.readAllBytes(payload.file.toPath()));
+		}
+		finally
+		{
+			payload.file.delete();
+		}
+	}
+	
+	@Test
+	public void outOfOrderChunks() throws IOException
+	{
+		ChunkAssembler testObject = new ChunkAssembler(1000, 60000);
+		byte[] data = createData(300);
+		UUID id = UUID.randomUUID();
+		
+		// Chunk 1 was resent after a nack, so it arrives last
+		assertNull(testObject.add(createChunk(id, 0, false, 300, data, 0, 100)));
+		assertNull(testObject.add(createChunk(id, 2, true, 300, data, 200, 100)));
+		ChunkAssembler.Payload payload = testObject.add(createChunk(id, 1, false, 300, data, 100, 100));
+		
+		assertNotNull(payload);
+		assertArrayEquals(data, payload.body);
+	}
+	
+	@Test
+	public void firstChunkLast() throws IOException
+	{
+		ChunkAssembler testObject = new ChunkAssembler(1000, 60000);
+		byte[] data = createData(150);
+		UUID id = UUID.randomUUID();
+		
+		// In a file, because the size is unknown
+		assertNull(testObject.add(createChunk(id, 1, true, -1, data, 100, 50)));
+		ChunkAssembler.Payload payload = testObject.add(createChunk(id, 0, false, -1, data, 0, 100));
+		
+		try
+		{
+			assertArrayEquals(data, Files.readAllBytes(payload.file.toPath()));
+		}
+		finally
+		{
+			payload.file.delete();
+		}
+	}
+	
+	@Test
+	public void duplicatesIgnored() throws IOException
+	{
+		ChunkAssembler testObject = new ChunkAssembler(1000, 60000);
+		byte[] data = createData(300);
+		UUID id = UUID.randomUUID();
+		
+		assertNull(testObject.add(createChunk(id, 0, false, 300, data, 0, 100)));
+		assertNull(testObject.add(createChunk(id, 0, false, 300, data, 0, 100)));
+		assertNull(testObject.add(createChunk(id, 2, true, 300, data, 200, 100)));
+		assertNull(testObject.add(createChunk(id, 2, true, 300, data, 200, 100)));
+		
+		ChunkAssembler.Payload payload = testObject.add(createChunk(id, 1, false, 300, data, 100, 100));
+		assertArrayEquals(data, payload.body);
+	}
+	
+	@Test
+	public void chunksAheadLimitedByMemory() throws IOException
+	{
+		// The transfer reserves 300 of 350 bytes, so only 50 bytes can wait
+		ChunkAssembler testObject = new ChunkAssembler(350, 60000);
+		byte[] data = createData(300);
+		UUID id = UUID.randomUUID();
+		
+		testObject.add(createChunk(id, 0, false, 300, data, 0, 100));
+		
+		try
+		{
+			testObject.add(createChunk(id, 2, true, 300, data, 200, 100));
+			fail("Expected exception");
+		}
+		catch (IOException e)
+		{
+			assertTrue(e.getMessage().contains("ahead of chunk 1"));
+		}
+		
+		// The memory has been released
+		UUID id2 = UUID.randomUUID();
+		testObject.add(createChunk(id2, 0, false, 300, data, 0, 100));
+		testObject.add(createChunk(id2, 1, false, 300, data, 100, 100));
+		assertArrayEquals(data, testObject.add(createChunk(id2, 2, true, 300, data, 200, 100)).body);
+	}
+	
+	@Test
+	public void firstChunkNeverArrives() throws IOException, InterruptedException
+	{
+		ChunkAssembler testObject = new ChunkAssembler(1200, 50);
+		byte[] data = createData(900);
+		
+		// Only the held chunks take memory, not the announced size
+		UUID missingFirst = UUID.randomUUID();
+		assertNull(testObject.add(createChunk(missingFirst, 1, false, 900, data, 100, 100)));
+		assertNull(testObject.add(createChunk(missingFirst, 2, false, 900, data, 200, 100)));
+		
+		// So another transfer still fits in memory
+		UUID id = UUID.randomUUID();
+		assertNull(testObject.add(createChunk(id, 0, false, 900, data, 0, 450)));
+		ChunkAssembler.Payload payload = testObject.add(createChunk(id, 1, true, 900, data, 450, 450));
+		assertNull(payload.file);
+		assertArrayEquals(data, payload.body);
+		
+		// The incomplete transfer is discarded after the timeout
+		Thread.sleep(100);
+		assertEquals(1, testObject.expire());
+	}
+	
+	@Test
+	public void transferFromMiddleIgnored() throws IOException
+	{
+		ChunkAssembler testObject = new ChunkAssembler(1000, 60000);
+		byte[] data = createData(100);
+		
+		// Too far ahead to be a reordered chunk
+		assertNull(testObject.add(createChunk(UUID.randomUUID(), 5000, true, -1, data, 0, 100)));
+	}
+	
+	@Test
+	public void expire() throws IOException, InterruptedException
+	{
+		ChunkAssembler testObject = new ChunkAssembler(1000, 10);
+		byte[] data = createData(200);
+		UUID id = UUID.randomUUID();
+		
+		testObject.add(createChunk(id, 0, false, 200, data, 0, 100));
+		assertEquals(0, testObject.expire());
+		
+		Thread.sleep(50);
+		assertEquals(1, testObject.expire());
+		
+		// The last chunk alone is ignored
+		assertNull(testObject.add(createChunk(id, 1, true, 200, data, 100, 100)));
+	}
+	
+	private static byte[] createChunk(UUID id, int seq, boolean last, long totalSize, byte[] data, int offset, int length)
+	{
+		byte[] part = new byte[length];
+		System.arraycopy(data, offset, part, 0, length);
+		return ChunkAssembler.createChunk(id, seq, last, totalSize, part, length);
+	}
+	
+	private static byte[] createData(int length)
+	{
+		byte[] retval = new byte[length];
+		
+		for (int i = 0; i < length; ++i)
+		{
+			retval[i] = (byte)i;
+		}
+		
+		return retval;
+	}
+}
@@ -0,0 +1,159 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class ConfirmTrackerUnitTest
+{
+	@Test
+	public void multipleConfirmsUpToSeqNo()
+	{
+		ConfirmTracker<String> testObject = createTracker(10, 5);
+		
+		// Covers 1-3 at once
+		assertEquals("[m1, m2, m3]", testObject.confirm(3, true).toString());
+		assertEquals(2, testObject.getOutstandingCount());
+		
+		// Nothing left up to 3
+		assertTrue(testObject.confirm(3, true).isEmpty());
+		
+		assertEquals("[m4, m5]", testObject.confirm(5, true).toString());
+		assertEquals(0, testObject.getOutstandingCount());
+	}
+	
+	@Test
+	public void singleConfirm()
+	{
+		ConfirmTracker<String> testObject = createTracker(10, 3);
+		
+		// Only the sequence number itself, even if out of order
+		assertEquals("[m2]", testObject.confirm(2, false).toString());
+		assertTrue(testObject.confirm(2, false).isEmpty());
+		assertEquals("[m1, m3]", testObject.close().toString());
+	}
+	
+	@Test
+	public void confirmAfterNack()
+	{
+		ConfirmTracker<String> testObject = createTracker(10, 4);
+		
+		// A nack of 2 takes it out, so a later multiple ack does not cover it
+		assertEquals("[m2]", testObject.confirm(2, false).toString());
+		assertEquals("[m1, m3]", testObject.confirm(3, true).toString());
+		assertEquals("[m4]", testObject.close().toString());
+	}
+	
+	@Test
+	public void removeFailedPublish()
+	{
+		ConfirmTracker<String> testObject = createTracker(10, 2);
+		
+		testObject.remove(2);
+		assertEquals("[m1]", testObject.confirm(2, true).toString());
+	}
+	
+	@Test
+	public void windowLimit() throws Exception
+	{
+		final ConfirmTracker<String> testObject = createTracker(2, 2);
+		final CountDownLatch started = new CountDownLatch(1);
+		final AtomicBoolean hadRoom = new AtomicBoolean(false);
+		
+		// The window is full, so this waits until a confirm
+		Thread waiter = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				started.countDown();
+				
+				try
+				{
+					hadRoom.set(testObject.awaitCapacity());
+				}
+				catch (InterruptedException e)
+				{
+					// The assertion will fail
+				}
+			}
+		});
+		waiter.start();
+		
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		waiter.join(100);
+		assertTrue(waiter.isAlive());
+		
+		testObject.confirm(1, false);
+		waiter.join(5000);
+		assertFalse(waiter.isAlive());
+		assertTrue(hadRoom.get());
+	}
+	
+	@Test
+	public void markClosedWakesUpWaiter() throws Exception
+	{
+		final ConfirmTracker<String> testObject = createTracker(1, 1);
+		final AtomicBoolean hadRoom = new AtomicBoolean(true);
+		
+		Thread waiter = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					hadRoom.set(testObject.awaitCapacity());
+				}
+				catch (InterruptedException e)
+				{
+					// The assertion will fail
+				}
+			}
+		});
+		waiter.start();
+		waiter.join(100);
+		
+		testObject.markClosed();
+		waiter.join(5000);
+		assertFalse(waiter.isAlive());
+		assertFalse(hadRoom.get());
+		
+		// The items are retained until close
+		assertEquals(1, testObject.getOutstandingCount());
+		assertEquals("[m1]", testObject.close().toString());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidWindow()
+	{
+		new ConfirmTracker<String>(0);
+	}
+	
+	private ConfirmTracker<String> createTracker(int window, int count)
+	{
+		ConfirmTracker<String> retval = new ConfirmTracker<>(window);
+		
+		for (int i = 1; i <= count; ++i)
+		{
+			retval.add(i, "m" + i);
+		}
+		
+		return retval;
+	}
+}
@@ -0,0 +1,56 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class ConnectBackoffUnitTest
+{
+	// The largest random value below 1
+	private static final double AlmostOne = Math.nextDown(1.0);
+	
+	
+	@Test
+	public void doublesAfterEachFailure()
+	{
+		// The upper limit of each range
+		assertEquals(100, AmqpConnector.getConnectBackoff_ms(100, 10000, 1, AlmostOne));
+		assertEquals(200, AmqpConnector.getConnectBackoff_ms(100, 10000, 2, AlmostOne));
+		assertEquals(400, AmqpConnector.getConnectBackoff_ms(100, 10000, 3, AlmostOne));
+		assertEquals(800, AmqpConnector.getConnectBackoff_ms(100, 10000, 4, AlmostOne));
+	}
+	
+	@Test
+	public void randomisesLatterHalf()
+	{
+		assertEquals(200, AmqpConnector.getConnectBackoff_ms(400, 10000, 1, 0));
+		assertEquals(300, AmqpConnector.getConnectBackoff_ms(400, 10000, 1, 0.5));
+		assertEquals(400, AmqpConnector.getConnectBackoff_ms(400, 10000, 1, AlmostOne));
+	}
+	
+	@Test
+	public void limitedToMaximum()
+	{
+		assertEquals(10000, AmqpConnector.getConnectBackoff_ms(100, 10000, 8, AlmostOne));
+		assertEquals(5000, AmqpConnector.getConnectBackoff_ms(100, 10000, 8, 0));
+	}
+	
+	@Test
+	public void noOverflowAfterManyFailures()
+	{
+		// The shift would overflow without limiting the exponent
+		assertEquals(60000, AmqpConnector.getConnectBackoff_ms(1000, 60000, 100, AlmostOne));
+		assertEquals(60000, AmqpConnector.getConnectBackoff_ms(1000, 60000, Integer.MAX_VALUE, AlmostOne));
+	}
+}
@@ -0,0 +1,146 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConnectorLogUnitTest
+{
+	private PrintStream m_originalOut;
+	private PrintStream m_originalErr;
+	
+	
+	@Before
+	public void setUp()
+	{
+		m_originalOut = System.out;
+		m_originalErr = System.err;
+	}
+	
+	@After
+	public void tearDown()
+	{
+		System.setOut(m_originalOut);
+		System.setErr(m_originalErr);
+	}
+	
+	@Test
+	public void formatsLazilyInOrder() throws Exception
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ByteArrayOutputStream err = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(out, true));
+		System.setErr(new PrintStream(err, true));
+		
+		ConnectorLog debugOff = new ConnectorLog(AmqpConnector.class, false);
+		ConnectorLog debugOn = new ConnectorLog(Notifier.class, true);
+		
+		assertFalse(debugOff.isDebugEnabled());
+		assertTrue(debugOn.isDebugEnabled());
+		
+		debugOff.debug("hidden {}", "x");
+		debugOff.error("err {} of {}", 1, 2);
+		debugOn.debug("shown {}", "y");
+		debugOff.info("info");
+		debugOff.error("braces {} kept");
+		
+		assertTrue(ConnectorLog.flush(5000));
+		
+		String outText = out.toString();
+		String errText = err.toString();
+		String time = "\\d\\d:\\d\\d:\\d\\d\\.\\d\\d\\d ";
+		
+		assertFalse(outText.contains("hidden"));
+		assertTrue(outText.matches("(?s).*" + time + "\\[Notifier\\] \\(INF\\) shown y\\R.*"));
+		assertTrue(outText.matches("(?s).*" + time + "\\[AmqpConnector\\] \\(INF\\) info\\R.*"));
+		assertTrue(errText.matches("(?s).*" + time + "\\[AmqpConnector\\] \\(ERR\\) err 1 of 2\\R.*"));
+		assertTrue(errText.contains("(ERR) braces {} kept"));
+		
+		// The order is retained
+		assertTrue(outText.indexOf("shown y") < outText.indexOf("(INF) info"));
+		assertTrue(errText.indexOf("err 1 of 2") < errText.indexOf("braces"));
+	}
+	
+	@Test
+	public void dropsWhenFullWithoutBlocking() throws Exception
+	{
+		final CountDownLatch writing = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		ByteArrayOutputStream captured = new ByteArrayOutputStream();
+		PrintStream blocking = createBlockingStream(captured, writing, release);
+		System.setOut(blocking);
+		System.setErr(blocking);
+		
+		ConnectorLog log = new ConnectorLog(AmqpConnector.class, true);
+		
+		// The writer blocks while writing the first message
+		log.debug("first");
+		assertTrue(writing.await(5, TimeUnit.SECONDS));
+		
+		long start = System.nanoTime();
+		
+		for (int i = 0; i < ConnectorLog.Capacity + 10; ++i)
+		{
+			log.debug("message {}", i);
+		}
+		
+		// Logging has not waited for the writer
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+		
+		release.countDown();
+		assertTrue(ConnectorLog.flush(10000));
+		
+		Matcher matcher = Pattern.compile("dropped (\\d+) message\\(s\\)").matcher(captured.toString());
+		assertTrue(matcher.find());
+		assertTrue(Long.parseLong(matcher.group(1)) >= 10);
+	}
+	
+	private PrintStream createBlockingStream(final ByteArrayOutputStream target,
+			final CountDownLatch writing, final CountDownLatch release)
+	{
+		return new PrintStream(new OutputStream()
+		{
+			@Override
+			public void write(int b) throws IOException
+			{
+				writing.countDown();
+				
+				try
+				{
+					release.await();
+				}
+				catch (InterruptedException e)
+				{
+					throw new IOException(e);
+				}
+				
+				synchronized (target)
+				{
+					target.write(b);
+				}
+			}
+		}, true);
+	}
+}
@@ -0,0 +1,82 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LatencyHistogramUnitTest
+{
+	@Test
+	public void empty()
+	{
+		LatencyHistogram testObject = new LatencyHistogram();
+		assertEquals(0, testObject.getCount());
+		assertEquals(0, testObject.getMean_ms(), 0);
+		assertEquals(0, testObject.getMax_ms(), 0);
+		assertEquals(0, testObject.getPercentile_ms(99), 0);
+	}
+	
+	@Test
+	public void meanAndMax()
+	{
+		LatencyHistogram testObject = new LatencyHistogram();
+		testObject.record(1000000); // 1 ms
+		testObject.record(3000000); // 3 ms
+		testObject.record(-5); // Counts as 0
+		
+		assertEquals(3, testObject.getCount());
+		assertEquals(4.0 / 3, testObject.getMean_ms(), 1e-9);
+		assertEquals(3, testObject.getMax_ms(), 1e-9);
+	}
+	
+	@Test
+	public void percentiles()
+	{
+		LatencyHistogram testObject = new LatencyHistogram();
+		
+		// 99 short durations and one long
+		for (int i = 0; i < 99; ++i)
+		{
+			testObject.record(1000); // 1 us
+		}
+		
+		testObject.record(50000000); // 50 ms
+		
+		// The upper bound of the bucket 512...1023 ns
+		assertEquals(1023 / 1e6, testObject.getPercentile_ms(50), 1e-12);
+		assertEquals(1023 / 1e6, testObject.getPercentile_ms(99), 1e-12);
+		
+		// The bucket upper bound is limited to the maximum
+		assertEquals(50, testObject.getPercentile_ms(100), 1e-9);
+	}
+	
+	@Test
+	public void rate()
+	{
+		RateMeter testObject = new RateMeter();
+		testObject.increment();
+		testObject.add(4);
+		assertEquals(5, testObject.getCount());
+		
+		// The rate updates on tick only
+		assertEquals(0, testObject.getRate(), 0);
+		testObject.tick();
+		assertTrue(testObject.getRate() > 0);
+		
+		// No events since the previous tick
+		testObject.tick();
+		assertEquals(0, testObject.getRate(), 0);
+		assertEquals(5, testObject.getCount());
+	}
+}
@@ -0,0 +1,284 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LoopbackBrokerUnitTest
+{
+	private LoopbackBroker m_broker;
+	private AmqpConnector m_connector;
+	private final List<String> m_received = new CopyOnWriteArrayList<>();
+	
+	
+	@Before
+	public void setUp()
+	{
+		m_broker = new LoopbackBroker();
+	}
+	
+	@After
+	public void tearDown()
+	{
+		if (m_connector != null)
+		{
+			m_connector.close();
+		}
+	}
+	
+	@Test
+	public void routesByTopic() throws Exception
+	{
+		startConnector(createProps(), "plant.*.temp");
+		
+		m_connector.sendMessage("plant.a.temp", "1".getBytes());
+		m_connector.sendMessage("plant.a.pressure", "2".getBytes()); // Unroutable
+		m_connector.sendMessage("plant.b.temp", "3".getBytes());
+		
+		awaitReceived(2);
+		assertEquals("[1, 3]", m_received.toString());
+		assertEquals(3, m_broker.getPublishedCount());
+	}
+	
+	@Test
+	public void nackedMessageIsResent() throws Exception
+	{
+		AmqpPropsManager props = createProps();
+		props.setPublisherConfirms(true);
+		startConnector(props, "t");
+		
+		m_broker.nackNext(1);
+		m_connector.sendMessageAsync("t", "x".getBytes()).get(5, TimeUnit.SECONDS);
+		
+		// The nacked message was routed too, so it arrives twice
+		awaitReceived(2);
+		assertEquals(2, m_broker.getPublishedCount());
+	}
+	
+	@Test
+	public void coalescedConfirms() throws Exception
+	{
+		AmqpPropsManager props = createProps();
+		props.setPublisherConfirms(true);
+		startConnector(props, "t");
+		
+		m_broker.setWithholdConfirms(true);
+		List<CompletableFuture<Void>> futures = new ArrayList<>();
+		
+		for (int i = 0; i < 10; ++i)
+		{
+			futures.add(m_connector.sendMessageAsync("t", Integer.toString(i).getBytes()));
+		}
+		
+		awaitReceived(10);
+		assertFalse(futures.get(0).isDone());
+		
+		// One ack with the "multiple" flag confirms all
+		m_broker.setWithholdConfirms(false);
+		
+		for (CompletableFuture<Void> f : futures)
+		{
+			f.get(5, TimeUnit.SECONDS);
+		}
+		
+		assertEquals(10, m_broker.getPublishedCount());
+	}
+	
+	@Test
+	public void unconfirmedResentWhenIdle() throws Exception
+	{
+		AmqpPropsManager props = createProps();
+		props.setPublisherConfirms(true);
+		startConnector(props, "t");
+		
+		m_broker.setWithholdConfirms(true);
+		CompletableFuture<Void> future = m_connector.sendMessageAsync("t", "x".getBytes());
+		awaitReceived(1);
+		
+		// The confirm never arrives, because the connection is lost
+		m_broker.dropConnections();
+		m_broker.setWithholdConfirms(false);
+		
+		// No further messages are sent, but the message is resent after reconnecting
+		future.get(5, TimeUnit.SECONDS);
+		assertEquals(2, m_broker.getPublishedCount());
+	}
+	
+	@Test
+	public void reconnectsAfterDrop() throws Exception
+	{
+		startConnector(createProps(), "t");
+		m_connector.sendMessage("t", "before".getBytes());
+		awaitReceived(1);
+		
+		m_broker.dropConnections();
+		awaitConnected(1);
+		assertEquals(1, m_broker.getConnectionCount());
+		
+		// The queue was exclusive, so it was declared again
+		m_connector.sendMessage("t", "after".getBytes());
+		awaitReceived(2);
+		assertEquals("[before, after]", m_received.toString());
+	}
+	
+	@Test
+	public void prefetchWithSlowConsumer() throws Exception
+	{
+		AmqpPropsManager props = createProps();
+		props.setPrefetchCount(2);
+		m_broker.setConsumerDelay(5);
+		startConnector(props, "t");
+		
+		for (int i = 0; i < 10; ++i)
+		{
+			m_connector.sendMessage("t", Integer.toString(i).getBytes());
+		}
+		
+		// Acks are needed for all deliveries to arrive
+		awaitReceived(10);
+		assertEquals("[0, 1, 2, 3, 4, 5, 6, 7, 8, 9]", m_received.toString());
+		assertEquals(10, m_broker.getDeliveredCount());
+	}
+	
+	@Test
+	public void refusedConnectionIsRetried() throws Exception
+	{
+		startConnector(createProps(), "t");
+		
+		// Another user so that the connection is not shared
+		AmqpPropsManager props = new AmqpPropsManager("localhost", "ex", "user2", "pwd");
+		props.setLoopbackBroker(m_broker);
+		props.setReconnectDelay(10, 20);
+		m_broker.setRefuseConnections(true);
+		AmqpConnector sender = new AmqpConnector(props);
+		
+		try
+		{
+			sender.sendMessage("t", "queued".getBytes());
+			Thread.sleep(100);
+			assertTrue(m_received.isEmpty());
+			
+			// The message waits in the send queue until connected
+			m_broker.setRefuseConnections(false);
+			awaitReceived(1);
+			assertEquals("[queued]", m_received.toString());
+		}
+		finally
+		{
+			sender.close();
+		}
+	}
+	
+	@Test
+	public void largeMessageReassembledInFile() throws Exception
+	{
+		AmqpPropsManager props = createProps();
+		props.setChunkSize(1024);
+		props.setChunkReassemblyMemory(0); // Always in a file
+		props.setCompression("big", CompressionMode.FAST);
+		props.setCompressionThreshold(0);
+		
+		final CompletableFuture<byte[]> received = new CompletableFuture<>();
+		m_connector = new AmqpConnector(props, "big");
+		m_connector.getNotifierForTopic("big").addListener(new Notifier.IMessageListener()
+		{
+			@Override
+			public void listen(Notifier.MessageReceivedEvent event)
+			{
+				try
+				{
+					received.complete(Files.readAllBytes(event.file.toPath()));
+				}
+				catch (IOException e)
+				{
+					received.completeExceptionally(e);
+				}
+			}
+		});
+		awaitConnected(0);
+		
+		byte[] payload = new byte[5000];
+		
+		for (int i = 0; i < payload.length; ++i)
+		{
+			payload[i] = (byte)(i % 7);
+		}
+		
+		// Five chunks, compressed and reassembled in the chunk thread
+		m_connector.sendLarge("big", payload);
+		assertArrayEquals(payload, received.get(5, TimeUnit.SECONDS));
+		assertEquals(5, m_broker.getPublishedCount());
+	}
+	
+	private AmqpPropsManager createProps()
+	{
+		AmqpPropsManager props = new AmqpPropsManager("localhost", "ex", "user", "pwd");
+		props.setLoopbackBroker(m_broker);
+		return props;
+	}
+	
+	private void startConnector(AmqpPropsManager props, String topic) throws CommunicationException, InterruptedException
+	{
+		m_connector = new AmqpConnector(props, topic);
+		m_connector.getNotifierForTopic(topic).addListener(new Notifier.IMessageListener()
+		{
+			@Override
+			public void listen(Notifier.MessageReceivedEvent event)
+			{
+				m_received.add(new String(event.message));
+			}
+		});
+		
+		awaitConnected(0);
+	}
+	
+	private void awaitConnected(int reconnectCount) throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + 5000;
+		ConnectorStatistics stats = m_connector.getStatistics();
+		
+		// The connector connects in the background. The consumer is set up
+		// once the connector reports connected, so no message is missed after that.
+		while (!(stats.connected && stats.reconnectCount == reconnectCount) && System.currentTimeMillis() < deadline)
+		{
+			Thread.sleep(5);
+			stats = m_connector.getStatistics();
+		}
+		
+		assertTrue(stats.connected);
+		assertEquals(reconnectCount, stats.reconnectCount);
+	}
+	
+	private void awaitReceived(int count) throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + 5000;
+		
+		while (m_received.size() < count && System.currentTimeMillis() < deadline)
+		{
+			Thread.sleep(5);
+		}
+		
+		assertEquals(count, m_received.size());
+	}
+}
@@ -0,0 +1,271 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.sun.management.ThreadMXBean;
+
+public class NotifierUnitTest
+{
+	private Notifier m_testObject = null;
+	
+	
+	@After
+	public void tearDown()
+	{
+		if (m_testObject != null)
+		{
+			m_testObject.close();
+		}
+	}
+	
+	@Test
+	public void slowListenerDoesNotBlockEnqueue() throws Exception
+	{
+		m_testObject = new Notifier("t", 10, OverflowPolicy.BLOCK);
+		
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch received = new CountDownLatch(3);
+		final List<Byte> messages = Collections.synchronizedList(new ArrayList<Byte>());
+		
+		m_testObject.addListener(new Notifier.IMessageListener()
+		{
+			@Override
+			public void listen(Notifier.MessageReceivedEvent event)
+			{
+				awaitQuietly(release);
+				messages.add(event.message[0]);
+				received.countDown();
+			}
+		});
+		
+		// The listener blocks but enqueuing returns immediately
+		for (byte b = 1; b <= 3; ++b)
+		{
+			m_testObject.enqueue(new InboundDelivery("t", new byte[] { b }, 0, null, 0));
+		}
+		
+		release.countDown();
+		assertTrue(received.await(5, TimeUnit.SECONDS));
+		
+		// The order is retained
+		assertEquals(3, messages.size());
+		assertEquals(1, (int)messages.get(0));
+		assertEquals(2, (int)messages.get(1));
+		assertEquals(3, (int)messages.get(2));
+	}
+	
+	@Test
+	public void dropOldestWhenFull() throws Exception
+	{
+		m_testObject = new Notifier("t", 2, OverflowPolicy.DROP_OLDEST);
+		
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch received = new CountDownLatch(3);
+		final List<Byte> messages = Collections.synchronizedList(new ArrayList<Byte>());
+		final CountDownLatch firstStarted = new CountDownLatch(1);
+		
+		m_testObject.addListener(new Notifier.IMessageListener()
+		{
+			@Override
+			public void listen(Notifier.MessageReceivedEvent event)
+			{
+				firstStarted.countDown();
+				awaitQuietly(release);
+				messages.add(event.message[0]);
+				received.countDown();
+			}
+		});
+		
+		// The first message is taken by the listener
+		m_testObject.enqueue(new InboundDelivery("t", new byte[] { 1 }, 0, null, 0));
+		assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+		
+		// Two fit in the queue, the third pushes out the oldest
+		for (byte b = 2; b <= 4; ++b)
+		{
+			m_testObject.enqueue(new InboundDelivery("t", new byte[] { b }, 0, null, 0));
+		}
+		
+		assertEquals(1, m_testObject.getDroppedMessageCount());
+		
+		release.countDown();
+		assertTrue(received.await(5, TimeUnit.SECONDS));
+		assertEquals(1, (int)messages.get(0));
+		assertEquals(3, (int)messages.get(1));
+		assertEquals(4, (int)messages.get(2));
+	}
+	
+	@Test
+	public void conflation() throws Exception
+	{
+		m_testObject = new Notifier("t", 10, OverflowPolicy.BLOCK);
+		m_testObject.setConflation(true);
+		
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch received = new CountDownLatch(3);
+		final CountDownLatch firstStarted = new CountDownLatch(1);
+		final List<Byte> messages = Collections.synchronizedList(new ArrayList<Byte>());
+		
+		m_testObject.addListener(new Notifier.IMessageListener()
+		{
+			@Override
+			public void listen(Notifier.MessageReceivedEvent event)
+			{
+				firstStarted.countDown();
+				awaitQuietly(release);
+				messages.add(event.message[0]);
+				received.countDown();
+			}
+		});
+		
+		// The listener is busy with the first message
+		m_testObject.enqueue(new InboundDelivery("a", new byte[] { 1 }, 0, null, 0));
+		assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+		
+		// Only the latest of each routing key should remain
+		m_testObject.enqueue(new InboundDelivery("a", new byte[] { 2 }, 0, null, 0));
+		m_testObject.enqueue(new InboundDelivery("b", new byte[] { 3 }, 0, null, 0));
+		m_testObject.enqueue(new InboundDelivery("a", new byte[] { 4 }, 0, null, 0));
+		m_testObject.enqueue(new InboundDelivery("a", new byte[] { 5 }, 0, null, 0));
+		
+		assertEquals(2, m_testObject.getConflatedMessageCount());
+		
+		release.countDown();
+		assertTrue(received.await(5, TimeUnit.SECONDS));
+		assertEquals(3, messages.size());
+		assertEquals(1, (int)messages.get(0));
+		assertEquals(5, (int)messages.get(1));
+		assertEquals(3, (int)messages.get(2));
+	}
+	
+	@Test
+	public void batchFlushedByDelay() throws Exception
+	{
+		m_testObject = new Notifier("t", 10, OverflowPolicy.BLOCK);
+		m_testObject.setBatchMode(100, 50);
+		
+		final CountDownLatch received = new CountDownLatch(1);
+		final int[] count = new int[1];
+		
+		m_testObject.addBatchListener(new Notifier.IMessageBatchListener()
+		{
+			@Override
+			public void listenBatch(Notifier.MessageBatchReceivedEvent event)
+			{
+				count[0] = event.getCount();
+				received.countDown();
+			}
+		});
+		
+		m_testObject.enqueue(new InboundDelivery("t", new byte[1], 0, null, 0));
+		m_testObject.enqueue(new InboundDelivery("t", new byte[1], 0, null, 0));
+		
+		// Far fewer messages than the size threshold, so the delay triggers the delivery
+		assertTrue(received.await(5, TimeUnit.SECONDS));
+		assertEquals(2, count[0]);
+	}
+	
+	@Test
+	public void dispatchAllocatesLittle() throws Exception
+	{
+		// Measuring how much the dispatch thread allocates per message with
+		// several listeners. Allocating a new event per listener and copying
+		// the listener list would exceed the limit.
+		
+		// This requires a HotSpot-based JVM
+		final ThreadMXBean threadBean = (ThreadMXBean)ManagementFactory.getThreadMXBean();
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+		
+		final int messageCount = 20000;
+		final int listenerCount = 4;
+		m_testObject = new Notifier("t", messageCount, OverflowPolicy.BLOCK);
+		
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(1);
+		final long[] allocated = new long[2];
+		
+		m_testObject.addListener(new Notifier.IMessageListener()
+		{
+			private int m_count = 0;
+			
+			@Override
+			public void listen(Notifier.MessageReceivedEvent event)
+			{
+				++m_count;
+				
+				if (m_count == 1)
+				{
+					// Holding the first message until all have been enqueued
+					awaitQuietly(release);
+				}
+				else if (m_count == 2)
+				{
+					allocated[0] = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+				}
+				else if (m_count == messageCount)
+				{
+					allocated[1] = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+					done.countDown();
+				}
+			}
+		});
+		
+		for (int i = 1; i < listenerCount; ++i)
+		{
+			m_testObject.addListener(new Notifier.IMessageListener()
+			{
+				@Override
+				public void listen(Notifier.MessageReceivedEvent event)
+				{
+					// Nothing to do
+				}
+			});
+		}
+		
+		byte[] body = new byte[8];
+		
+		for (int i = 0; i < messageCount; ++i)
+		{
+			m_testObject.enqueue(new InboundDelivery("t", body, 0, null, 0));
+		}
+		
+		release.countDown();
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		
+		double bytesPerMessage = (allocated[1] - allocated[0]) / (double)(messageCount - 2);
+		assertTrue("Allocated " + bytesPerMessage + " bytes per message", bytesPerMessage < 64);
+	}
+	
+	private static void awaitQuietly(CountDownLatch latch)
+	{
+		try
+		{
+			latch.await(5, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,109 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+public class NumericCodecUnitTest
+{
+	@Test
+	public void doublesRoundTrip()
+	{
+		double[] values = { 1.5, -2.25, Double.MAX_VALUE, Double.NaN };
+		byte[] msg = NumericCodec.encode(values, 4, 1);
+		
+		assertTrue(NumericCodec.isNumeric(msg));
+		assertEquals(NumericCodec.TypeDouble, NumericCodec.getType(msg));
+		assertEquals(NumericCodec.HeaderSize + 4 * 8, msg.length);
+		assertArrayEquals(values, NumericCodec.decodeDoubles(msg), 0);
+		
+		// Little endian: the lowest byte of 1.5 (0x3ff8000000000000) comes first
+		assertEquals(0, msg[NumericCodec.HeaderSize]);
+		assertEquals((byte)0x3f, msg[NumericCodec.HeaderSize + 7]);
+	}
+	
+	@Test
+	public void matrixColumnMajor()
+	{
+		// [1 2 3; 4 5 6] in the column-major order
+		byte[] msg = NumericCodec.encode(new int[] { 1, 4, 2, 5, 3, 6 }, 2, 3);
+		
+		assertEquals(2, NumericCodec.getRows(msg));
+		assertEquals(3, NumericCodec.getColumns(msg));
+		assertArrayEquals(new int[] { 1, 4, 2, 5, 3, 6 }, NumericCodec.decodeInt32s(msg));
+		
+		double[][] matrix = NumericCodec.decodeMatrix(msg);
+		assertArrayEquals(new double[] { 1, 2, 3 }, matrix[0], 0);
+		assertArrayEquals(new double[] { 4, 5, 6 }, matrix[1], 0);
+	}
+	
+	@Test
+	public void otherTypes()
+	{
+		float[] singles = { 0.5f, -1f };
+		assertArrayEquals(singles, NumericCodec.decodeSingles(NumericCodec.encode(singles, 1, 2)), 0);
+		
+		short[] int16s = NumericCodec.decodeInt16s(NumericCodec.encode(new short[] { Short.MIN_VALUE, 7 }, 2, 1));
+		assertEquals(2, int16s.length);
+		assertEquals(Short.MIN_VALUE, int16s[0]);
+		assertEquals(7, int16s[1]);
+		
+		long[] int64s = { Long.MAX_VALUE };
+		byte[] msg = NumericCodec.encode(int64s, 1, 1);
+		assertArrayEquals(int64s, NumericCodec.decodeInt64s(msg));
+		
+		// Converted to double
+		assertArrayEquals(new double[] { Long.MAX_VALUE }, NumericCodec.decodeDoubles(msg), 0);
+	}
+	
+	@Test
+	public void invalidInput()
+	{
+		assertFalse(NumericCodec.isNumeric(new byte[] { 1, 2, 3 }));
+		
+		// Truncated
+		byte[] msg = NumericCodec.encode(new double[] { 1, 2 }, 2, 1);
+		byte[] truncated = new byte[msg.length - 1];
+		System.arraycopy(msg, 0, truncated, 0, truncated.length);
+		assertFalse(NumericCodec.isNumeric(truncated));
+		
+		try
+		{
+			NumericCodec.encode(new double[] { 1, 2 }, 3, 1);
+			fail("Expected exception");
+		}
+		catch (IllegalArgumentException e) {}
+		
+		try
+		{
+			NumericCodec.decodeSingles(msg);
+			fail("Expected exception");
+		}
+		catch (IllegalArgumentException e) {}
+	}
+	
+	@Test
+	public void negativeDimensions()
+	{
+		// -1 x -2 would give the same count as 1 x 2
+		byte[] msg = NumericCodec.encode(new double[] { 1, 2 }, 1, 2);
+		ByteBuffer buf = ByteBuffer.wrap(msg).order(ByteOrder.LITTLE_ENDIAN);
+		buf.putInt(4, -1).putInt(8, -2);
+		
+		assertFalse(NumericCodec.isNumeric(msg));
+	}
+}
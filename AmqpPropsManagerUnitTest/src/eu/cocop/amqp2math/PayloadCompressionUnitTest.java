@@ -0,0 +1,167 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PayloadCompressionUnitTest
+{
+	private static final int MaxLength = 1024 * 1024;
+	
+	
+	@Test
+	public void roundTrip() throws IOException
+	{
+		PayloadCompression testObject = createTestObject();
+		
+		try
+		{
+			// Repetitive data compresses well
+			byte[] body = new byte[100000];
+			
+			for (int i = 0; i < body.length; ++i)
+			{
+				body[i] = (byte)(i % 10);
+			}
+			
+			byte[] fast = compress(testObject, "plant.a.values", body);
+			byte[] dense = compress(testObject, "model.out", body);
+			
+			assertNotNull(fast);
+			assertNotNull(dense);
+			assertTrue(fast.length < body.length / 10);
+			assertArrayEquals(body, PayloadCompression.decompress(PayloadCompression.EncodingDeflate, fast, MaxLength));
+			assertArrayEquals(body, PayloadCompression.decompress(PayloadCompression.EncodingDeflate, dense, MaxLength));
+		}
+		finally
+		{
+			testObject.close();
+		}
+	}
+	
+	@Test
+	public void notCompressed() throws IOException
+	{
+		PayloadCompression testObject = createTestObject();
+		
+		try
+		{
+			// Topic without compression
+			assertNull(compress(testObject, "other", new byte[5000]));
+			
+			// Below the threshold
+			assertNull(compress(testObject, "model.out", new byte[100]));
+			
+			// Random data does not get smaller
+			byte[] random = new byte[5000];
+			new Random(1).nextBytes(random);
+			assertNull(compress(testObject, "model.out", random));
+			
+			// No encoding
+			assertSame(random, PayloadCompression.decompress(null, random, MaxLength));
+		}
+		finally
+		{
+			testObject.close();
+		}
+	}
+	
+	@Test
+	public void invalidEncoding()
+	{
+		try
+		{
+			PayloadCompression.decompress("br", new byte[10], MaxLength);
+			fail("Expected exception");
+		}
+		catch (IOException e)
+		{
+			assertTrue(e.getMessage().contains("Unsupported"));
+		}
+		
+		try
+		{
+			PayloadCompression.decompress(PayloadCompression.EncodingDeflate, new byte[] { 1, 2, 3 }, MaxLength);
+			fail("Expected exception");
+		}
+		catch (IOException e) {}
+	}
+	
+	@Test
+	public void decompressedSizeLimited() throws IOException
+	{
+		PayloadCompression testObject = createTestObject();
+		
+		try
+		{
+			// Zeros compress to a fraction of their size
+			byte[] compressed = compress(testObject, "plant.a", new byte[100000]);
+			assertTrue(compressed.length < 1000);
+			
+			// Exactly the limit is fine
+			assertEquals(100000, PayloadCompression.decompress(PayloadCompression.EncodingDeflate, compressed, 100000).length);
+			
+			try
+			{
+				PayloadCompression.decompress(PayloadCompression.EncodingDeflate, compressed, 99999);
+				fail("Expected exception");
+			}
+			catch (IOException e)
+			{
+				assertTrue(e.getMessage().contains("exceeds"));
+			}
+		}
+		finally
+		{
+			testObject.close();
+		}
+	}
+	
+	@Test
+	public void densestModeApplies()
+	{
+		HashMap<String, CompressionMode> topics = new HashMap<>();
+		topics.put("model.#", CompressionMode.FAST);
+		topics.put("model.out", CompressionMode.DENSE);
+		PayloadCompression testObject = new PayloadCompression(topics, 1024);
+		
+		try
+		{
+			assertEquals(CompressionMode.DENSE, testObject.getMode("model.out"));
+			assertEquals(CompressionMode.FAST, testObject.getMode("model.in"));
+			assertEquals(CompressionMode.NONE, testObject.getMode("other"));
+		}
+		finally
+		{
+			testObject.close();
+		}
+	}
+	
+	private byte[] compress(PayloadCompression compression, String topic, byte[] body)
+	{
+		return compression.compress(compression.getMode(topic), body);
+	}
+	
+	private PayloadCompression createTestObject()
+	{
+		HashMap<String, CompressionMode> topics = new HashMap<>();
+		topics.put("plant.#", CompressionMode.FAST);
+		topics.put("model.*", CompressionMode.DENSE);
+		return new PayloadCompression(topics, 1024);
+	}
+}
@@ -0,0 +1,145 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+
+public class PublishPropertiesUnitTest
+{
+	@Test
+	public void cachedByTopic()
+	{
+		AmqpPropsManager props = new AmqpPropsManager("localhost", "ex", "user", "pwd");
+		props.setPublishProfile("plant.#", new PublishProfile());
+		PublishProperties testObject = new PublishProperties(props.getDefaultPublishProfile(), props.getPublishProfiles(), null);
+		
+		// The same object on each call
+		BasicProperties plant = testObject.get("plant.a").getProperties(false);
+		assertSame(plant, testObject.get("plant.a").getProperties(false));
+		assertSame(plant, testObject.get("plant.b").getProperties(false));
+		
+		BasicProperties compressed = testObject.get("plant.a").getProperties(true);
+		assertNotSame(plant, compressed);
+		assertSame(compressed, testObject.get("plant.a").getProperties(true));
+		
+		// The default profile
+		assertNotSame(plant, testObject.get("other").getProperties(false));
+	}
+	
+	@Test
+	public void compressionModeCachedWithProperties()
+	{
+		AmqpPropsManager props = new AmqpPropsManager("localhost", "ex", "user", "pwd");
+		HashMap<String, CompressionMode> topics = new HashMap<>();
+		topics.put("plant.#", CompressionMode.FAST);
+		PayloadCompression compression = new PayloadCompression(topics, 1024);
+		
+		try
+		{
+			PublishProperties testObject = new PublishProperties(props.getDefaultPublishProfile(), props.getPublishProfiles(), compression);
+			
+			PublishProperties.TopicSettings settings = testObject.get("plant.a");
+			assertSame(settings, testObject.get("plant.a"));
+			assertEquals(CompressionMode.FAST, settings.compressionMode);
+			assertEquals(CompressionMode.NONE, testObject.get("other").compressionMode);
+			
+			// Without compression
+			testObject = new PublishProperties(props.getDefaultPublishProfile(), props.getPublishProfiles(), null);
+			assertEquals(CompressionMode.NONE, testObject.get("plant.a").compressionMode);
+		}
+		finally
+		{
+			compression.close();
+		}
+	}
+	
+	@Test
+	public void lastSetPatternApplies()
+	{
+		AmqpPropsManager props = new AmqpPropsManager("localhost", "ex", "user", "pwd");
+		props.setPublishProfile("plant.#", new PublishProfile());
+		props.setPublishProfile("plant.a", new PublishProfile());
+		PublishProperties testObject = new PublishProperties(props.getDefaultPublishProfile(), props.getPublishProfiles(), null);
+		BasicProperties specific = testObject.get("plant.a").getProperties(false);
+		BasicProperties general = testObject.get("plant.b").getProperties(false);
+		assertNotSame(specific, general);
+		
+		// Setting "plant.#" again makes it the last one
+		props.setPublishProfile("plant.#", new PublishProfile());
+		testObject = new PublishProperties(props.getDefaultPublishProfile(), props.getPublishProfiles(), null);
+		assertSame(testObject.get("plant.a").getProperties(false), testObject.get("plant.b").getProperties(false));
+	}
+	
+	@Test
+	public void invalidValues()
+	{
+		PublishProfile testObject = new PublishProfile();
+		
+		try
+		{
+			testObject.setPriority(256);
+			fail("Expected exception");
+		}
+		catch (IllegalArgumentException e) {}
+		
+		try
+		{
+			testObject.setHeader("h", new Object());
+			fail("Expected exception");
+		}
+		catch (IllegalArgumentException e) {}
+		
+		// These are fine
+		testObject.setHeader("site", "plant1");
+		testObject.setHeader("version", 2);
+		testObject.setHeader("site", null);
+	}
+	
+	@Test
+	public void unsupportedNumberTypes()
+	{
+		PublishProfile testObject = new PublishProfile();
+		
+		// The AMQP client cannot write these, so they are rejected right away
+		try
+		{
+			testObject.setHeader("h", BigInteger.ONE);
+			fail("Expected exception");
+		}
+		catch (IllegalArgumentException e) {}
+		
+		try
+		{
+			testObject.setHeader("h", new AtomicLong(1));
+			fail("Expected exception");
+		}
+		catch (IllegalArgumentException e) {}
+		
+		// The supported numbers
+		testObject.setHeader("a", 1.5);
+		testObject.setHeader("b", 1.5f);
+		testObject.setHeader("c", 1L);
+		testObject.setHeader("d", (short)1);
+		testObject.setHeader("e", (byte)1);
+		testObject.setHeader("f", BigDecimal.ONE);
+		testObject.setHeader("g", true);
+	}
+}
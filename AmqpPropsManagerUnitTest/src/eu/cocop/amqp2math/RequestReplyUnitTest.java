@@ -0,0 +1,262 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiFunction;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RequestReplyUnitTest
+{
+	private LoopbackBroker m_broker;
+	private AmqpConnector m_service;
+	private AmqpConnector m_client;
+	
+	
+	@Before
+	public void setUp()
+	{
+		m_broker = new LoopbackBroker();
+	}
+	
+	@After
+	public void tearDown()
+	{
+		if (m_client != null)
+		{
+			m_client.close();
+		}
+		
+		if (m_service != null)
+		{
+			m_service.close();
+		}
+	}
+	
+	@Test
+	public void manyRequestsInFlight() throws Exception
+	{
+		startService("svc.upper");
+		startClient();
+		
+		// The replies are matched to the requests by correlation id
+		List<CompletableFuture<byte[]>> futures = new ArrayList<>();
+		
+		for (int i = 0; i < 200; ++i)
+		{
+			futures.add(m_client.request("svc.upper", ("req" + i).getBytes(), 5000));
+		}
+		
+		for (int i = 0; i < futures.size(); ++i)
+		{
+			byte[] reply = futures.get(i).get(5, TimeUnit.SECONDS);
+			assertEquals("REQ" + i, new String(reply));
+		}
+		
+		assertEquals(0, m_client.getPendingRequestCount());
+	}
+	
+	@Test
+	public void timesOutWithoutService() throws Exception
+	{
+		startClient();
+		
+		long start = System.currentTimeMillis();
+		CompletableFuture<byte[]> future = m_client.request("svc.none", "x".getBytes(), 100);
+		
+		try
+		{
+			future.get(5, TimeUnit.SECONDS);
+			fail("Expected a timeout");
+		}
+		catch (ExecutionException e)
+		{
+			assertTrue(e.getCause() instanceof TimeoutException);
+		}
+		
+		assertTrue(System.currentTimeMillis() - start >= 100);
+		assertEquals(0, m_client.getPendingRequestCount());
+	}
+	
+	@Test
+	public void timerRestartsAfterIdle() throws Exception
+	{
+		startClient();
+		
+		for (int i = 0; i < 2; ++i)
+		{
+			// The timer stops once no request waits, so the second request restarts it
+			CompletableFuture<String> thread = m_client.request("svc.none", "x".getBytes(), 20).handle(
+					new BiFunction<byte[], Throwable, String>()
+					{
+						@Override
+						public String apply(byte[] reply, Throwable e)
+						{
+							assertTrue(e instanceof TimeoutException);
+							return Thread.currentThread().getName();
+						}
+					});
+			
+			// Not completed in the timer thread shared by the connectors
+			assertFalse(thread.get(5, TimeUnit.SECONDS).equals("AmqpConnector timer"));
+			assertEquals(0, m_client.getPendingRequestCount());
+			Thread.sleep(100);
+		}
+	}
+	
+	@Test
+	public void closedReplyChannelFailsPending() throws Exception
+	{
+		// The service receives but never replies
+		m_service = new AmqpConnector(createProps("service"), "svc.silent");
+		awaitConnected(m_service);
+		startClient();
+		
+		CompletableFuture<byte[]> future = m_client.request("svc.silent", "x".getBytes(), 60000);
+		assertEquals(1, m_client.getPendingRequestCount());
+		
+		// The reply could not arrive anymore, so waiting for the timeout would be pointless
+		m_broker.closeReplyChannels();
+		
+		try
+		{
+			future.get(5, TimeUnit.SECONDS);
+			fail("Expected an exception");
+		}
+		catch (ExecutionException e)
+		{
+			assertTrue(e.getCause() instanceof CommunicationException);
+		}
+		
+		assertEquals(0, m_client.getPendingRequestCount());
+		
+		// The next request gets a new channel
+		CompletableFuture<byte[]> next = m_client.request("svc.silent", "x".getBytes(), 60000);
+		assertFalse(next.isDone());
+		assertEquals(1, m_client.getPendingRequestCount());
+	}
+	
+	@Test
+	public void connectionLossFailsPending() throws Exception
+	{
+		// The service receives but never replies
+		m_service = new AmqpConnector(createProps("service"), "svc.silent");
+		awaitConnected(m_service);
+		startClient();
+		
+		CompletableFuture<byte[]> future = m_client.request("svc.silent", "x".getBytes(), 60000);
+		assertEquals(1, m_client.getPendingRequestCount());
+		
+		m_broker.dropConnections();
+		
+		try
+		{
+			future.get(5, TimeUnit.SECONDS);
+			fail("Expected a failure");
+		}
+		catch (ExecutionException e)
+		{
+			assertTrue(e.getCause() instanceof CommunicationException);
+		}
+	}
+	
+	@Test
+	public void failsWhenNotConnected() throws Exception
+	{
+		m_broker.setRefuseConnections(true);
+		m_client = new AmqpConnector(createProps("client"));
+		
+		try
+		{
+			m_client.request("svc", "x".getBytes(), 1000).get(5, TimeUnit.SECONDS);
+			fail("Expected a failure");
+		}
+		catch (ExecutionException e)
+		{
+			assertTrue(e.getCause() instanceof CommunicationException);
+		}
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void replyToNonRequest() throws Exception
+	{
+		startClient();
+		Notifier notifier = new Notifier("t", 10, OverflowPolicy.BLOCK);
+		
+		try
+		{
+			m_client.reply(notifier.new MessageReceivedEvent(notifier, "t", new byte[0]), new byte[0]);
+		}
+		finally
+		{
+			notifier.close();
+		}
+	}
+	
+	private AmqpPropsManager createProps(String user)
+	{
+		// Different users so that the connectors have connections of their own
+		AmqpPropsManager props = new AmqpPropsManager("localhost", "ex", user, "pwd");
+		props.setLoopbackBroker(m_broker);
+		return props;
+	}
+	
+	private void startService(String topic) throws Exception
+	{
+		m_service = new AmqpConnector(createProps("service"), topic);
+		m_service.getNotifierForTopic(topic).addListener(new Notifier.IMessageListener()
+		{
+			@Override
+			public void listen(Notifier.MessageReceivedEvent event)
+			{
+				try
+				{
+					m_service.reply(event, new String(event.message).toUpperCase().getBytes());
+				}
+				catch (CommunicationException e)
+				{
+					// The request will time out
+				}
+			}
+		});
+		
+		awaitConnected(m_service);
+	}
+	
+	private void startClient() throws Exception
+	{
+		m_client = new AmqpConnector(createProps("client"));
+		awaitConnected(m_client);
+	}
+	
+	private void awaitConnected(AmqpConnector connector) throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + 5000;
+		
+		while (!connector.getStatistics().connected && System.currentTimeMillis() < deadline)
+		{
+			Thread.sleep(5);
+		}
+		
+		assertTrue(connector.getStatistics().connected);
+	}
+}
@@ -0,0 +1,270 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import static org.junit.Assert.*;
+
+import java.util.LinkedList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class SendQueueUnitTest
+{
+	// *** Capacity in messages ***
+	
+	@Test
+	public void dropOldest()
+	{
+		SendQueue testObject = new SendQueue(2, 1000, OverflowPolicy.DROP_OLDEST, 0);
+		
+		CompletableFuture<Void> future1 = new CompletableFuture<>();
+		testObject.offer("a", new byte[1], future1);
+		testObject.offer("b", new byte[1], null);
+		testObject.offer("c", new byte[1], null);
+		
+		// The oldest was dropped
+		assertEquals(1, testObject.getDroppedCount());
+		assertTrue(future1.isCompletedExceptionally());
+		assertQueueContents(testObject, "b", "c");
+	}
+	
+	@Test
+	public void rejectNewest()
+	{
+		SendQueue testObject = new SendQueue(2, 1000, OverflowPolicy.REJECT_NEWEST, 0);
+		
+		CompletableFuture<Void> future3 = new CompletableFuture<>();
+		testObject.offer("a", new byte[1], null);
+		testObject.offer("b", new byte[1], null);
+		testObject.offer("c", new byte[1], future3);
+		
+		// The newest was dropped
+		assertEquals(1, testObject.getDroppedCount());
+		assertTrue(future3.isCompletedExceptionally());
+		assertQueueContents(testObject, "a", "b");
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void throwIfFull()
+	{
+		SendQueue testObject = new SendQueue(1, 1000, OverflowPolicy.THROW, 0);
+		
+		testObject.offer("a", new byte[1], null);
+		testObject.offer("b", new byte[1], null);
+	}
+	
+	@Test
+	public void blockUntilTimeout()
+	{
+		SendQueue testObject = new SendQueue(1, 1000, OverflowPolicy.BLOCK, 50);
+		
+		testObject.offer("a", new byte[1], null);
+		
+		// Nobody takes messages, so this will time out
+		long start = System.currentTimeMillis();
+		testObject.offer("b", new byte[1], null);
+		
+		assertTrue(System.currentTimeMillis() - start >= 50);
+		assertEquals(1, testObject.getDroppedCount());
+		assertQueueContents(testObject, "a");
+	}
+	
+	
+	// *** Capacity in bytes ***
+	
+	@Test
+	public void byteCapacity()
+	{
+		SendQueue testObject = new SendQueue(100, 10, OverflowPolicy.DROP_OLDEST, 0);
+		
+		testObject.offer("a", new byte[4], null);
+		testObject.offer("b", new byte[4], null);
+		assertEquals(8, testObject.sizeBytes());
+		
+		// This does not fit before dropping the oldest
+		testObject.offer("c", new byte[4], null);
+		
+		assertEquals(1, testObject.getDroppedCount());
+		assertEquals(8, testObject.sizeBytes());
+		assertQueueContents(testObject, "b", "c");
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void messageLargerThanCapacity()
+	{
+		SendQueue testObject = new SendQueue(100, 10, OverflowPolicy.DROP_OLDEST, 0);
+		testObject.offer("a", new byte[11], null);
+	}
+	
+	@Test
+	public void sharedByteCapacity()
+	{
+		AtomicLong sharedBytes = new AtomicLong(0);
+		SendQueue queue1 = new SendQueue(100, 10, sharedBytes, OverflowPolicy.DROP_OLDEST, 0);
+		SendQueue queue2 = new SendQueue(100, 10, sharedBytes, OverflowPolicy.DROP_OLDEST, 0);
+		
+		// Either queue can take a message as large as the whole capacity
+		queue1.offer("a", new byte[10], null);
+		assertEquals(10, sharedBytes.get());
+		
+		// The other queue holds the bytes, so the new message is dropped
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		queue2.offer("b", new byte[1], future);
+		assertTrue(future.isCompletedExceptionally());
+		assertEquals(1, queue2.getDroppedCount());
+		
+		// Room is made in the same queue if it has messages
+		queue1.offer("c", new byte[6], null);
+		queue2.offer("d", new byte[4], null);
+		assertEquals(6, queue1.sizeBytes());
+		assertEquals(4, queue2.sizeBytes());
+		assertEquals(10, sharedBytes.get());
+		
+		// Taking the messages frees the shared capacity
+		assertQueueContents(queue1, "c");
+		assertEquals(4, sharedBytes.get());
+	}
+	
+	
+	// *** Batches ***
+	
+	@Test
+	public void batchIsEnqueuedInOrder()
+	{
+		SendQueue testObject = new SendQueue(10, 1000, OverflowPolicy.DROP_OLDEST, 0);
+		
+		testObject.offer("a", new byte[1], null);
+		testObject.offerAll(new String[] { "b", "c", "d" }, new byte[][] { new byte[1], new byte[2], new byte[3] });
+		
+		assertEquals(7, testObject.sizeBytes());
+		assertQueueContents(testObject, "a", "b", "c", "d");
+	}
+	
+	@Test
+	public void batchRejectedAsWhole()
+	{
+		SendQueue testObject = new SendQueue(3, 1000, OverflowPolicy.REJECT_NEWEST, 0);
+		
+		testObject.offer("a", new byte[1], null);
+		testObject.offer("b", new byte[1], null);
+		
+		// This does not fit, so none of it is enqueued
+		testObject.offerAll(new String[] { "c", "d" }, new byte[][] { new byte[1], new byte[1] });
+		
+		assertEquals(2, testObject.getDroppedCount());
+		assertQueueContents(testObject, "a", "b");
+	}
+	
+	@Test
+	public void batchDropsOldest()
+	{
+		SendQueue testObject = new SendQueue(3, 1000, OverflowPolicy.DROP_OLDEST, 0);
+		
+		testObject.offer("a", new byte[1], null);
+		testObject.offer("b", new byte[1], null);
+		testObject.offerAll(new String[] { "c", "d" }, new byte[][] { new byte[1], new byte[1] });
+		
+		assertEquals(1, testObject.getDroppedCount());
+		assertQueueContents(testObject, "b", "c", "d");
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void batchLargerThanCapacity()
+	{
+		SendQueue testObject = new SendQueue(2, 1000, OverflowPolicy.DROP_OLDEST, 0);
+		testObject.offerAll(new String[] { "a", "b", "c" }, new byte[][] { new byte[1], new byte[1], new byte[1] });
+	}
+	
+	
+	// *** Concurrency ***
+	
+	@Test
+	public void multipleProducers() throws InterruptedException
+	{
+		final int producerCount = 4;
+		final int messagesPerProducer = 10000;
+		final SendQueue testObject = new SendQueue(64, 1000000, OverflowPolicy.BLOCK, 10000);
+		
+		Thread[] producers = new Thread[producerCount];
+		
+		for (int p = 0; p < producerCount; ++p)
+		{
+			final String topic = Integer.toString(p);
+			
+			producers[p] = new Thread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					for (int i = 0; i < messagesPerProducer; ++i)
+					{
+						testObject.offer(topic, intToBytes(i), null);
+					}
+				}
+			});
+			producers[p].start();
+		}
+		
+		// Consuming everything. The messages of each producer must arrive in order.
+		int[] nextExpected = new int[producerCount];
+		int receivedCount = 0;
+		
+		while (receivedCount < producerCount * messagesPerProducer)
+		{
+			MessageToBeSent msg = testObject.poll();
+			
+			if (msg == null)
+			{
+				testObject.awaitMessages();
+				continue;
+			}
+			
+			int producer = Integer.parseInt(msg.topic);
+			assertEquals(nextExpected[producer], bytesToInt(msg.body));
+			++nextExpected[producer];
+			++receivedCount;
+		}
+		
+		for (Thread t : producers)
+		{
+			t.join();
+		}
+		
+		assertEquals(0, testObject.getDroppedCount());
+		assertEquals(0, testObject.size());
+		assertEquals(0, testObject.sizeBytes());
+	}
+	
+	
+	private byte[] intToBytes(int i)
+	{
+		return new byte[] { (byte)(i >> 24), (byte)(i >> 16), (byte)(i >> 8), (byte)i };
+	}
+	
+	private int bytesToInt(byte[] b)
+	{
+		return ((b[0] & 0xff) << 24) | ((b[1] & 0xff) << 16) | ((b[2] & 0xff) << 8) | (b[3] & 0xff);
+	}
+	
+	private void assertQueueContents(SendQueue queue, String ... expectedTopics)
+	{
+		LinkedList<MessageToBeSent> contents = queue.close();
+		assertEquals(expectedTopics.length, contents.size());
+		
+		for (int i = 0; i < expectedTopics.length; ++i)
+		{
+			assertEquals(expectedTopics[i], contents.get(i).topic);
+		}
+	}
+}
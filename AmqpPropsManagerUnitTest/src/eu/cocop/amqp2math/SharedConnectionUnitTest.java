@@ -0,0 +1,214 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SharedConnectionUnitTest
+{
+	private LoopbackBroker m_broker;
+	private ExecutorService m_executor;
+	
+	
+	@Before
+	public void setUp()
+	{
+		m_broker = new LoopbackBroker();
+		m_executor = Executors.newCachedThreadPool();
+	}
+	
+	@After
+	public void tearDown()
+	{
+		m_executor.shutdownNow();
+	}
+	
+	@Test
+	public void sharedUntilLastRelease() throws Exception
+	{
+		AmqpPropsManager props = createProps("localhost");
+		
+		SharedConnection conn1 = SharedConnection.acquire(props);
+		SharedConnection conn2 = SharedConnection.acquire(props);
+		assertSame(conn1, conn2);
+		assertEquals(1, m_broker.getConnectionCount());
+		
+		// The other reference keeps the connection open
+		conn1.release();
+		assertTrue(conn2.getConnection().isOpen());
+		
+		conn2.release();
+		assertFalse(conn2.getConnection().isOpen());
+		assertEquals(0, m_broker.getConnectionCount());
+	}
+	
+	@Test
+	public void differentSettingsNotShared() throws Exception
+	{
+		SharedConnection conn1 = SharedConnection.acquire(createProps("host1"));
+		SharedConnection conn2 = SharedConnection.acquire(createProps("host2"));
+		assertNotSame(conn1, conn2);
+		assertEquals(2, m_broker.getConnectionCount());
+		
+		conn1.release();
+		conn2.release();
+	}
+	
+	@Test
+	public void lostConnectionReplaced() throws Exception
+	{
+		AmqpPropsManager props = createProps("localhost");
+		SharedConnection conn1 = SharedConnection.acquire(props);
+		
+		m_broker.dropConnections();
+		
+		SharedConnection conn2 = SharedConnection.acquire(props);
+		assertNotSame(conn1, conn2);
+		assertTrue(conn2.getConnection().isOpen());
+		
+		// Releasing the lost connection does not affect the new one
+		conn1.release();
+		assertSame(conn2, SharedConnection.acquire(props));
+		
+		conn2.release();
+		conn2.release();
+		assertEquals(0, m_broker.getConnectionCount());
+	}
+	
+	@Test
+	public void failedConnectNotShared() throws Exception
+	{
+		AmqpPropsManager props = createProps("localhost");
+		m_broker.setRefuseConnections(true);
+		
+		try
+		{
+			SharedConnection.acquire(props);
+			fail("Expected an exception");
+		}
+		catch (IOException e)
+		{
+			// Expected
+		}
+		
+		// The next acquire tries again
+		m_broker.setRefuseConnections(false);
+		SharedConnection conn = SharedConnection.acquire(props);
+		assertTrue(conn.getConnection().isOpen());
+		conn.release();
+	}
+	
+	@Test
+	public void slowConnectBlocksOnlyItsOwnKey() throws Exception
+	{
+		CountDownLatch connectStarted = new CountDownLatch(1);
+		CountDownLatch connectAllowed = new CountDownLatch(1);
+		final AmqpPropsManager slowProps = createProps("slow");
+		slowProps.setTransport(new BlockingTransport(m_broker.getTransport(), connectStarted, connectAllowed));
+		
+		// Two connectors wait for the same connect
+		Future<SharedConnection> slow1 = acquireAsync(slowProps);
+		assertTrue(connectStarted.await(5, TimeUnit.SECONDS));
+		Future<SharedConnection> slow2 = acquireAsync(slowProps);
+		
+		// Another key connects meanwhile
+		SharedConnection other = acquireAsync(createProps("fast")).get(5, TimeUnit.SECONDS);
+		assertTrue(other.getConnection().isOpen());
+		assertFalse(slow1.isDone());
+		assertFalse(slow2.isDone());
+		
+		// Both get the same connection
+		connectAllowed.countDown();
+		SharedConnection conn1 = slow1.get(5, TimeUnit.SECONDS);
+		SharedConnection conn2 = slow2.get(5, TimeUnit.SECONDS);
+		assertSame(conn1, conn2);
+		assertEquals(2, m_broker.getConnectionCount());
+		
+		conn1.release();
+		conn2.release();
+		other.release();
+	}
+	
+	private Future<SharedConnection> acquireAsync(final AmqpPropsManager props)
+	{
+		return m_executor.submit(new Callable<SharedConnection>()
+		{
+			@Override
+			public SharedConnection call() throws Exception
+			{
+				return SharedConnection.acquire(props);
+			}
+		});
+	}
+	
+	private AmqpPropsManager createProps(String host)
+	{
+		AmqpPropsManager props = new AmqpPropsManager(host, "ex", "user", "pwd");
+		props.setLoopbackBroker(m_broker);
+		return props;
+	}
+	
+	
+	/**
+	 * Connects only once allowed, like a broker that does not respond.
+	 */
+	private static class BlockingTransport implements Transport
+	{
+		private final Transport m_inner;
+		private final CountDownLatch m_started;
+		private final CountDownLatch m_allowed;
+		
+		
+		BlockingTransport(Transport inner, CountDownLatch started, CountDownLatch allowed)
+		{
+			m_inner = inner;
+			m_started = started;
+			m_allowed = allowed;
+		}
+		
+		@Override
+		public String getConnectionKey(AmqpPropsManager props)
+		{
+			return m_inner.getConnectionKey(props);
+		}
+		
+		@Override
+		public TransportConnection connect(AmqpPropsManager props) throws CommunicationException, IOException, TimeoutException
+		{
+			m_started.countDown();
+			
+			try
+			{
+				m_allowed.await();
+			}
+			catch (InterruptedException e)
+			{
+				throw new IOException("Interrupted", e);
+			}
+			
+			return m_inner.connect(props);
+		}
+	}
+}
@@ -0,0 +1,200 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SpoolUnitTest
+{
+	private File m_dir = null;
+	
+	
+	@Before
+	public void setUp() throws IOException
+	{
+		m_dir = Files.createTempDirectory("spooltest").toFile();
+	}
+	
+	@After
+	public void tearDown()
+	{
+		File[] files = m_dir.listFiles();
+		
+		if (files != null)
+		{
+			for (File f : files)
+			{
+				f.delete();
+			}
+		}
+		
+		m_dir.delete();
+	}
+	
+	@Test
+	public void readInOrder() throws IOException
+	{
+		Spool testObject = new Spool(m_dir, 4096);
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		
+		try
+		{
+			testObject.append("t1", "x", bytes("a"), future);
+			testObject.append("t2", null, bytes("b"), null);
+			assertTrue(testObject.hasUnread());
+			
+			MessageToBeSent msg1 = testObject.read();
+			MessageToBeSent msg2 = testObject.read();
+			assertNull(testObject.read());
+			assertFalse(testObject.hasUnread());
+			
+			assertEquals("t1", msg1.topic);
+			assertEquals("a", new String(msg1.body, StandardCharsets.UTF_8));
+			assertEquals("x", msg1.type);
+			assertEquals("t2", msg2.topic);
+			assertNull(msg2.type);
+			assertTrue(msg1.isSpooled());
+			
+			// The future completes once confirmed
+			assertFalse(future.isDone());
+			msg1.complete();
+			assertTrue(future.isDone());
+		}
+		finally
+		{
+			testObject.close();
+		}
+	}
+	
+	@Test
+	public void unconfirmedReadAgainAfterReopen() throws IOException
+	{
+		Spool testObject = new Spool(m_dir, 4096);
+		
+		testObject.append("t", null, bytes("1"), null);
+		testObject.append("t", null, bytes("2"), null);
+		testObject.append("t", null, bytes("3"), null);
+		
+		// Confirming the first and the third. The third is still after an unconfirmed one.
+		MessageToBeSent msg1 = testObject.read();
+		testObject.read();
+		MessageToBeSent msg3 = testObject.read();
+		msg1.complete();
+		msg3.complete();
+		testObject.close();
+		
+		testObject = new Spool(m_dir, 4096);
+		
+		try
+		{
+			assertEquals("2", new String(testObject.read().body, StandardCharsets.UTF_8));
+			assertEquals("3", new String(testObject.read().body, StandardCharsets.UTF_8));
+			assertNull(testObject.read());
+		}
+		finally
+		{
+			testObject.close();
+		}
+	}
+	
+	@Test
+	public void segmentsDeletedOnceConfirmed() throws IOException
+	{
+		Spool testObject = new Spool(m_dir, 4096);
+		
+		try
+		{
+			// 1000 bytes per message, so the messages need several segments,
+			// and the large one gets its own
+			byte[] body = new byte[1000];
+			
+			for (int i = 0; i < 10; ++i)
+			{
+				testObject.append("t", null, body, null);
+			}
+			
+			testObject.append("t", null, new byte[10000], null);
+			assertTrue(countSegmentFiles() > 2);
+			
+			MessageToBeSent msg = null;
+			int count = 0;
+			
+			while ((msg = testObject.read()) != null)
+			{
+				msg.complete();
+				++count;
+			}
+			
+			assertEquals(11, count);
+			assertEquals(0, countSegmentFiles());
+			assertEquals(0, testObject.getUnconfirmedBytes());
+			
+			// The spool remains usable
+			testObject.append("t", null, body, null);
+			assertEquals(1, countSegmentFiles());
+		}
+		finally
+		{
+			testObject.close();
+		}
+	}
+	
+	@Test
+	public void directoryInUse() throws IOException
+	{
+		Spool testObject = new Spool(m_dir, 4096);
+		
+		try
+		{
+			new Spool(m_dir, 4096);
+			fail("Expected exception");
+		}
+		catch (IOException e)
+		{
+			assertTrue(e.getMessage().contains("in use"));
+		}
+		finally
+		{
+			testObject.close();
+		}
+	}
+	
+	private int countSegmentFiles()
+	{
+		int count = 0;
+		
+		for (File f : m_dir.listFiles())
+		{
+			if (f.getName().endsWith(".seg"))
+			{
+				++count;
+			}
+		}
+		
+		return count;
+	}
+	
+	private static byte[] bytes(String s)
+	{
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,108 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TimingWheelUnitTest
+{
+	@Test
+	public void expiresWithinOneTick()
+	{
+		// 10 ms ticks, 8 slots
+		TimingWheel<String> wheel = new TimingWheel<>(10, 8, 1000);
+		
+		wheel.schedule("a", 25, 1000);
+		wheel.schedule("b", 30, 1000);
+		assertEquals(2, wheel.size());
+		
+		// Never early
+		assertTrue(wheel.advance(1029).isEmpty());
+		
+		// The deadline of "a" is rounded up to the tick at 30 ms
+		List<String> expired = wheel.advance(1030);
+		Collections.sort(expired);
+		assertEquals("[a, b]", expired.toString());
+		assertEquals(0, wheel.size());
+		
+		// Advancing again yields nothing
+		assertTrue(wheel.advance(1100).isEmpty());
+	}
+	
+	@Test
+	public void cancelledItemIsNotExpired()
+	{
+		TimingWheel<String> wheel = new TimingWheel<>(10, 8, 0);
+		
+		TimingWheel.Timeout<String> timeout = wheel.schedule("a", 20, 0);
+		wheel.schedule("b", 20, 0);
+		timeout.cancel();
+		
+		assertEquals("[b]", wheel.advance(20).toString());
+		
+		// The cancelled item was removed when its slot was visited
+		assertEquals(0, wheel.size());
+	}
+	
+	@Test
+	public void delayLongerThanWheel()
+	{
+		// The wheel spans 80 ms, so a delay of 250 ms takes multiple rounds
+		TimingWheel<String> wheel = new TimingWheel<>(10, 8, 0);
+		wheel.schedule("long", 250, 0);
+		wheel.schedule("short", 50, 0);
+		
+		assertTrue(wheel.advance(40).isEmpty());
+		assertEquals("[short]", wheel.advance(80).toString());
+		assertTrue(wheel.advance(160).isEmpty());
+		assertTrue(wheel.advance(240).isEmpty());
+		assertEquals("[long]", wheel.advance(250).toString());
+	}
+	
+	@Test
+	public void largeJumpVisitsEverySlot()
+	{
+		TimingWheel<String> wheel = new TimingWheel<>(10, 8, 0);
+		
+		for (int i = 1; i <= 20; ++i)
+		{
+			wheel.schedule(Integer.toString(i), i * 10, 0);
+		}
+		
+		// Far more ticks than slots have elapsed
+		assertEquals(20, wheel.advance(100000).size());
+		assertEquals(0, wheel.size());
+	}
+	
+	@Test
+	public void scheduleAfterAdvanceAndPastDeadline()
+	{
+		TimingWheel<String> wheel = new TimingWheel<>(10, 8, 0);
+		wheel.advance(500);
+		
+		// A deadline in the past expires on the next tick
+		wheel.schedule("late", 0, 495);
+		assertTrue(wheel.advance(505).isEmpty());
+		assertEquals("[late]", wheel.advance(510).toString());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidTick()
+	{
+		new TimingWheel<String>(0, 8, 0);
+	}
+}
@@ -0,0 +1,89 @@
+//
+// Please make sure to read and understand the files README.md and LICENSE.txt.
+// 
+// This file was prepared in the research project COCOP (Coordinating
+// Optimisation of Complex Industrial Processes).
+// https://cocop-spire.eu/
+//
+// Author: Petri Kannisto, Tampere University, Finland
+// File created: 10/2026
+// Last modified: 10/2026
+
+package eu.cocop.amqp2math;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+public class TopicMatcherUnitTest
+{
+	@Test
+	public void exactMatch()
+	{
+		TopicMatcher<String> testObject = createMatcher("plant.a.temperature", "plant.b.temperature");
+		
+		assertMatches(testObject.match("plant.a.temperature"), "plant.a.temperature");
+		assertMatches(testObject.match("plant.a"));
+		assertMatches(testObject.match("plant.a.temperature.x"));
+	}
+	
+	@Test
+	public void starMatchesOneWord()
+	{
+		TopicMatcher<String> testObject = createMatcher("plant.*.temperature");
+		
+		assertMatches(testObject.match("plant.a.temperature"), "plant.*.temperature");
+		assertMatches(testObject.match("plant.temperature"));
+		assertMatches(testObject.match("plant.a.b.temperature"));
+	}
+	
+	@Test
+	public void hashMatchesZeroOrMoreWords()
+	{
+		TopicMatcher<String> testObject = createMatcher("plant.#", "#.temperature", "a.#.b");
+		
+		assertMatches(testObject.match("plant"), "plant.#");
+		assertMatches(testObject.match("plant.a.temperature"), "plant.#", "#.temperature");
+		assertMatches(testObject.match("temperature"), "#.temperature");
+		assertMatches(testObject.match("a.b"), "a.#.b");
+		assertMatches(testObject.match("a.x.y.b"), "a.#.b");
+		assertMatches(testObject.match("other"));
+	}
+	
+	@Test
+	public void noDuplicates()
+	{
+		// "#.#" can match the same key in several ways
+		TopicMatcher<String> testObject = createMatcher("#.#", "a.*");
+		
+		List<String> matches = testObject.match("a.b");
+		assertEquals(2, matches.size());
+		assertMatches(matches, "#.#", "a.*");
+	}
+	
+	private TopicMatcher<String> createMatcher(String... patterns)
+	{
+		// Using the pattern as the value
+		TreeMap<String, String> map = new TreeMap<>();
+		
+		for (String p : patterns)
+		{
+			map.put(p, p);
+		}
+		
+		return new TopicMatcher<>(map);
+	}
+	
+	private void assertMatches(List<String> actual, String... expected)
+	{
+		HashSet<String> expectedSet = new HashSet<>();
+		Collections.addAll(expectedSet, expected);
+		
+		assertEquals(expectedSet, new HashSet<>(actual));
+	}
+}